@@ -0,0 +1,82 @@
+package sample.query.expression;
+
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import lombok.val;
+
+/**
+ * Makes synthetic queries of a given shape for the benchmarks.
+ *
+ * Texts before {@code AND} and {@code OR} are bracketed, since the grammar
+ * drops the spaces before parsing.
+ */
+public class QueryGenerator {
+
+    public enum Shape {
+        // one comparison
+        SHORT,
+        // comparisons joined by AND
+        FLAT_AND,
+        // every comparison in one more bracket than the last
+        NESTED,
+        // numbers only, with decimals and signs
+        NUMBERS,
+        // texts only
+        TEXTS;
+    }
+
+    private static final String[] OPS = { "=", "!=", ">", ">=", "<", "<=" };
+
+    private final Random random;
+
+    public QueryGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    // a query for a shape and a size such as FLAT_AND/64, or for SHORT alone, which has no size
+    public String generate(String workload) {
+        val slash = workload.indexOf('/');
+        if (slash < 0) {
+            return generate(Shape.valueOf(workload), 1);
+        }
+        return generate(Shape.valueOf(workload.substring(0, slash)), Integer.parseInt(workload.substring(slash + 1)));
+    }
+
+    // a query with about size comparisons
+    public String generate(Shape shape, int size) {
+        switch (shape) {
+        case SHORT:
+            return number(0);
+        case FLAT_AND:
+            return join(size, " AND ", this::number);
+        case NESTED:
+            val sb = new StringBuilder(number(0));
+            for (int i = 1; i < size; i++) {
+                sb.insert(0, '(').append(')').append(this.random.nextBoolean() ? " AND " : " OR ").append(number(i));
+            }
+            return sb.toString();
+        case NUMBERS:
+            return join(size, this.random.nextBoolean() ? " AND " : " OR ", i -> "k" + i % 10 + " "
+                    + OPS[this.random.nextInt(OPS.length)] + " " + (this.random.nextBoolean() ? "-" : "+")
+                    + this.random.nextInt(1000) + "." + this.random.nextInt(1000));
+        case TEXTS:
+            return join(size, " AND ", i -> "(name" + i + " " + OPS[this.random.nextInt(OPS.length)] + " value"
+                    + this.random.nextInt(1000) + ")");
+        default:
+            throw new RuntimeException("unknown: " + shape.toString());
+        }
+    }
+
+    private String number(int i) {
+        return "k" + i % 10 + " " + OPS[this.random.nextInt(OPS.length)] + " " + this.random.nextInt(100);
+    }
+
+    private static String join(int size, String op, IntFunction<String> operand) {
+        val sb = new StringBuilder(operand.apply(0));
+        for (int i = 1; i < size; i++) {
+            sb.append(op).append(operand.apply(i));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package sample.query.expression.batch;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sample.query.expression.model.Model.BinaryOp;
+
+/**
+ * Compares the scalar and vector kernels over one column; the VECTOR rows
+ * need the vector classes and {@code --add-modules jdk.incubator.vector}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComparisonKernelsBenchmark {
+
+    public enum Kernels {
+        SCALAR, VECTOR;
+    }
+
+    @Param({ "SCALAR", "VECTOR" })
+    public Kernels kernels;
+
+    @Param({ "GREATER_THAN", "LESS_THAN_OR_EQUAL_TO", "EQUAL_TO", "NOT_EQUAL_TO" })
+    public BinaryOp op;
+
+    @Param({ "65536" })
+    public int size;
+
+    private ComparisonKernels target;
+    private double[] doubles;
+    private long[] longs;
+    private long[] bitmap;
+
+    @Setup
+    public void setup() {
+        this.target = this.kernels == Kernels.VECTOR ? ComparisonKernels.vector() : ComparisonKernels.scalar();
+        final Random random = new Random(0);
+        this.doubles = new double[this.size];
+        this.longs = new long[this.size];
+        for (int i = 0; i < this.size; i++) {
+            this.doubles[i] = random.nextInt(100);
+            this.longs[i] = random.nextInt(100);
+        }
+        this.bitmap = new long[Bitmaps.words(this.size)];
+    }
+
+    @Benchmark
+    public long[] doubles() {
+        this.target.compare(this.op, this.doubles, 50, this.size, this.bitmap);
+        return this.bitmap;
+    }
+
+    @Benchmark
+    public long[] longs() {
+        this.target.compare(this.op, this.longs, 50, this.size, this.bitmap);
+        return this.bitmap;
+    }
+}
@@ -0,0 +1,87 @@
+package sample.query.expression.evaluator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PredicateBenchmark {
+
+    public enum Backend {
+        INTERPRETED, BYTECODE;
+    }
+
+    // k0 .. k9 are read from a double[] by their index
+    public static final FieldAccessor<double[]> ACCESSOR = new FieldAccessor<double[]>() {
+
+        @Override
+        public double getDouble(double[] record, String key) {
+            return record[key.charAt(1) - '0'];
+        }
+
+        @Override
+        public String getText(double[] record, String key) {
+            return String.valueOf(record[key.charAt(1) - '0']);
+        }
+    };
+
+    @Param({ "INTERPRETED", "BYTECODE" })
+    public Backend backend;
+
+    @Param({
+            "k0 > 50",
+            "k0 >= 10 AND k1 < 80 AND k2 != 5",
+            "(k0 >= 10 AND k1 < 80) OR (k2 > 30 AND NOT (k3 = 7)) OR (k4 <= 20 AND k5 > 40 AND k6 < 60)",
+    })
+    public String query;
+
+    private Predicate<double[]> predicate;
+    private double[][] records;
+
+    @Setup
+    public void setup() {
+        val expr = QueryParser.parse(this.query);
+        this.predicate = this.backend == Backend.BYTECODE
+                ? BytecodeCompiler.compile(expr, ACCESSOR)
+                : PredicateCompiler.compile(expr, ACCESSOR);
+
+        val random = new Random(0);
+        this.records = new double[1024][10];
+        for (val record : this.records) {
+            for (int i = 0; i < record.length; i++) {
+                record[i] = random.nextInt(100);
+            }
+        }
+    }
+
+    @Benchmark
+    public int test() {
+        int count = 0;
+        for (val record : this.records) {
+            if (this.predicate.test(record)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,85 @@
+package sample.query.expression.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sample.query.expression.evaluator.PredicateBenchmark;
+import sample.query.expression.evaluator.PredicateCompiler;
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+// matching one record against many filters, through the index and one by one
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterIndexBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int filters;
+
+    private FilterIndex<Integer, double[]> index;
+    private List<Predicate<double[]>> predicates;
+    private double[][] records;
+    private int next;
+
+    @Setup
+    public void setup() {
+        val random = new Random(0);
+        this.index = new FilterIndex<>(PredicateBenchmark.ACCESSOR);
+        this.predicates = new ArrayList<>();
+        for (int id = 0; id < this.filters; id++) {
+            val query = "(k" + random.nextInt(10) + " = " + random.nextInt(100) + ") AND k"
+                    + random.nextInt(10) + " >= " + random.nextInt(100);
+            val expr = QueryParser.parse(query);
+            this.index.add(id, expr);
+            this.predicates.add(PredicateCompiler.compile(expr, PredicateBenchmark.ACCESSOR));
+        }
+
+        this.records = new double[1024][10];
+        for (val record : this.records) {
+            for (int i = 0; i < record.length; i++) {
+                record[i] = random.nextInt(100);
+            }
+        }
+    }
+
+    @Benchmark
+    public int index() {
+        return this.index.match(nextRecord()).size();
+    }
+
+    @Benchmark
+    public int scan() {
+        val record = nextRecord();
+        int count = 0;
+        for (val predicate : this.predicates) {
+            if (predicate.test(record)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private double[] nextRecord() {
+        this.next = (this.next + 1) & (this.records.length - 1);
+        return this.records[this.next];
+    }
+}
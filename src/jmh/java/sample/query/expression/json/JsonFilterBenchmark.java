@@ -0,0 +1,90 @@
+package sample.query.expression.json;
+
+import static java.nio.charset.StandardCharsets.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+// filtering NDJSON events of 20 fields; gradle jmh -PjmhArgs='JsonFilterBenchmark -prof gc'
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonFilterBenchmark {
+
+    @Param({
+            // decided by the first field
+            "f0 > 50 AND f1 < 80",
+            // the fields are near the end, after nested values
+            "f18 > 50 OR (f19 = text3)",
+            // a missing field needs the whole event
+            "missing = 1 OR f10 < 0",
+    })
+    public String query;
+
+    private static final OutputStream NOWHERE = new OutputStream() {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private JsonFilter filter;
+    private byte[] events;
+
+    @Setup
+    public void setup() {
+        this.filter = JsonFilter.compile(QueryParser.parse(this.query));
+        val random = new Random(0);
+        val builder = new StringBuilder();
+        for (int i = 0; i < 1024; i++) {
+            builder.append('{');
+            for (int f = 0; f < 20; f++) {
+                builder.append(f == 0 ? "" : ", ").append("\"f").append(f).append("\": ");
+                switch (f % 4) {
+                case 0:
+                case 1:
+                    builder.append(random.nextInt(100));
+                    break;
+                case 2:
+                    builder.append("{\"id\": ").append(random.nextInt(1000)).append(", \"tags\": [\"a\", \"b\"]}");
+                    break;
+                default:
+                    builder.append("\"text").append(random.nextInt(5)).append('"');
+                    break;
+                }
+            }
+            builder.append("}\n");
+        }
+        this.events = builder.toString().getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public long filter() throws IOException {
+        return this.filter.filter(new ByteArrayInputStream(this.events), NOWHERE);
+    }
+}
@@ -0,0 +1,71 @@
+package sample.query.expression.optimizer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sample.query.expression.evaluator.PredicateBenchmark;
+import sample.query.expression.evaluator.PredicateCompiler;
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+// the cost of evaluating a redundant filter as written and once optimized
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExprOptimizerBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean optimized;
+
+    @Param({
+            "((k0 >= 10)) AND k0 >= 20 AND k0 <= 80 AND k0 < 90 AND NOT (k1 = 5)",
+            "(k0 > 10 AND k1 < 50) OR (k0 > 10 AND k1 < 50) OR k2 > 95 OR k2 >= 90 OR k2 = 90",
+            "NOT (NOT (k0 = 1)) OR (k3 >= 20 AND k3 >= 30 AND k3 <= 70 AND k3 <= 60 AND (k4 != 3 OR 5 < 3))",
+    })
+    public String query;
+
+    private Predicate<double[]> predicate;
+    private double[][] records;
+
+    @Setup
+    public void setup() {
+        val expr = QueryParser.parse(this.query);
+        this.predicate = PredicateCompiler.compile(this.optimized ? ExprOptimizer.optimize(expr) : expr,
+                PredicateBenchmark.ACCESSOR);
+
+        val random = new Random(0);
+        this.records = new double[1024][10];
+        for (val record : this.records) {
+            for (int i = 0; i < record.length; i++) {
+                record[i] = random.nextInt(100);
+            }
+        }
+    }
+
+    @Benchmark
+    public int test() {
+        int count = 0;
+        for (val record : this.records) {
+            if (this.predicate.test(record)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
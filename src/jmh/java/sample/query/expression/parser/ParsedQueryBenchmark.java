@@ -0,0 +1,62 @@
+package sample.query.expression.parser;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sample.query.expression.QueryGenerator;
+import sample.query.expression.QueryGenerator.Shape;
+import sample.query.expression.model.Expr;
+import lombok.val;
+
+// a keystroke in the middle of a long query: parsing it all again or editing the last parse
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsedQueryBenchmark {
+
+    @Param({ "FLAT_AND", "NUMBERS" })
+    public Shape shape;
+
+    @Param({ "64", "512" })
+    public int size;
+
+    private ParsedQuery parsed;
+    private String edited;
+    private int offset;
+
+    @Setup
+    public void setup() {
+        this.parsed = ParsedQuery.parse(new QueryGenerator(0).generate(this.shape, this.size));
+        val query = this.parsed.getQuery();
+        // after a digit in the middle
+        this.offset = query.length() / 2;
+        while (!Character.isDigit(query.charAt(this.offset - 1))) {
+            this.offset++;
+        }
+        this.edited = query.substring(0, this.offset) + "1" + query.substring(this.offset);
+    }
+
+    @Benchmark
+    public Expr parse() {
+        return QueryParser.parse(this.edited, QueryParser.Engine.DESCENT);
+    }
+
+    @Benchmark
+    public Expr edit() {
+        return this.parsed.edit(this.offset, 0, "1").getExpr();
+    }
+}
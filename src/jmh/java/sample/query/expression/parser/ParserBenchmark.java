@@ -0,0 +1,67 @@
+package sample.query.expression.parser;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sample.query.expression.QueryGenerator;
+import sample.query.expression.model.Expr;
+
+// gradle jmh -PjmhArgs='ParserBenchmark -prof gc' for the allocation rates
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    // SHORT is one comparison whatever the size, so it runs once
+    @Param({ "SHORT", "FLAT_AND/8", "FLAT_AND/64", "NESTED/8", "NESTED/64", "NUMBERS/8", "NUMBERS/64", "TEXTS/8",
+            "TEXTS/64" })
+    public String workload;
+
+    private String query;
+    private String stripped;
+
+    @Setup
+    public void setup() {
+        this.query = new QueryGenerator(0).generate(this.workload);
+        this.stripped = this.query.replace(" ", "");
+    }
+
+    @Benchmark
+    public Expr grammar() {
+        return Grammar.parse(this.stripped).getOrThrow();
+    }
+
+    @Benchmark
+    public Expr queryParser() {
+        return QueryParser.parse(this.query);
+    }
+
+    @Benchmark
+    public Expr descent() {
+        return QueryParser.parse(this.query, QueryParser.Engine.DESCENT);
+    }
+
+    @Benchmark
+    public Expr tokens() {
+        return QueryParser.parse(this.query, QueryParser.Engine.TOKENS);
+    }
+
+    @Benchmark
+    public Tokens lexer() {
+        return Lexer.tokenize(this.query);
+    }
+}
@@ -0,0 +1,69 @@
+package sample.query.expression.parser;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sample.query.expression.QueryGenerator;
+import sample.query.expression.QueryGenerator.Shape;
+
+// checking queries at the edge: validating them or parsing them and catching the failure
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidateBenchmark {
+
+    @Param({ "FLAT_AND", "NESTED", "TEXTS" })
+    public Shape shape;
+
+    @Param({ "true", "false" })
+    public boolean valid;
+
+    private String query;
+
+    @Setup
+    public void setup() {
+        this.query = new QueryGenerator(0).generate(this.shape, 64);
+        if (!this.valid) {
+            // fails at the end, after reading all of it
+            this.query += " =";
+        }
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return QueryParser.validate(this.query).isValid();
+    }
+
+    @Benchmark
+    public boolean grammar() {
+        return parse(QueryParser.Engine.GRAMMAR);
+    }
+
+    @Benchmark
+    public boolean descent() {
+        return parse(QueryParser.Engine.DESCENT);
+    }
+
+    private boolean parse(QueryParser.Engine engine) {
+        try {
+            QueryParser.parse(this.query, engine);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package sample.query.expression.visitor;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import sample.query.expression.QueryGenerator;
+import sample.query.expression.iterator.NodeCursor;
+import sample.query.expression.iterator.NodeIterator;
+import sample.query.expression.model.Expr;
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+// walking and rendering parsed queries; gradle jmh -PjmhArgs='TraversalBenchmark -prof gc'
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraversalBenchmark {
+
+    // SHORT is one comparison whatever the size, so it runs once
+    @Param({ "SHORT", "FLAT_AND/8", "FLAT_AND/64", "NESTED/8", "NESTED/64", "NUMBERS/8", "NUMBERS/64", "TEXTS/8",
+            "TEXTS/64" })
+    public String workload;
+
+    private Expr expr;
+    private final NodeCursor cursor = new NodeCursor();
+
+    @Setup
+    public void setup() {
+        this.expr = QueryParser.parse(new QueryGenerator(0).generate(this.workload));
+    }
+
+    @Benchmark
+    public List<Node> nodeVisitor() {
+        return new NodeVisitor().visit(this.expr);
+    }
+
+    @Benchmark
+    public void nodeIterator(Blackhole blackhole) {
+        for (val node : new NodeIterator(this.expr)) {
+            blackhole.consume(node);
+        }
+    }
+
+    @Benchmark
+    public long nodeCursor() {
+        val cursor = this.cursor.reset(this.expr);
+        long sum = 0;
+        while (cursor.advance()) {
+            sum += cursor.depth() + cursor.type().ordinal();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public List<String> strVisitor() {
+        return new StrVisitor().visit(this.expr);
+    }
+
+    @Benchmark
+    public String exprToString() {
+        return this.expr.toString();
+    }
+}
@@ -0,0 +1,212 @@
+package sample.query.expression.batch;
+
+import sample.query.expression.evaluator.Comparison;
+import sample.query.expression.model.Chains;
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.ExprType;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import lombok.val;
+
+/**
+ * Evaluates an {@link Expr} over a {@link ColumnBatch} into a selection bitmap
+ * (see {@link Bitmaps}).
+ *
+ * Each numeric comparison is one loop of the {@link ComparisonKernels} over
+ * its column (the vector ones when available), and AND, OR and NOT are
+ * word-wise operations on the bitmaps of their operands. The right hand side
+ * of AND is skipped when nothing is selected, and that of OR when everything
+ * is. Text comparisons are evaluated once per dictionary entry and the codes
+ * only look up the results.
+ *
+ * The results agree with {@link sample.query.expression.evaluator.PredicateCompiler}
+ * for the same records: a missing number is {@code NaN}, a missing text is
+ * {@code null} and a text on its own is a boolean flag. A long column is
+ * compared exactly, by rounding the constant to the nearest long on the side
+ * which keeps the result.
+ */
+public class BatchEvaluator {
+
+    private final ColumnBatch batch;
+    private final ComparisonKernels kernels;
+    private final int size;
+
+    private BatchEvaluator(ColumnBatch batch, ComparisonKernels kernels) {
+        this.batch = batch;
+        this.kernels = kernels;
+        this.size = batch.getSize();
+    }
+
+    public static long[] evaluate(Expr expr, ColumnBatch batch) {
+        return evaluate(expr, batch, ComparisonKernels.preferred());
+    }
+
+    public static long[] evaluate(Expr expr, ColumnBatch batch, ComparisonKernels kernels) {
+        return new BatchEvaluator(batch, kernels).evaluate(expr);
+    }
+
+    private long[] evaluate(Expr expr) {
+        // runs of brackets and NOT in a loop, so only the operands of chains recurse
+        boolean negated = false;
+        for (;;) {
+            if (expr.getType() == ExprType.BRACKET_EXPR) {
+                expr = ((BracketExpr) expr).getExpr();
+            } else if (expr.getType() == ExprType.UNARY_OP_EXPR) {
+                negated = negated != negates((UnaryOpExpr) expr);
+                expr = ((UnaryOpExpr) expr).getExpr();
+            } else {
+                break;
+            }
+        }
+        val bitmap = evaluateOperand(expr);
+        return negated ? Bitmaps.not(bitmap, this.size) : bitmap;
+    }
+
+    private long[] evaluateOperand(Expr expr) {
+        switch (expr.getType()) {
+        case DOUBLE_EXPR:
+            return Bitmaps.fill(this.size, ((DoubleExpr) expr).getValue() != 0);
+        case TEXT_EXPR:
+            return evaluateTextExpr((TextExpr) expr);
+        case BINARY_OP_EXPR:
+            return evaluateBinaryOpExpr((BinaryOpExpr) expr);
+        default:
+            throw new RuntimeException("unknown: " + expr.getType().toString());
+        }
+    }
+
+    private long[] evaluateTextExpr(TextExpr expr) {
+        val column = this.batch.getTexts(expr.getText());
+        if (column == null) {
+            return Bitmaps.fill(this.size, false);
+        }
+        val dictionary = column.getDictionary();
+        val table = new boolean[dictionary.length + 1];
+        for (int i = 0; i < dictionary.length; i++) {
+            table[i + 1] = Boolean.parseBoolean(dictionary[i]);
+        }
+        return lookup(column.getCodes(), table);
+    }
+
+    private static boolean negates(UnaryOpExpr expr) {
+        switch (expr.getOp()) {
+        case NOT:
+            return true;
+        default:
+            throw new RuntimeException("unknown: " + expr.getOp().getCode());
+        }
+    }
+
+    private long[] evaluateBinaryOpExpr(BinaryOpExpr expr) {
+        if (Model.ComparableOp.contains(expr.getOp())) {
+            return evaluateComparison(Comparison.of(expr));
+        }
+
+        // ((a AND b) OR c) AND d folded from the left, in a loop
+        val spine = Chains.spine(expr);
+        long[] bitmap = evaluate(Chains.first(spine));
+        for (int i = spine.size() - 1; i >= 0; i--) {
+            val rhs = spine.get(i).getRhs();
+            val op = spine.get(i).getOp();
+            switch (op) {
+            case AND:
+                if (!Bitmaps.isEmpty(bitmap)) {
+                    bitmap = Bitmaps.and(bitmap, evaluate(rhs));
+                }
+                break;
+            case OR:
+                if (!Bitmaps.isFull(bitmap, this.size)) {
+                    bitmap = Bitmaps.or(bitmap, evaluate(rhs));
+                }
+                break;
+            default:
+                throw new RuntimeException("unknown: " + op.getCode());
+            }
+        }
+        return bitmap;
+    }
+
+    private long[] evaluateComparison(Comparison comparison) {
+        switch (comparison.getKind()) {
+        case CONSTANT:
+            return Bitmaps.fill(this.size, comparison.isConstant());
+        case NUMBER:
+            return compareNumber(comparison.getKey(), comparison.getOp(), comparison.getNumber());
+        case TEXT:
+            return compareText(comparison.getKey(), comparison.getOp(), comparison.getText());
+        default:
+            throw new RuntimeException("unknown: " + comparison.getKind().toString());
+        }
+    }
+
+    private long[] compareNumber(String key, BinaryOp op, double value) {
+        val bitmap = new long[Bitmaps.words(this.size)];
+        val values = this.batch.getNumbers(key);
+        if (values != null) {
+            this.kernels.compare(op, values, value, this.size, bitmap);
+            return bitmap;
+        }
+        val longs = this.batch.getLongs(key);
+        if (longs == null) {
+            return Bitmaps.fill(this.size, Comparison.compare(op, Double.NaN, value));
+        }
+        // every long compares with NaN or a value out of the long range as 0 does
+        if (Double.isNaN(value) || value >= 0x1p63 || value < -0x1p63) {
+            return Bitmaps.fill(this.size, Comparison.compare(op, 0, value));
+        }
+        switch (op) {
+        case EQUAL_TO:
+        case NOT_EQUAL_TO:
+            if (value != Math.floor(value)) {
+                return Bitmaps.fill(this.size, op == BinaryOp.NOT_EQUAL_TO);
+            }
+            this.kernels.compare(op, longs, (long) value, this.size, bitmap);
+            break;
+        case GREATER_THAN:
+        case LESS_THAN_OR_EQUAL_TO:
+            this.kernels.compare(op, longs, (long) Math.floor(value), this.size, bitmap);
+            break;
+        case GREATER_THAN_OR_EQUAL_TO:
+        case LESS_THAN:
+            this.kernels.compare(op, longs, (long) Math.ceil(value), this.size, bitmap);
+            break;
+        default:
+            throw new RuntimeException("unknown: " + op.getCode());
+        }
+        return bitmap;
+    }
+
+    private long[] compareText(String key, BinaryOp op, String value) {
+        val column = this.batch.getTexts(key);
+        if (column == null) {
+            return Bitmaps.fill(this.size, Comparison.compare(op, (String) null, value));
+        }
+        val dictionary = column.getDictionary();
+        val table = new boolean[dictionary.length + 1];
+        table[0] = Comparison.compare(op, (String) null, value);
+        for (int i = 0; i < dictionary.length; i++) {
+            table[i + 1] = Comparison.compare(op, dictionary[i], value);
+        }
+        return lookup(column.getCodes(), table);
+    }
+
+    // table[0] is the result for a missing value and table[code + 1] that for a code
+    private long[] lookup(int[] codes, boolean[] table) {
+        val size = this.size;
+        val bitmap = new long[Bitmaps.words(size)];
+        for (int base = 0; base < size; base += 64) {
+            val end = Math.min(base + 64, size);
+            long word = 0;
+            for (int i = base; i < end; i++) {
+                word |= (table[codes[i] + 1] ? 1L : 0L) << i;
+            }
+            bitmap[base >>> 6] = word;
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,79 @@
+package sample.query.expression.batch;
+
+import java.util.Arrays;
+
+/**
+ * Selection bitmaps: bit {@code i % 64} of word {@code i / 64} is set when row
+ * {@code i} is selected, and the bits past the last row are always clear.
+ */
+public final class Bitmaps {
+
+    private Bitmaps() {
+    }
+
+    public static int words(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    public static boolean get(long[] bitmap, int row) {
+        return (bitmap[row >>> 6] & (1L << row)) != 0;
+    }
+
+    public static int count(long[] bitmap) {
+        int count = 0;
+        for (long word : bitmap) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public static boolean isEmpty(long[] bitmap) {
+        for (long word : bitmap) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isFull(long[] bitmap, int size) {
+        return count(bitmap) == size;
+    }
+
+    static long[] fill(int size, boolean value) {
+        final long[] bitmap = new long[words(size)];
+        if (value) {
+            Arrays.fill(bitmap, -1L);
+            clearTail(bitmap, size);
+        }
+        return bitmap;
+    }
+
+    static long[] and(long[] lhs, long[] rhs) {
+        for (int i = 0; i < lhs.length; i++) {
+            lhs[i] &= rhs[i];
+        }
+        return lhs;
+    }
+
+    static long[] or(long[] lhs, long[] rhs) {
+        for (int i = 0; i < lhs.length; i++) {
+            lhs[i] |= rhs[i];
+        }
+        return lhs;
+    }
+
+    static long[] not(long[] bitmap, int size) {
+        for (int i = 0; i < bitmap.length; i++) {
+            bitmap[i] = ~bitmap[i];
+        }
+        clearTail(bitmap, size);
+        return bitmap;
+    }
+
+    private static void clearTail(long[] bitmap, int size) {
+        if ((size & 63) != 0) {
+            bitmap[bitmap.length - 1] &= -1L >>> (64 - (size & 63));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package sample.query.expression.batch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A batch of records stored by column.
+ *
+ * A numeric key is a {@code double[]} in which {@code NaN} marks a missing
+ * value, or a {@code long[]} which has no missing values. A text key is
+ * dictionary encoded: an {@code int[]} of codes into its dictionary, in which
+ * {@code -1} marks a missing value.
+ */
+public class ColumnBatch {
+
+    public static final int MISSING = -1;
+
+    @Getter
+    private final int size;
+    private final Map<String, double[]> numbers = new HashMap<>();
+    private final Map<String, long[]> longs = new HashMap<>();
+    private final Map<String, TextColumn> texts = new HashMap<>();
+
+    public ColumnBatch(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("negative size: " + size);
+        }
+        this.size = size;
+    }
+
+    public ColumnBatch putNumbers(String key, double[] values) {
+        if (values.length < this.size) {
+            throw new IllegalArgumentException("column too short: " + key);
+        }
+        this.numbers.put(key, values);
+        return this;
+    }
+
+    public ColumnBatch putLongs(String key, long[] values) {
+        if (values.length < this.size) {
+            throw new IllegalArgumentException("column too short: " + key);
+        }
+        this.longs.put(key, values);
+        return this;
+    }
+
+    public ColumnBatch putTexts(String key, String[] dictionary, int[] codes) {
+        if (codes.length < this.size) {
+            throw new IllegalArgumentException("column too short: " + key);
+        }
+        for (int i = 0; i < this.size; i++) {
+            if (codes[i] < MISSING || codes[i] >= dictionary.length) {
+                throw new IllegalArgumentException("code out of dictionary: " + key + "[" + i + "]=" + codes[i]);
+            }
+        }
+        this.texts.put(key, new TextColumn(dictionary, codes));
+        return this;
+    }
+
+    // null if the batch has no numeric column for the key
+    public double[] getNumbers(String key) {
+        return this.numbers.get(key);
+    }
+
+    // null if the batch has no long column for the key
+    public long[] getLongs(String key) {
+        return this.longs.get(key);
+    }
+
+    // null if the batch has no text column for the key
+    public TextColumn getTexts(String key) {
+        return this.texts.get(key);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class TextColumn {
+        private final String[] dictionary;
+        private final int[] codes;
+    }
+}
@@ -0,0 +1,34 @@
+package sample.query.expression.batch;
+
+import sample.query.expression.model.Model.BinaryOp;
+
+/**
+ * Loops comparing a column with a constant, which write bit {@code i} of the
+ * bitmap for each row {@code i} below {@code size}.
+ *
+ * {@link #vector()} is backed by {@code jdk.incubator.vector}, and is only
+ * available when the vector classes are on the class path and the JVM runs
+ * with {@code --add-modules jdk.incubator.vector}.
+ */
+public interface ComparisonKernels {
+
+    public void compare(BinaryOp op, double[] values, double value, int size, long[] bitmap);
+
+    public void compare(BinaryOp op, long[] values, long value, int size, long[] bitmap);
+
+    public static ComparisonKernels scalar() {
+        return ScalarKernels.INSTANCE;
+    }
+
+    public static ComparisonKernels vector() {
+        if (Kernels.VECTOR == null) {
+            throw new UnsupportedOperationException("jdk.incubator.vector is not available");
+        }
+        return Kernels.VECTOR;
+    }
+
+    // the vector kernels if available, otherwise the scalar ones
+    public static ComparisonKernels preferred() {
+        return Kernels.VECTOR != null ? Kernels.VECTOR : ScalarKernels.INSTANCE;
+    }
+}
@@ -0,0 +1,24 @@
+package sample.query.expression.batch;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+final class Kernels {
+
+    static final ComparisonKernels VECTOR = loadVector();
+
+    private Kernels() {
+    }
+
+    private static ComparisonKernels loadVector() {
+        try {
+            return (ComparisonKernels) Class.forName("sample.query.expression.batch.VectorKernels")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // the vector classes are not built, or the module is not enabled
+            log.debug("falls back to the scalar kernels: {}", e.toString());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package sample.query.expression.batch;
+
+import sample.query.expression.model.Model.BinaryOp;
+
+// the shift distance of "<< i" is i % 64, so bit i of the word is row base + i % 64
+final class ScalarKernels implements ComparisonKernels {
+
+    static final ScalarKernels INSTANCE = new ScalarKernels();
+
+    private ScalarKernels() {
+    }
+
+    @Override
+    public void compare(BinaryOp op, double[] values, double value, int size, long[] bitmap) {
+        for (int base = 0; base < size; base += 64) {
+            final int end = Math.min(base + 64, size);
+            long word = 0;
+            switch (op) {
+            case EQUAL_TO:
+                for (int i = base; i < end; i++) {
+                    word |= (values[i] == value ? 1L : 0L) << i;
+                }
+                break;
+            case NOT_EQUAL_TO:
+                for (int i = base; i < end; i++) {
+                    word |= (values[i] != value ? 1L : 0L) << i;
+                }
+                break;
+            case GREATER_THAN:
+                for (int i = base; i < end; i++) {
+                    word |= (values[i] > value ? 1L : 0L) << i;
+                }
+                break;
+            case GREATER_THAN_OR_EQUAL_TO:
+                for (int i = base; i < end; i++) {
+                    word |= (values[i] >= value ? 1L : 0L) << i;
+                }
+                break;
+            case LESS_THAN:
+                for (int i = base; i < end; i++) {
+                    word |= (values[i] < value ? 1L : 0L) << i;
+                }
+                break;
+            case LESS_THAN_OR_EQUAL_TO:
+                for (int i = base; i < end; i++) {
+                    word |= (values[i] <= value ? 1L : 0L) << i;
+                }
+                break;
+            default:
+                throw new RuntimeException("unknown: " + op.getCode());
+            }
+            bitmap[base >>> 6] = word;
+        }
+    }
+
+    @Override
+    public void compare(BinaryOp op, long[] values, long value, int size, long[] bitmap) {
+        for (int base = 0; base < size; base += 64) {
+            final int end = Math.min(base + 64, size);
+            long word = 0;
+            switch (op) {
+            case EQUAL_TO:
+                for (int i = base; i < end; i++) {
+                    word |= (values[i] == value ? 1L : 0L) << i;
+                }
+                break;
+            case NOT_EQUAL_TO:
+                for (int i = base; i < end; i++) {
+                    word |= (values[i] != value ? 1L : 0L) << i;
+                }
+                break;
+            case GREATER_THAN:
+                for (int i = base; i < end; i++) {
+                    word |= (values[i] > value ? 1L : 0L) << i;
+                }
+                break;
+            case GREATER_THAN_OR_EQUAL_TO:
+                for (int i = base; i < end; i++) {
+                    word |= (values[i] >= value ? 1L : 0L) << i;
+                }
+                break;
+            case LESS_THAN:
+                for (int i = base; i < end; i++) {
+                    word |= (values[i] < value ? 1L : 0L) << i;
+                }
+                break;
+            case LESS_THAN_OR_EQUAL_TO:
+                for (int i = base; i < end; i++) {
+                    word |= (values[i] <= value ? 1L : 0L) << i;
+                }
+                break;
+            default:
+                throw new RuntimeException("unknown: " + op.getCode());
+            }
+            bitmap[base >>> 6] = word;
+        }
+    }
+}
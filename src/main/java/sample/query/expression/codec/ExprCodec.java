@@ -0,0 +1,300 @@
+package sample.query.expression.codec;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOp;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import lombok.val;
+
+/**
+ * A compact binary form of {@link Expr} trees, to pass parsed queries between
+ * processes or to store them without parsing them again.
+ *
+ * <pre>
+ * 'Q' 'X' version:varint count:varint node{count}
+ * node = DOUBLE ieee754:8 bytes (big endian)
+ *      | TEXT length:varint utf8:length bytes
+ *      | BRACKET | NOT | binary op
+ * </pre>
+ *
+ * Nodes are in postfix order and each opcode is a varint, so the decoder
+ * builds the tree with a stack of its own and any depth can be read back.
+ */
+public final class ExprCodec {
+
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = { 'Q', 'X' };
+
+    private static final int DOUBLE = 0;
+    private static final int TEXT = 1;
+    private static final int BRACKET = 2;
+    private static final int NOT = 3;
+    private static final int BINARY_OP = 4;
+
+    // the wire order of the operators, which must not follow the enum order
+    private static final BinaryOp[] BINARY_OPS = {
+            BinaryOp.AND, BinaryOp.OR,
+            BinaryOp.EQUAL_TO, BinaryOp.NOT_EQUAL_TO,
+            BinaryOp.GREATER_THAN, BinaryOp.GREATER_THAN_OR_EQUAL_TO,
+            BinaryOp.LESS_THAN, BinaryOp.LESS_THAN_OR_EQUAL_TO };
+    private static final Map<BinaryOp, Integer> OPCODES = new EnumMap<>(BinaryOp.class);
+
+    static {
+        for (int i = 0; i < BINARY_OPS.length; i++) {
+            OPCODES.put(BINARY_OPS[i], BINARY_OP + i);
+        }
+    }
+
+    private ExprCodec() {
+    }
+
+    public static byte[] encode(Expr expr) {
+        val nodes = postfix(expr);
+        val body = new Output();
+        for (val node : nodes) {
+            write(node, body);
+        }
+        val out = new Output();
+        out.write(MAGIC, 0, MAGIC.length);
+        out.writeVarint(VERSION);
+        out.writeVarint(nodes.size());
+        out.write(body.bytes, 0, body.size);
+        return out.toByteArray();
+    }
+
+    public static Expr decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads one {@link Expr} from the position of the buffer and moves the
+     * position past it, so that consecutive expressions can be read in turn.
+     * Texts are decoded straight from the backing array when there is one.
+     *
+     * @throws IllegalArgumentException if the bytes are not an encoded
+     *                                  expression of a known version
+     */
+    public static Expr decode(ByteBuffer in) {
+        for (val b : MAGIC) {
+            if (readByte(in) != b) {
+                throw new IllegalArgumentException("not an encoded expression");
+            }
+        }
+        val version = readVarint(in);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported version: " + version);
+        }
+        val count = readVarint(in);
+        Expr[] stack = new Expr[16];
+        int sp = 0;
+        for (int i = 0; i < count; i++) {
+            val opcode = readVarint(in);
+            switch (opcode) {
+            case DOUBLE:
+                if (sp == stack.length) {
+                    stack = Arrays.copyOf(stack, sp * 2);
+                }
+                stack[sp++] = Model.doubleExpr(Double.longBitsToDouble(readLong(in)));
+                break;
+            case TEXT:
+                if (sp == stack.length) {
+                    stack = Arrays.copyOf(stack, sp * 2);
+                }
+                stack[sp++] = Model.textExpr(readText(in));
+                break;
+            case BRACKET:
+                require(sp >= 1, opcode);
+                stack[sp - 1] = Model.bracketExpr(stack[sp - 1]);
+                break;
+            case NOT:
+                require(sp >= 1, opcode);
+                stack[sp - 1] = Model.unaryOpExpr(UnaryOp.NOT, stack[sp - 1]);
+                break;
+            default:
+                require(BINARY_OP <= opcode && opcode < BINARY_OP + BINARY_OPS.length && sp >= 2, opcode);
+                val rhs = stack[--sp];
+                stack[sp - 1] = Model.binaryOpExpr(stack[sp - 1], BINARY_OPS[opcode - BINARY_OP], rhs);
+                break;
+            }
+        }
+        if (sp != 1) {
+            throw new IllegalArgumentException("malformed expression: " + sp + " roots");
+        }
+        return stack[0];
+    }
+
+    // lhs, rhs and then the node, without recursion
+    private static ArrayList<Expr> postfix(Expr expr) {
+        val nodes = new ArrayList<Expr>();
+        val pending = new ArrayDeque<Expr>();
+        pending.push(expr);
+        while (!pending.isEmpty()) {
+            val node = pending.pop();
+            nodes.add(node);
+            switch (node.getType()) {
+            case DOUBLE_EXPR:
+            case TEXT_EXPR:
+                break;
+            case BRACKET_EXPR:
+                pending.push(((BracketExpr) node).getExpr());
+                break;
+            case UNARY_OP_EXPR:
+                pending.push(((UnaryOpExpr) node).getExpr());
+                break;
+            case BINARY_OP_EXPR:
+                pending.push(((BinaryOpExpr) node).getLhs());
+                pending.push(((BinaryOpExpr) node).getRhs());
+                break;
+            default:
+                throw new RuntimeException("unknown: " + node.getType().toString());
+            }
+        }
+        // the nodes are in reverse postfix order
+        for (int i = 0, j = nodes.size() - 1; i < j; i++, j--) {
+            val node = nodes.get(i);
+            nodes.set(i, nodes.get(j));
+            nodes.set(j, node);
+        }
+        return nodes;
+    }
+
+    private static void write(Expr expr, Output out) {
+        switch (expr.getType()) {
+        case DOUBLE_EXPR:
+            out.writeVarint(DOUBLE);
+            out.writeLong(Double.doubleToRawLongBits(((DoubleExpr) expr).getValue()));
+            break;
+        case TEXT_EXPR:
+            val bytes = ((TextExpr) expr).getText().getBytes(UTF_8);
+            out.writeVarint(TEXT);
+            out.writeVarint(bytes.length);
+            out.write(bytes, 0, bytes.length);
+            break;
+        case BRACKET_EXPR:
+            out.writeVarint(BRACKET);
+            break;
+        case UNARY_OP_EXPR:
+            out.writeVarint(NOT);
+            break;
+        case BINARY_OP_EXPR:
+            out.writeVarint(OPCODES.get(((BinaryOpExpr) expr).getOp()));
+            break;
+        default:
+            throw new RuntimeException("unknown: " + expr.getType().toString());
+        }
+    }
+
+    private static void require(boolean condition, int opcode) {
+        if (!condition) {
+            throw new IllegalArgumentException("malformed expression at opcode: " + opcode);
+        }
+    }
+
+    private static void requireRemaining(ByteBuffer in, int length) {
+        if (in.remaining() < length) {
+            throw new IllegalArgumentException("truncated expression");
+        }
+    }
+
+    private static byte readByte(ByteBuffer in) {
+        requireRemaining(in, 1);
+        return in.get();
+    }
+
+    // big endian whatever the order of the buffer
+    private static long readLong(ByteBuffer in) {
+        requireRemaining(in, Long.BYTES);
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = value << 8 | (in.get() & 0xff);
+        }
+        return value;
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            val b = readByte(in);
+            if (shift == 28 && (b & 0xf8) != 0) {
+                // more than 31 bits
+                break;
+            }
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    private static String readText(ByteBuffer in) {
+        val length = readVarint(in);
+        requireRemaining(in, length);
+        val position = in.position();
+        String text;
+        if (in.hasArray()) {
+            text = new String(in.array(), in.arrayOffset() + position, length, UTF_8);
+        } else {
+            val bytes = new byte[length];
+            in.get(bytes);
+            text = new String(bytes, UTF_8);
+        }
+        in.position(position + length);
+        return text;
+    }
+
+    private static class Output {
+        private byte[] bytes = new byte[64];
+        private int size;
+
+        void writeVarint(int value) {
+            while ((value & ~0x7f) != 0) {
+                writeByte(value & 0x7f | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                writeByte((int) (value >>> shift));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            this.bytes[this.size++] = (byte) b;
+        }
+
+        void write(byte[] src, int offset, int length) {
+            ensure(length);
+            System.arraycopy(src, offset, this.bytes, this.size, length);
+            this.size += length;
+        }
+
+        private void ensure(int length) {
+            if (this.size + length > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.size + length));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(this.bytes, this.size);
+        }
+    }
+}
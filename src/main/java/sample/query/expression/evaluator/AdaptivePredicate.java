@@ -0,0 +1,305 @@
+package sample.query.expression.evaluator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+import sample.query.expression.model.Chains;
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.ExprType;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.UnaryOp;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import lombok.Value;
+import lombok.val;
+
+/**
+ * A {@link Predicate} which evaluates the operands of every {@code AND} and
+ * {@code OR} chain in the order that short-circuits soonest for the records it
+ * sees.
+ *
+ * One in {@code sampleInterval} evaluations of a chain, picked at random by
+ * each thread, runs all its operands, timing them and counting how often they
+ * pass. Every {@code reorderInterval}-th sample the operands are sorted by
+ * their cost divided by the chance that they end the chain, and the new order
+ * is published as a new array, so that concurrent evaluations see either the
+ * old order or the new one. The statistics are then halved, so that old
+ * records weigh less.
+ *
+ * A chain of one operator is one node however long it is, while each change
+ * of operator along a chain nests a node, as each bracket does.
+ */
+public class AdaptivePredicate<R> implements Predicate<R> {
+
+    public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+    public static final int DEFAULT_REORDER_INTERVAL = 128;
+
+    private final Node<R> root;
+
+    private AdaptivePredicate(Node<R> root) {
+        this.root = root;
+    }
+
+    public static <R> AdaptivePredicate<R> compile(Expr expr, FieldAccessor<R> accessor) {
+        return compile(expr, accessor, DEFAULT_SAMPLE_INTERVAL, DEFAULT_REORDER_INTERVAL);
+    }
+
+    public static <R> AdaptivePredicate<R> compile(Expr expr, FieldAccessor<R> accessor, int sampleInterval,
+            int reorderInterval) {
+        if (sampleInterval < 1 || reorderInterval < 1) {
+            throw new IllegalArgumentException("intervals must be positive: " + sampleInterval + ", "
+                    + reorderInterval);
+        }
+        return new AdaptivePredicate<>(node(expr, accessor, sampleInterval, reorderInterval));
+    }
+
+    @Override
+    public boolean test(R record) {
+        return this.root.test(record);
+    }
+
+    // the expression with the operands in the order they are evaluated now
+    public Expr plan() {
+        return this.root.plan();
+    }
+
+    // the operands of every chain in the order they are evaluated now, outer chains first
+    public List<Statistics> statistics() {
+        val statistics = new ArrayList<Statistics>();
+        this.root.statistics(statistics);
+        return statistics;
+    }
+
+    @Value
+    public static class Statistics {
+        private final BinaryOp op;
+        private final Expr operand;
+        private final long samples;
+        private final long passes;
+        private final long nanos;
+
+        public double passRate() {
+            return this.samples == 0 ? Double.NaN : (double) this.passes / this.samples;
+        }
+
+        public double averageNanos() {
+            return this.samples == 0 ? Double.NaN : (double) this.nanos / this.samples;
+        }
+    }
+
+    private static <R> Node<R> node(Expr expr, FieldAccessor<R> accessor, int sampleInterval,
+            int reorderInterval) {
+        // runs of brackets and NOT in a loop, where two NOTs cancel out
+        boolean negated = false;
+        for (;;) {
+            if (expr.getType() == ExprType.BRACKET_EXPR) {
+                expr = ((BracketExpr) expr).getExpr();
+            } else if (expr.getType() == ExprType.UNARY_OP_EXPR) {
+                expr = ((UnaryOpExpr) expr).getExpr();
+                negated = !negated;
+            } else {
+                break;
+            }
+        }
+        final Node<R> node;
+        if (expr.getType() == ExprType.BINARY_OP_EXPR
+                && Model.LogicalBinaryOp.contains(((BinaryOpExpr) expr).getOp())) {
+            node = chain((BinaryOpExpr) expr, accessor, sampleInterval, reorderInterval);
+        } else {
+            node = new Leaf<>(expr, PredicateCompiler.compile(expr, accessor));
+        }
+        return negated ? new Not<>(node) : node;
+    }
+
+    // ((a AND b) OR c) AND d one run of an operator at a time from the left, in a loop
+    private static <R> Node<R> chain(BinaryOpExpr expr, FieldAccessor<R> accessor, int sampleInterval,
+            int reorderInterval) {
+        val spine = Chains.spine(expr);
+        Node<R> node = node(Chains.first(spine), accessor, sampleInterval, reorderInterval);
+        int i = spine.size() - 1;
+        while (i >= 0) {
+            val op = spine.get(i).getOp();
+            val operands = new ArrayList<Node<R>>();
+            operands.add(node);
+            for (; i >= 0 && spine.get(i).getOp() == op; i--) {
+                for (val operand : Chains.operands(spine.get(i).getRhs(), op)) {
+                    operands.add(node(operand, accessor, sampleInterval, reorderInterval));
+                }
+            }
+            node = new Chain<>(op, operands, sampleInterval, reorderInterval);
+        }
+        return node;
+    }
+
+    private interface Node<R> extends Predicate<R> {
+
+        public Expr plan();
+
+        public void statistics(List<Statistics> statistics);
+    }
+
+    private static class Leaf<R> implements Node<R> {
+        private final Expr expr;
+        private final Predicate<R> predicate;
+
+        Leaf(Expr expr, Predicate<R> predicate) {
+            this.expr = expr;
+            this.predicate = predicate;
+        }
+
+        @Override
+        public boolean test(R record) {
+            return this.predicate.test(record);
+        }
+
+        @Override
+        public Expr plan() {
+            return this.expr;
+        }
+
+        @Override
+        public void statistics(List<Statistics> statistics) {
+        }
+    }
+
+    private static class Not<R> implements Node<R> {
+        private final Node<R> node;
+
+        Not(Node<R> node) {
+            this.node = node;
+        }
+
+        @Override
+        public boolean test(R record) {
+            return !this.node.test(record);
+        }
+
+        @Override
+        public Expr plan() {
+            return Model.unaryOpExpr(UnaryOp.NOT, this.node.plan());
+        }
+
+        @Override
+        public void statistics(List<Statistics> statistics) {
+            this.node.statistics(statistics);
+        }
+    }
+
+    private static class Chain<R> implements Node<R> {
+        private final BinaryOp op;
+        // the value which ends the chain: false for AND, true for OR
+        private final boolean stop;
+        private final Node<R>[] operands;
+        private final int sampleInterval;
+        private final int reorderInterval;
+
+        // indexes into operands, replaced as a whole
+        private volatile int[] order;
+        // only samples touch shared counters, so that threads do not contend on every evaluation
+        private final AtomicInteger sampleCount = new AtomicInteger();
+
+        private final AtomicLongArray samples;
+        private final AtomicLongArray passes;
+        private final AtomicLongArray nanos;
+
+        @SuppressWarnings("unchecked")
+        Chain(BinaryOp op, List<Node<R>> operands, int sampleInterval, int reorderInterval) {
+            this.op = op;
+            this.stop = op == BinaryOp.OR;
+            this.operands = (Node<R>[]) operands.toArray(new Node<?>[0]);
+            this.sampleInterval = sampleInterval;
+            this.reorderInterval = reorderInterval;
+            this.order = new int[this.operands.length];
+            Arrays.setAll(this.order, i -> i);
+            this.samples = new AtomicLongArray(this.operands.length);
+            this.passes = new AtomicLongArray(this.operands.length);
+            this.nanos = new AtomicLongArray(this.operands.length);
+        }
+
+        @Override
+        public boolean test(R record) {
+            val order = this.order;
+            if (ThreadLocalRandom.current().nextInt(this.sampleInterval) == 0) {
+                return sample(record, order);
+            }
+            for (val i : order) {
+                if (this.operands[i].test(record) == this.stop) {
+                    return this.stop;
+                }
+            }
+            return !this.stop;
+        }
+
+        // runs every operand, since the ones after the first stop need statistics too
+        private boolean sample(R record, int[] order) {
+            boolean result = !this.stop;
+            for (val i : order) {
+                val start = System.nanoTime();
+                val pass = this.operands[i].test(record);
+                this.nanos.addAndGet(i, System.nanoTime() - start);
+                this.samples.incrementAndGet(i);
+                if (pass) {
+                    this.passes.incrementAndGet(i);
+                }
+                if (pass == this.stop) {
+                    result = this.stop;
+                }
+            }
+            if (this.sampleCount.incrementAndGet() % this.reorderInterval == 0) {
+                reorder();
+            }
+            return result;
+        }
+
+        private synchronized void reorder() {
+            val ranks = new double[this.operands.length];
+            for (int i = 0; i < ranks.length; i++) {
+                val samples = Math.max(this.samples.get(i), 1);
+                val cost = Math.max((double) this.nanos.get(i) / samples, 1.0);
+                val passRate = (double) this.passes.get(i) / samples;
+                // the chance that this operand ends the chain
+                val stopRate = this.stop ? passRate : 1.0 - passRate;
+                ranks[i] = cost / Math.max(stopRate, 1e-3);
+
+                this.samples.getAndUpdate(i, x -> x / 2);
+                this.passes.getAndUpdate(i, x -> x / 2);
+                this.nanos.getAndUpdate(i, x -> x / 2);
+            }
+            val order = Arrays.stream(this.order).boxed()
+                    .sorted(Comparator.comparingDouble(i -> ranks[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            this.order = order;
+        }
+
+        @Override
+        public Expr plan() {
+            val order = this.order;
+            Expr expr = this.operands[order[0]].plan();
+            for (int i = 1; i < order.length; i++) {
+                expr = Model.binaryOpExpr(expr, this.op, this.operands[order[i]].plan());
+            }
+            return expr;
+        }
+
+        @Override
+        public void statistics(List<Statistics> statistics) {
+            val order = this.order;
+            for (val i : order) {
+                statistics.add(new Statistics(this.op, this.operands[i].plan(), this.samples.get(i),
+                        this.passes.get(i), this.nanos.get(i)));
+            }
+            for (val i : order) {
+                this.operands[i].statistics(statistics);
+            }
+        }
+    }
+}
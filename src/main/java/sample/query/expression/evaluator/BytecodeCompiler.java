@@ -0,0 +1,201 @@
+package sample.query.expression.evaluator;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compiles an {@link Expr} into a dedicated class whose {@code test} method is
+ * straight-line code, so that the JIT sees one monomorphic method per filter
+ * instead of a tree of lambdas.
+ *
+ * Classes are defined as hidden classes when the running JDK supports them,
+ * which lets them be unloaded together with the predicate. Expressions with a
+ * single comparison, or a JDK which cannot define classes at runtime, get the
+ * {@link PredicateCompiler} predicate.
+ */
+@Slf4j
+public class BytecodeCompiler {
+
+    public static final int MIN_COMPARISONS = 2;
+    public static final int DEFAULT_TIER_THRESHOLD = 10_000;
+
+    private static final String CLASS_NAME = "sample/query/expression/evaluator/CompiledPredicate";
+    private static final AtomicLong classCount = new AtomicLong();
+    private static final Definer definer = Definer.create();
+
+    public static <R> Predicate<R> compile(Expr expr, FieldAccessor<R> accessor) {
+        if (definer == null || comparisons(expr, MIN_COMPARISONS) < MIN_COMPARISONS) {
+            return PredicateCompiler.compile(expr, accessor);
+        }
+        return generate(expr, accessor);
+    }
+
+    /**
+     * Starts with the {@link PredicateCompiler} predicate and switches to the
+     * generated class once it has been tested {@code threshold} times, so that
+     * short-lived filters never pay for class generation.
+     */
+    public static <R> Predicate<R> tiered(Expr expr, FieldAccessor<R> accessor, int threshold) {
+        return new TieredPredicate<>(expr, accessor, threshold);
+    }
+
+    public static <R> Predicate<R> tiered(Expr expr, FieldAccessor<R> accessor) {
+        return tiered(expr, accessor, DEFAULT_TIER_THRESHOLD);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> Predicate<R> generate(Expr expr, FieldAccessor<R> accessor) {
+        try {
+            val name = CLASS_NAME + "$" + classCount.incrementAndGet();
+            val bytes = PredicateClassWriter.write(name, expr);
+            val lookup = definer.define(bytes);
+            val ctor = lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, FieldAccessor.class));
+            return (Predicate<R>) ctor.invoke(accessor);
+        } catch (VirtualMachineError e) {
+            throw e;
+        } catch (Throwable e) {
+            // also reached for expressions the interpreted predicate rejects, which it reports again
+            log.debug("falls back to the interpreted predicate: {}", expr, e);
+            return PredicateCompiler.compile(expr, accessor);
+        }
+    }
+
+    // counts comparisons up to limit, in a loop
+    private static int comparisons(Expr expr, int limit) {
+        Expr[] stack = new Expr[16];
+        int top = 0;
+        stack[0] = expr;
+        int count = 0;
+        while (top >= 0 && count < limit) {
+            val e = stack[top--];
+            if (top + 2 >= stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            switch (e.getType()) {
+            case DOUBLE_EXPR:
+            case TEXT_EXPR:
+                count++;
+                break;
+            case BRACKET_EXPR:
+                stack[++top] = ((BracketExpr) e).getExpr();
+                break;
+            case UNARY_OP_EXPR:
+                stack[++top] = ((UnaryOpExpr) e).getExpr();
+                break;
+            case BINARY_OP_EXPR:
+                val binary = (BinaryOpExpr) e;
+                if (Model.ComparableOp.contains(binary.getOp())) {
+                    count++;
+                } else {
+                    stack[++top] = binary.getRhs();
+                    stack[++top] = binary.getLhs();
+                }
+                break;
+            default:
+                throw new RuntimeException("unknown: " + e.getType().toString());
+            }
+        }
+        return count;
+    }
+
+    static boolean greaterThan(String text, String value) {
+        return text != null && text.compareTo(value) > 0;
+    }
+
+    static boolean greaterThanOrEqualTo(String text, String value) {
+        return text != null && text.compareTo(value) >= 0;
+    }
+
+    static boolean lessThan(String text, String value) {
+        return text != null && text.compareTo(value) < 0;
+    }
+
+    static boolean lessThanOrEqualTo(String text, String value) {
+        return text != null && text.compareTo(value) <= 0;
+    }
+
+    private static class TieredPredicate<R> implements Predicate<R> {
+        private final Expr expr;
+        private final FieldAccessor<R> accessor;
+        private final int threshold;
+        private volatile Predicate<R> delegate;
+        private int count;
+
+        TieredPredicate(Expr expr, FieldAccessor<R> accessor, int threshold) {
+            this.expr = expr;
+            this.accessor = accessor;
+            this.threshold = threshold;
+            this.delegate = PredicateCompiler.compile(expr, accessor);
+        }
+
+        @Override
+        public boolean test(R record) {
+            // a racy count only moves the switch by a few evaluations
+            if (this.count < this.threshold && ++this.count == this.threshold) {
+                this.delegate = compile(this.expr, this.accessor);
+            }
+            return this.delegate.test(record);
+        }
+    }
+
+    /**
+     * Defines classes in this package through {@code Lookup.defineHiddenClass}
+     * (JDK 15) or {@code Lookup.defineClass} (JDK 9), looked up reflectively so
+     * that the library still runs on older JDKs.
+     */
+    private static class Definer {
+        private final Lookup lookup;
+        private final Method defineHiddenClass;
+        private final Object hiddenClassOptions;
+        private final Method defineClass;
+
+        private Definer(Lookup lookup, Method defineHiddenClass, Object hiddenClassOptions, Method defineClass) {
+            this.lookup = lookup;
+            this.defineHiddenClass = defineHiddenClass;
+            this.hiddenClassOptions = hiddenClassOptions;
+            this.defineClass = defineClass;
+        }
+
+        static Definer create() {
+            val lookup = MethodHandles.lookup();
+            try {
+                val optionType = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+                val options = Array.newInstance(optionType, 0);
+                val method = Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class,
+                        options.getClass());
+                return new Definer(lookup, method, options, null);
+            } catch (ReflectiveOperationException e) {
+                // before JDK 15
+            }
+            try {
+                return new Definer(lookup, null, null, Lookup.class.getMethod("defineClass", byte[].class));
+            } catch (ReflectiveOperationException e) {
+                // before JDK 9
+            }
+            return null;
+        }
+
+        Lookup define(byte[] bytes) throws ReflectiveOperationException {
+            if (this.defineHiddenClass != null) {
+                return (Lookup) this.defineHiddenClass.invoke(this.lookup, bytes, true, this.hiddenClassOptions);
+            }
+            val type = (Class<?>) this.defineClass.invoke(this.lookup, (Object) bytes);
+            return this.lookup.in(type);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package sample.query.expression.evaluator;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.ExprType;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.TextExpr;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.val;
+
+/**
+ * A relational {@link BinaryOpExpr} normalized to {@code key op literal}.
+ *
+ * The text on the left hand side names a key and the operand on the right hand
+ * side is a literal; {@code 5 < key} is turned into {@code key > 5} and a
+ * comparison between two numbers is folded into a constant.
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class Comparison {
+
+    public enum Kind {
+        NUMBER, TEXT, CONSTANT;
+    }
+
+    private final Kind kind;
+    private final String key;
+    private final BinaryOp op;
+    private final double number;
+    private final String text;
+    private final boolean constant;
+
+    public static Comparison of(BinaryOpExpr expr) {
+        val op = expr.getOp();
+        if (!Model.ComparableOp.contains(op)) {
+            throw new IllegalArgumentException("not a comparison: " + expr);
+        }
+        val lhs = operand(expr.getLhs());
+        val rhs = operand(expr.getRhs());
+        if (lhs.getType() == ExprType.TEXT_EXPR) {
+            val key = ((TextExpr) lhs).getText();
+            if (rhs.getType() == ExprType.DOUBLE_EXPR) {
+                return new Comparison(Kind.NUMBER, key, op, ((DoubleExpr) rhs).getValue(), null, false);
+            }
+            if (rhs.getType() == ExprType.TEXT_EXPR) {
+                return new Comparison(Kind.TEXT, key, op, Double.NaN, ((TextExpr) rhs).getText(), false);
+            }
+        } else if (lhs.getType() == ExprType.DOUBLE_EXPR) {
+            val value = ((DoubleExpr) lhs).getValue();
+            if (rhs.getType() == ExprType.DOUBLE_EXPR) {
+                val result = compare(op, value, ((DoubleExpr) rhs).getValue());
+                return new Comparison(Kind.CONSTANT, null, op, Double.NaN, null, result);
+            }
+            if (rhs.getType() == ExprType.TEXT_EXPR) {
+                val key = ((TextExpr) rhs).getText();
+                return new Comparison(Kind.NUMBER, key, op.mirror(), value, null, false);
+            }
+        }
+        throw new IllegalArgumentException("unsupported comparison: " + expr);
+    }
+
+    // brackets around a single operand such as "(key1) = 3" do not change its meaning
+    private static Expr operand(Expr expr) {
+        while (expr.getType() == ExprType.BRACKET_EXPR) {
+            expr = ((BracketExpr) expr).getExpr();
+        }
+        return expr;
+    }
+
+    public boolean test(double value) {
+        return compare(this.op, value, this.number);
+    }
+
+    public boolean test(String value) {
+        return compare(this.op, value, this.text);
+    }
+
+    public static boolean compare(BinaryOp op, double lhs, double rhs) {
+        switch (op) {
+        case EQUAL_TO:
+            return lhs == rhs;
+        case NOT_EQUAL_TO:
+            return lhs != rhs;
+        case GREATER_THAN:
+            return lhs > rhs;
+        case GREATER_THAN_OR_EQUAL_TO:
+            return lhs >= rhs;
+        case LESS_THAN:
+            return lhs < rhs;
+        case LESS_THAN_OR_EQUAL_TO:
+            return lhs <= rhs;
+        default:
+            throw new RuntimeException("unknown: " + op.getCode());
+        }
+    }
+
+    // a missing (null) value is only not equal to any literal
+    public static boolean compare(BinaryOp op, String lhs, String rhs) {
+        switch (op) {
+        case EQUAL_TO:
+            return rhs.equals(lhs);
+        case NOT_EQUAL_TO:
+            return !rhs.equals(lhs);
+        case GREATER_THAN:
+            return lhs != null && lhs.compareTo(rhs) > 0;
+        case GREATER_THAN_OR_EQUAL_TO:
+            return lhs != null && lhs.compareTo(rhs) >= 0;
+        case LESS_THAN:
+            return lhs != null && lhs.compareTo(rhs) < 0;
+        case LESS_THAN_OR_EQUAL_TO:
+            return lhs != null && lhs.compareTo(rhs) <= 0;
+        default:
+            throw new RuntimeException("unknown: " + op.getCode());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package sample.query.expression.evaluator;
+
+import java.util.Map;
+
+/**
+ * Reads the value of a key from a record.
+ *
+ * A missing or non-numeric value is {@code NaN} for {@link #getDouble} and a
+ * missing value is {@code null} for {@link #getText}.
+ */
+public interface FieldAccessor<R> {
+
+    public double getDouble(R record, String key);
+
+    public String getText(R record, String key);
+
+    public default boolean getBoolean(R record, String key) {
+        return Boolean.parseBoolean(getText(record, key));
+    }
+
+    public static FieldAccessor<Map<String, ?>> ofMap() {
+        return new FieldAccessor<Map<String, ?>>() {
+
+            @Override
+            public double getDouble(Map<String, ?> record, String key) {
+                final Object value = record.get(key);
+                return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+            }
+
+            @Override
+            public String getText(Map<String, ?> record, String key) {
+                final Object value = record.get(key);
+                return value == null ? null : value.toString();
+            }
+
+            @Override
+            public boolean getBoolean(Map<String, ?> record, String key) {
+                final Object value = record.get(key);
+                if (value instanceof Boolean) {
+                    return (Boolean) value;
+                }
+                return value != null && Boolean.parseBoolean(value.toString());
+            }
+        };
+    }
+}
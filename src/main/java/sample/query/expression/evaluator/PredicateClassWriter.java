@@ -0,0 +1,618 @@
+package sample.query.expression.evaluator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import lombok.val;
+
+/**
+ * Writes the class file of a {@code Predicate} whose {@code test} method is the
+ * straight-line, short-circuit code of one {@link Expr}.
+ *
+ * The generated class keeps the {@link FieldAccessor} in a field and inlines
+ * every key and literal as a constant. Every branch target has an empty operand
+ * stack and the initial locals, so each stack map frame is a same frame.
+ */
+final class PredicateClassWriter {
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String STRING = "java/lang/String";
+    private static final String PREDICATE = "java/util/function/Predicate";
+    private static final String ACCESSOR = "sample/query/expression/evaluator/FieldAccessor";
+    private static final String SUPPORT = "sample/query/expression/evaluator/BytecodeCompiler";
+    private static final String TEXT_COMPARE = "(Ljava/lang/String;Ljava/lang/String;)Z";
+
+    private static final int MAGIC = 0xcafebabe;
+    private static final int VERSION = 52;
+    private static final int MAX_BRANCH = Short.MAX_VALUE;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DCMPL = 0x97;
+    private static final int DCMPG = 0x98;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IFLT = 0x9b;
+    private static final int IFGE = 0x9c;
+    private static final int IFGT = 0x9d;
+    private static final int IFLE = 0x9e;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+
+    private static final int SAME_FRAME_MAX = 63;
+    private static final int SAME_FRAME_EXTENDED = 251;
+
+    private static class Label {
+        private int offset = -1;
+        private final List<Integer> branches = new ArrayList<>();
+    }
+
+    private final String className;
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndexes = new HashMap<>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+    private final DataOutputStream code = new DataOutputStream(codeBytes);
+    private final List<Label> labels = new ArrayList<>();
+    private final Map<Expr, Boolean> constants = new IdentityHashMap<>();
+    // the work of jump and constants, which nests as deep as the expression
+    private Object[] pending = new Object[48];
+    private int top = -1;
+
+    private PredicateClassWriter(String className) {
+        this.className = className;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the expression does not fit into one method
+     */
+    static byte[] write(String className, Expr expr) {
+        try {
+            return new PredicateClassWriter(className).writeClass(expr);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] writeClass(Expr expr) throws IOException {
+        val thisClass = classRef(this.className);
+        val superClass = classRef(OBJECT);
+        val predicate = classRef(PREDICATE);
+        val accessorField = fieldRef(this.className, "accessor", "L" + ACCESSOR + ";");
+        val objectInit = methodRef(OBJECT, "<init>", "()V", false);
+        val init = writeInit(objectInit, accessorField);
+        val test = writeTest(expr, accessorField);
+
+        val out = new ByteArrayOutputStream();
+        val file = new DataOutputStream(out);
+        file.writeInt(MAGIC);
+        file.writeShort(0);
+        file.writeShort(VERSION);
+        val codeName = utf8("Code");
+        val frameName = utf8("StackMapTable");
+        val fieldName = utf8("accessor");
+        val fieldType = utf8("L" + ACCESSOR + ";");
+        val initName = utf8("<init>");
+        val initType = utf8("(L" + ACCESSOR + ";)V");
+        val testName = utf8("test");
+        val testType = utf8("(L" + OBJECT + ";)Z");
+        file.writeShort(this.poolCount);
+        this.poolBytes.writeTo(out);
+
+        file.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        file.writeShort(thisClass);
+        file.writeShort(superClass);
+        file.writeShort(1);
+        file.writeShort(predicate);
+
+        file.writeShort(1);
+        file.writeShort(ACC_PRIVATE | ACC_FINAL);
+        file.writeShort(fieldName);
+        file.writeShort(fieldType);
+        file.writeShort(0);
+
+        file.writeShort(2);
+        writeMethod(file, initName, initType, codeName, 2, init, null, frameName);
+        writeMethod(file, testName, testType, codeName, 4, test, frames(), frameName);
+        file.writeShort(0);
+        return out.toByteArray();
+    }
+
+    private byte[] writeInit(int objectInit, int accessorField) throws IOException {
+        code.writeByte(ALOAD_0);
+        code.writeByte(INVOKESPECIAL);
+        code.writeShort(objectInit);
+        code.writeByte(ALOAD_0);
+        code.writeByte(ALOAD_1);
+        code.writeByte(PUTFIELD);
+        code.writeShort(accessorField);
+        code.writeByte(RETURN);
+        val bytes = this.codeBytes.toByteArray();
+        this.codeBytes.reset();
+        return bytes;
+    }
+
+    private byte[] writeTest(Expr expr, int accessorField) throws IOException {
+        val constant = constant(expr);
+        if (constant != null) {
+            code.writeByte(constant ? ICONST_1 : ICONST_0);
+            code.writeByte(IRETURN);
+            return this.codeBytes.toByteArray();
+        }
+
+        val isFalse = new Label();
+        jump(expr, false, isFalse, accessorField);
+        code.writeByte(ICONST_1);
+        code.writeByte(IRETURN);
+        place(isFalse);
+        code.writeByte(ICONST_0);
+        code.writeByte(IRETURN);
+
+        val bytes = this.codeBytes.toByteArray();
+        if (bytes.length > MAX_BRANCH) {
+            throw new IllegalArgumentException("too large expression: " + bytes.length + " bytes");
+        }
+        for (val label : this.labels) {
+            for (val branch : label.branches) {
+                val delta = label.offset - branch;
+                bytes[branch + 1] = (byte) (delta >> 8);
+                bytes[branch + 2] = (byte) delta;
+            }
+        }
+        return bytes;
+    }
+
+    private void writeMethod(DataOutputStream file, int name, int type, int codeName, int maxStack,
+            byte[] bytes, byte[] frames, int frameName) throws IOException {
+        val frameLength = frames == null ? 0 : 2 + 4 + frames.length;
+        file.writeShort(ACC_PUBLIC);
+        file.writeShort(name);
+        file.writeShort(type);
+        file.writeShort(1);
+        file.writeShort(codeName);
+        file.writeInt(2 + 2 + 4 + bytes.length + 2 + 2 + frameLength);
+        file.writeShort(maxStack);
+        file.writeShort(2);
+        file.writeInt(bytes.length);
+        file.write(bytes);
+        file.writeShort(0);
+        if (frames == null) {
+            file.writeShort(0);
+        } else {
+            file.writeShort(1);
+            file.writeShort(frameName);
+            file.writeInt(frames.length);
+            file.write(frames);
+        }
+    }
+
+    private byte[] frames() throws IOException {
+        val offsets = new TreeSet<Integer>();
+        for (val label : this.labels) {
+            if (!label.branches.isEmpty()) {
+                offsets.add(label.offset);
+            }
+        }
+        val bytes = new ByteArrayOutputStream();
+        val out = new DataOutputStream(bytes);
+        out.writeShort(offsets.size());
+        int previous = -1;
+        for (val offset : offsets) {
+            val delta = offset - previous - 1;
+            if (delta <= SAME_FRAME_MAX) {
+                out.writeByte(delta);
+            } else {
+                out.writeByte(SAME_FRAME_EXTENDED);
+                out.writeShort(delta);
+            }
+            previous = offset;
+        }
+        return bytes.toByteArray();
+    }
+
+    // emits code which jumps to target when expr evaluates to jumpIf and falls through otherwise
+    private void jump(Expr expr, boolean jumpIf, Label target, int accessorField) throws IOException {
+        val bottom = this.top;
+        push(expr, jumpIf, target);
+        while (this.top > bottom) {
+            val item = pop();
+            if (item instanceof Label) {
+                place((Label) item);
+            } else {
+                jumpExpr((Expr) item, (Boolean) pop(), (Label) pop(), accessorField);
+            }
+        }
+    }
+
+    private void jumpExpr(Expr expr, boolean jumpIf, Label target, int accessorField) throws IOException {
+        switch (expr.getType()) {
+        case TEXT_EXPR:
+            loadField(accessorField, ((TextExpr) expr).getText());
+            invokeAccessor("getBoolean", "Z");
+            branch(jumpIf ? IFNE : IFEQ, target);
+            break;
+        case BRACKET_EXPR:
+            push(((BracketExpr) expr).getExpr(), jumpIf, target);
+            break;
+        case UNARY_OP_EXPR:
+            push(((UnaryOpExpr) expr).getExpr(), !jumpIf, target);
+            break;
+        case BINARY_OP_EXPR:
+            jumpBinaryOpExpr((BinaryOpExpr) expr, jumpIf, target, accessorField);
+            break;
+        default:
+            throw new RuntimeException("unknown: " + expr.getType().toString());
+        }
+    }
+
+    // pushes the jumps in the reverse order of the code, so that an AND/OR chain of any length loops
+    private void jumpBinaryOpExpr(BinaryOpExpr expr, boolean jumpIf, Label target, int accessorField)
+            throws IOException {
+        val op = expr.getOp();
+        if (Model.ComparableOp.contains(op)) {
+            jumpComparison(Comparison.of(expr), jumpIf, target, accessorField);
+            return;
+        }
+
+        // a constant operand of a non-constant AND/OR is the neutral one and can be left out
+        val lhs = expr.getLhs();
+        val rhs = expr.getRhs();
+        if (constant(lhs) != null) {
+            push(rhs, jumpIf, target);
+            return;
+        }
+        if (constant(rhs) != null) {
+            push(lhs, jumpIf, target);
+            return;
+        }
+
+        val shortCircuit = op == BinaryOp.OR;
+        if (jumpIf == shortCircuit) {
+            push(rhs, jumpIf, target);
+            push(lhs, jumpIf, target);
+        } else {
+            val skip = new Label();
+            push(skip);
+            push(rhs, jumpIf, target);
+            push(lhs, shortCircuit, skip);
+        }
+    }
+
+    private void push(Expr expr, boolean jumpIf, Label target) {
+        push(target);
+        push(jumpIf);
+        push(expr);
+    }
+
+    private void push(Object item) {
+        if (this.top + 1 == this.pending.length) {
+            this.pending = Arrays.copyOf(this.pending, this.pending.length * 2);
+        }
+        this.pending[++this.top] = item;
+    }
+
+    private Object pop() {
+        val item = this.pending[this.top];
+        this.pending[this.top--] = null;
+        return item;
+    }
+
+    private void jumpComparison(Comparison comparison, boolean jumpIf, Label target, int accessorField)
+            throws IOException {
+        val op = comparison.getOp();
+        switch (comparison.getKind()) {
+        case NUMBER:
+            loadField(accessorField, comparison.getKey());
+            invokeAccessor("getDouble", "D");
+            code.writeByte(LDC2_W);
+            code.writeShort(doubleConstant(comparison.getNumber()));
+            // dcmpl yields -1 and dcmpg yields 1 for NaN, so that only != holds for a missing value
+            switch (op) {
+            case EQUAL_TO:
+                code.writeByte(DCMPL);
+                branch(jumpIf ? IFEQ : IFNE, target);
+                break;
+            case NOT_EQUAL_TO:
+                code.writeByte(DCMPL);
+                branch(jumpIf ? IFNE : IFEQ, target);
+                break;
+            case GREATER_THAN:
+                code.writeByte(DCMPL);
+                branch(jumpIf ? IFGT : IFLE, target);
+                break;
+            case GREATER_THAN_OR_EQUAL_TO:
+                code.writeByte(DCMPL);
+                branch(jumpIf ? IFGE : IFLT, target);
+                break;
+            case LESS_THAN:
+                code.writeByte(DCMPG);
+                branch(jumpIf ? IFLT : IFGE, target);
+                break;
+            case LESS_THAN_OR_EQUAL_TO:
+                code.writeByte(DCMPG);
+                branch(jumpIf ? IFLE : IFGT, target);
+                break;
+            default:
+                throw new RuntimeException("unknown: " + op.getCode());
+            }
+            break;
+        case TEXT:
+            if (op == BinaryOp.EQUAL_TO || op == BinaryOp.NOT_EQUAL_TO) {
+                loadString(comparison.getText());
+                loadField(accessorField, comparison.getKey());
+                invokeAccessor("getText", "L" + STRING + ";");
+                code.writeByte(INVOKEVIRTUAL);
+                code.writeShort(methodRef(STRING, "equals", "(L" + OBJECT + ";)Z", false));
+                branch(jumpIf == (op == BinaryOp.EQUAL_TO) ? IFNE : IFEQ, target);
+            } else {
+                loadField(accessorField, comparison.getKey());
+                invokeAccessor("getText", "L" + STRING + ";");
+                loadString(comparison.getText());
+                code.writeByte(INVOKESTATIC);
+                code.writeShort(methodRef(SUPPORT, textCompare(op), TEXT_COMPARE, false));
+                branch(jumpIf ? IFNE : IFEQ, target);
+            }
+            break;
+        default:
+            throw new RuntimeException("unknown: " + comparison.getKind().toString());
+        }
+    }
+
+    private static String textCompare(BinaryOp op) {
+        switch (op) {
+        case GREATER_THAN:
+            return "greaterThan";
+        case GREATER_THAN_OR_EQUAL_TO:
+            return "greaterThanOrEqualTo";
+        case LESS_THAN:
+            return "lessThan";
+        case LESS_THAN_OR_EQUAL_TO:
+            return "lessThanOrEqualTo";
+        default:
+            throw new RuntimeException("unknown: " + op.getCode());
+        }
+    }
+
+    private Boolean constant(Expr expr) {
+        if (!this.constants.containsKey(expr)) {
+            constants(expr);
+        }
+        return this.constants.get(expr);
+    }
+
+    // works out the constants of the nodes under expr children first, in a loop
+    private void constants(Expr expr) {
+        // above the pending jumps when called from jump
+        val bottom = this.top;
+        push(expr);
+        while (this.top > bottom) {
+            val item = pop();
+            if (item instanceof Boolean) {
+                val node = (Expr) pop();
+                this.constants.put(node, constantExpr(node));
+            } else if (!this.constants.containsKey(item)) {
+                push(item);
+                push(Boolean.TRUE);
+                val node = (Expr) item;
+                switch (node.getType()) {
+                case BRACKET_EXPR:
+                    push(((BracketExpr) node).getExpr());
+                    break;
+                case UNARY_OP_EXPR:
+                    push(((UnaryOpExpr) node).getExpr());
+                    break;
+                case BINARY_OP_EXPR:
+                    if (!Model.ComparableOp.contains(((BinaryOpExpr) node).getOp())) {
+                        push(((BinaryOpExpr) node).getRhs());
+                        push(((BinaryOpExpr) node).getLhs());
+                    }
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+    }
+
+    // the constant of expr from the constants of its children
+    private Boolean constantExpr(Expr expr) {
+        switch (expr.getType()) {
+        case DOUBLE_EXPR:
+            return ((DoubleExpr) expr).getValue() != 0;
+        case TEXT_EXPR:
+            return null;
+        case BRACKET_EXPR:
+            return this.constants.get(((BracketExpr) expr).getExpr());
+        case UNARY_OP_EXPR:
+            val nested = this.constants.get(((UnaryOpExpr) expr).getExpr());
+            return nested == null ? null : !nested;
+        case BINARY_OP_EXPR:
+            return constantBinaryOpExpr((BinaryOpExpr) expr);
+        default:
+            throw new RuntimeException("unknown: " + expr.getType().toString());
+        }
+    }
+
+    private Boolean constantBinaryOpExpr(BinaryOpExpr expr) {
+        val op = expr.getOp();
+        if (Model.ComparableOp.contains(op)) {
+            val comparison = Comparison.of(expr);
+            return comparison.getKind() == Comparison.Kind.CONSTANT ? comparison.isConstant() : null;
+        }
+        val lhs = this.constants.get(expr.getLhs());
+        val rhs = this.constants.get(expr.getRhs());
+        val dominant = op == BinaryOp.OR;
+        if (Boolean.valueOf(dominant).equals(lhs) || Boolean.valueOf(dominant).equals(rhs)) {
+            return dominant;
+        }
+        if (lhs != null && rhs != null) {
+            return !dominant;
+        }
+        return null;
+    }
+
+    private void loadField(int accessorField, String key) throws IOException {
+        code.writeByte(ALOAD_0);
+        code.writeByte(GETFIELD);
+        code.writeShort(accessorField);
+        code.writeByte(ALOAD_1);
+        loadString(key);
+    }
+
+    private void invokeAccessor(String name, String returnType) throws IOException {
+        code.writeByte(INVOKEINTERFACE);
+        code.writeShort(methodRef(ACCESSOR, name, "(L" + OBJECT + ";L" + STRING + ";)" + returnType, true));
+        code.writeByte(3);
+        code.writeByte(0);
+    }
+
+    private void loadString(String value) throws IOException {
+        val index = stringConstant(value);
+        if (index <= 0xff) {
+            code.writeByte(LDC);
+            code.writeByte(index);
+        } else {
+            code.writeByte(LDC_W);
+            code.writeShort(index);
+        }
+    }
+
+    private void branch(int opcode, Label target) throws IOException {
+        target.branches.add(this.codeBytes.size());
+        code.writeByte(opcode);
+        code.writeShort(0);
+    }
+
+    private void place(Label label) {
+        label.offset = this.codeBytes.size();
+        this.labels.add(label);
+    }
+
+    private int utf8(String value) throws IOException {
+        val key = "U" + value;
+        val index = this.poolIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        pool.writeByte(1);
+        pool.writeUTF(value);
+        return add(key, 1);
+    }
+
+    private int classRef(String name) throws IOException {
+        val key = "C" + name;
+        val index = this.poolIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        val nameIndex = utf8(name);
+        pool.writeByte(7);
+        pool.writeShort(nameIndex);
+        return add(key, 1);
+    }
+
+    private int stringConstant(String value) throws IOException {
+        val key = "S" + value;
+        val index = this.poolIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        val valueIndex = utf8(value);
+        pool.writeByte(8);
+        pool.writeShort(valueIndex);
+        return add(key, 1);
+    }
+
+    private int doubleConstant(double value) throws IOException {
+        val bits = Double.doubleToRawLongBits(value);
+        val key = "D" + bits;
+        val index = this.poolIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        pool.writeByte(6);
+        pool.writeLong(bits);
+        return add(key, 2);
+    }
+
+    private int fieldRef(String owner, String name, String type) throws IOException {
+        return memberRef(9, owner, name, type);
+    }
+
+    private int methodRef(String owner, String name, String type, boolean isInterface) throws IOException {
+        return memberRef(isInterface ? 11 : 10, owner, name, type);
+    }
+
+    private int memberRef(int tag, String owner, String name, String type) throws IOException {
+        val key = "M" + tag + owner + "." + name + type;
+        val index = this.poolIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        val ownerIndex = classRef(owner);
+        val nameAndType = nameAndType(name, type);
+        pool.writeByte(tag);
+        pool.writeShort(ownerIndex);
+        pool.writeShort(nameAndType);
+        return add(key, 1);
+    }
+
+    private int nameAndType(String name, String type) throws IOException {
+        val key = "N" + name + ":" + type;
+        val index = this.poolIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        val nameIndex = utf8(name);
+        val typeIndex = utf8(type);
+        pool.writeByte(12);
+        pool.writeShort(nameIndex);
+        pool.writeShort(typeIndex);
+        return add(key, 1);
+    }
+
+    private int add(String key, int slots) {
+        val index = this.poolCount;
+        if (index + slots > 0xffff) {
+            throw new IllegalArgumentException("too many constants");
+        }
+        this.poolIndexes.put(key, index);
+        this.poolCount += slots;
+        return index;
+    }
+}
@@ -0,0 +1,215 @@
+package sample.query.expression.evaluator;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import sample.query.expression.model.Chains;
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.ExprType;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import lombok.val;
+
+/**
+ * Compiles an {@link Expr} into a {@link Predicate} over records.
+ *
+ * Operators and operand types are resolved once here, so evaluating the
+ * predicate only reads fields, compares them and short-circuits.
+ * A text on its own is read as a boolean flag and a number on its own is true
+ * unless it is zero.
+ */
+public class PredicateCompiler<R> {
+
+    private final FieldAccessor<R> accessor;
+
+    private PredicateCompiler(FieldAccessor<R> accessor) {
+        this.accessor = accessor;
+    }
+
+    public static <R> Predicate<R> compile(Expr expr, FieldAccessor<R> accessor) {
+        return new PredicateCompiler<>(accessor).compile(expr);
+    }
+
+    private Predicate<R> compile(Expr expr) {
+        // runs of brackets and NOT in a loop, so only the operands of chains recurse
+        boolean negated = false;
+        for (;;) {
+            if (expr.getType() == ExprType.BRACKET_EXPR) {
+                expr = ((BracketExpr) expr).getExpr();
+            } else if (expr.getType() == ExprType.UNARY_OP_EXPR) {
+                negated = negated != negates((UnaryOpExpr) expr);
+                expr = ((UnaryOpExpr) expr).getExpr();
+            } else {
+                break;
+            }
+        }
+        val compiled = compileOperand(expr);
+        return negated ? r -> !compiled.test(r) : compiled;
+    }
+
+    private Predicate<R> compileOperand(Expr expr) {
+        switch (expr.getType()) {
+        case DOUBLE_EXPR:
+            return constant(((DoubleExpr) expr).getValue() != 0);
+        case TEXT_EXPR:
+            return compileTextExpr((TextExpr) expr);
+        case BINARY_OP_EXPR:
+            return compileBinaryOpExpr((BinaryOpExpr) expr);
+        default:
+            throw new RuntimeException("unknown: " + expr.getType().toString());
+        }
+    }
+
+    private Predicate<R> compileTextExpr(TextExpr expr) {
+        val accessor = this.accessor;
+        val key = expr.getText();
+        return r -> accessor.getBoolean(r, key);
+    }
+
+    private static boolean negates(UnaryOpExpr expr) {
+        switch (expr.getOp()) {
+        case NOT:
+            return true;
+        default:
+            throw new RuntimeException("unknown: " + expr.getOp().getCode());
+        }
+    }
+
+    private Predicate<R> compileBinaryOpExpr(BinaryOpExpr expr) {
+        val op = expr.getOp();
+        if (Model.ComparableOp.contains(op)) {
+            return compileComparison(Comparison.of(expr));
+        }
+
+        val spine = Chains.spine(expr);
+        if (spine.size() > 1) {
+            return compileChain(spine);
+        }
+        val lhs = compile(expr.getLhs());
+        val rhs = compile(expr.getRhs());
+        if (and(op)) {
+            return r -> lhs.test(r) && rhs.test(r);
+        }
+        return r -> lhs.test(r) || rhs.test(r);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate<R> compileChain(List<BinaryOpExpr> spine) {
+        val size = spine.size();
+        val operands = (Predicate<R>[]) new Predicate[size + 1];
+        val ands = new boolean[size];
+        operands[0] = compile(Chains.first(spine));
+        for (int i = 0; i < size; i++) {
+            val expr = spine.get(size - 1 - i);
+            ands[i] = and(expr.getOp());
+            operands[i + 1] = compile(expr.getRhs());
+        }
+        return sequence(operands, ands);
+    }
+
+    private static boolean and(BinaryOp op) {
+        switch (op) {
+        case AND:
+            return true;
+        case OR:
+            return false;
+        default:
+            throw new RuntimeException("unknown: " + op.getCode());
+        }
+    }
+
+    // ((a AND b) OR c) AND d in a loop, with the short-circuits of the nested form
+    private static <R> Predicate<R> sequence(Predicate<R>[] operands, boolean[] ands) {
+        // past the run of the same operator, which cannot change a result it does not test
+        val next = new int[ands.length];
+        for (int i = ands.length - 1; i >= 0; i--) {
+            next[i] = i + 1 < ands.length && ands[i + 1] == ands[i] ? next[i + 1] : i + 1;
+        }
+        return r -> {
+            boolean result = operands[0].test(r);
+            int i = 0;
+            while (i < ands.length) {
+                if (result == ands[i]) {
+                    result = operands[++i].test(r);
+                } else {
+                    i = next[i];
+                }
+            }
+            return result;
+        };
+    }
+
+    private Predicate<R> compileComparison(Comparison comparison) {
+        switch (comparison.getKind()) {
+        case CONSTANT:
+            return constant(comparison.isConstant());
+        case NUMBER:
+            return compareNumber(comparison.getKey(), comparison.getOp(), comparison.getNumber());
+        case TEXT:
+            return compareText(comparison.getKey(), comparison.getOp(), comparison.getText());
+        default:
+            throw new RuntimeException("unknown: " + comparison.getKind().toString());
+        }
+    }
+
+    private Predicate<R> compareNumber(String key, BinaryOp op, double value) {
+        val accessor = this.accessor;
+        switch (op) {
+        case EQUAL_TO:
+            return r -> accessor.getDouble(r, key) == value;
+        case NOT_EQUAL_TO:
+            return r -> accessor.getDouble(r, key) != value;
+        case GREATER_THAN:
+            return r -> accessor.getDouble(r, key) > value;
+        case GREATER_THAN_OR_EQUAL_TO:
+            return r -> accessor.getDouble(r, key) >= value;
+        case LESS_THAN:
+            return r -> accessor.getDouble(r, key) < value;
+        case LESS_THAN_OR_EQUAL_TO:
+            return r -> accessor.getDouble(r, key) <= value;
+        default:
+            throw new RuntimeException("unknown: " + op.getCode());
+        }
+    }
+
+    private Predicate<R> compareText(String key, BinaryOp op, String value) {
+        val accessor = this.accessor;
+        switch (op) {
+        case EQUAL_TO:
+            return r -> value.equals(accessor.getText(r, key));
+        case NOT_EQUAL_TO:
+            return r -> !value.equals(accessor.getText(r, key));
+        case GREATER_THAN:
+            return r -> {
+                val text = accessor.getText(r, key);
+                return text != null && text.compareTo(value) > 0;
+            };
+        case GREATER_THAN_OR_EQUAL_TO:
+            return r -> {
+                val text = accessor.getText(r, key);
+                return text != null && text.compareTo(value) >= 0;
+            };
+        case LESS_THAN:
+            return r -> {
+                val text = accessor.getText(r, key);
+                return text != null && text.compareTo(value) < 0;
+            };
+        case LESS_THAN_OR_EQUAL_TO:
+            return r -> {
+                val text = accessor.getText(r, key);
+                return text != null && text.compareTo(value) <= 0;
+            };
+        default:
+            throw new RuntimeException("unknown: " + op.getCode());
+        }
+    }
+
+    private static <R> Predicate<R> constant(boolean value) {
+        return r -> value;
+    }
+}
@@ -0,0 +1,267 @@
+package sample.query.expression.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import sample.query.expression.evaluator.Comparison;
+import sample.query.expression.evaluator.FieldAccessor;
+import sample.query.expression.evaluator.PredicateCompiler;
+import sample.query.expression.model.Chains;
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.ExprType;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.optimizer.ExprOptimizer;
+import lombok.val;
+
+/**
+ * Finds which of many registered filters select a record, without evaluating
+ * every filter.
+ *
+ * A filter is split into the operands of its top level {@code OR}, and each of
+ * those into the operands of its {@code AND}. The {@code =} comparisons of a
+ * conjunction are indexed by key and literal in hash maps; a conjunction
+ * without one has one of its bounds indexed in sorted maps instead. A record
+ * reads every indexed key once, counts the indexed comparisons it satisfies
+ * per conjunction, and evaluates the rest of a conjunction only when all of
+ * them hold, so the work follows the number of candidates rather than the
+ * number of filters. Conjunctions without any comparison to index are
+ * evaluated for every record.
+ *
+ * Filters can be added and removed while records are matched; a filter being
+ * added or removed at the same time may or may not be returned.
+ */
+public class FilterIndex<K, R> {
+
+    private final FieldAccessor<R> accessor;
+    private final Map<K, Filter<K, R>> filters = new ConcurrentHashMap<>();
+    private final Map<String, KeyIndex<Double, K, R>> numbers = new ConcurrentHashMap<>();
+    private final Map<String, KeyIndex<String, K, R>> texts = new ConcurrentHashMap<>();
+    private final Set<Conjunction<K, R>> unindexed = ConcurrentHashMap.newKeySet();
+
+    public FilterIndex(FieldAccessor<R> accessor) {
+        this.accessor = accessor;
+    }
+
+    /**
+     * Registers the filter under the id, replacing the one it had.
+     *
+     * @throws IllegalArgumentException if the filter has a comparison the
+     *                                  evaluators do not support
+     */
+    public void add(K id, Expr expr) {
+        val filter = new Filter<K, R>(id);
+        for (val conjunction : Chains.operands(ExprOptimizer.optimize(expr), BinaryOp.OR)) {
+            // the optimizer leaves 0.0 for a filter which is never true
+            if (conjunction.getType() == ExprType.DOUBLE_EXPR && ((DoubleExpr) conjunction).getValue() == 0) {
+                continue;
+            }
+            filter.conjunctions.add(conjunction(filter, conjunction));
+        }
+
+        for (val conjunction : filter.conjunctions) {
+            index(conjunction);
+        }
+        val old = this.filters.put(id, filter);
+        if (old != null) {
+            unindex(old);
+        }
+    }
+
+    public boolean remove(K id) {
+        val filter = this.filters.remove(id);
+        if (filter == null) {
+            return false;
+        }
+        unindex(filter);
+        return true;
+    }
+
+    public int size() {
+        return this.filters.size();
+    }
+
+    // the ids of the filters which select the record, each once
+    public List<K> match(R record) {
+        val ids = new LinkedHashSet<K>();
+        val counts = new HashMap<Conjunction<K, R>, int[]>();
+        Consumer<Atom<K, R>> candidate = atom -> {
+            val conjunction = atom.conjunction;
+            if (conjunction.atoms.size() == 1
+                    || ++counts.computeIfAbsent(conjunction, c -> new int[1])[0] == conjunction.atoms.size()) {
+                if (conjunction.test(record)) {
+                    ids.add(conjunction.filter.id);
+                }
+            }
+        };
+        this.numbers.forEach((key, index) -> {
+            val value = this.accessor.getDouble(record, key);
+            if (!Double.isNaN(value)) {
+                index.match(value + 0.0, candidate);
+            }
+        });
+        this.texts.forEach((key, index) -> {
+            val value = this.accessor.getText(record, key);
+            if (value != null) {
+                index.match(value, candidate);
+            }
+        });
+        for (val conjunction : this.unindexed) {
+            if (conjunction.test(record)) {
+                ids.add(conjunction.filter.id);
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    private Conjunction<K, R> conjunction(Filter<K, R> filter, Expr expr) {
+        val operands = Chains.operands(expr, BinaryOp.AND);
+
+        val conjunction = new Conjunction<K, R>(filter);
+        val bounds = new ArrayList<Atom<K, R>>();
+        val rest = new ArrayList<Expr>();
+        for (val operand : operands) {
+            val atom = atom(conjunction, operand);
+            if (atom == null) {
+                rest.add(operand);
+            } else if (atom.op == BinaryOp.EQUAL_TO) {
+                conjunction.atoms.add(atom);
+            } else {
+                bounds.add(atom);
+            }
+        }
+        // bounds match about half of the records, so they are only indexed without anything better
+        for (val bound : bounds) {
+            if (conjunction.atoms.isEmpty()) {
+                conjunction.atoms.add(bound);
+            } else {
+                rest.add(bound.expr);
+            }
+        }
+        if (!rest.isEmpty()) {
+            Expr and = rest.get(0);
+            for (int i = 1; i < rest.size(); i++) {
+                and = Model.binaryOpExpr(and, BinaryOp.AND, rest.get(i));
+            }
+            conjunction.rest = PredicateCompiler.compile(and, this.accessor);
+        }
+        return conjunction;
+    }
+
+    // null if the operand is not an indexed comparison
+    private static <K, R> Atom<K, R> atom(Conjunction<K, R> conjunction, Expr expr) {
+        if (expr.getType() != ExprType.BINARY_OP_EXPR
+                || !Model.ComparableOp.contains(((BinaryOpExpr) expr).getOp())
+                || ((BinaryOpExpr) expr).getOp() == BinaryOp.NOT_EQUAL_TO) {
+            return null;
+        }
+        Comparison comparison;
+        try {
+            comparison = Comparison.of((BinaryOpExpr) expr);
+        } catch (IllegalArgumentException e) {
+            // reported by the compiler of the rest
+            return null;
+        }
+        switch (comparison.getKind()) {
+        case NUMBER:
+            return new Atom<>(conjunction, expr, comparison.getKey(), comparison.getOp(),
+                    comparison.getNumber() + 0.0);
+        case TEXT:
+            return new Atom<>(conjunction, expr, comparison.getKey(), comparison.getOp(), comparison.getText());
+        default:
+            return null;
+        }
+    }
+
+    private void index(Conjunction<K, R> conjunction) {
+        if (conjunction.atoms.isEmpty()) {
+            this.unindexed.add(conjunction);
+            return;
+        }
+        for (val atom : conjunction.atoms) {
+            if (atom.value instanceof Double) {
+                // NaN is never matched, and neither is the conjunction
+                if (!((Double) atom.value).isNaN()) {
+                    this.numbers.computeIfAbsent(atom.key, k -> new KeyIndex<>())
+                            .add(atom.op, (Double) atom.value, atom);
+                }
+            } else {
+                this.texts.computeIfAbsent(atom.key, k -> new KeyIndex<>()).add(atom.op, (String) atom.value, atom);
+            }
+        }
+    }
+
+    private void unindex(Filter<K, R> filter) {
+        for (val conjunction : filter.conjunctions) {
+            conjunction.removed = true;
+            if (conjunction.atoms.isEmpty()) {
+                this.unindexed.remove(conjunction);
+                continue;
+            }
+            for (val atom : conjunction.atoms) {
+                if (atom.value instanceof Double) {
+                    val index = this.numbers.get(atom.key);
+                    if (index != null) {
+                        index.remove(atom.op, (Double) atom.value, atom);
+                    }
+                } else {
+                    val index = this.texts.get(atom.key);
+                    if (index != null) {
+                        index.remove(atom.op, (String) atom.value, atom);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Filter<K, R> {
+        private final K id;
+        private final List<Conjunction<K, R>> conjunctions = new ArrayList<>();
+
+        Filter(K id) {
+            this.id = id;
+        }
+    }
+
+    private static class Conjunction<K, R> {
+        private final Filter<K, R> filter;
+        // the indexed comparisons
+        private final List<Atom<K, R>> atoms = new ArrayList<>();
+        // the other operands, null if there are none
+        private Predicate<R> rest;
+        private volatile boolean removed;
+
+        Conjunction(Filter<K, R> filter) {
+            this.filter = filter;
+        }
+
+        boolean test(R record) {
+            return !this.removed && (this.rest == null || this.rest.test(record));
+        }
+    }
+
+    static class Atom<K, R> {
+        private final Conjunction<K, R> conjunction;
+        private final Expr expr;
+        private final String key;
+        private final BinaryOp op;
+        private final Object value;
+
+        Atom(Conjunction<K, R> conjunction, Expr expr, String key, BinaryOp op, Object value) {
+            this.conjunction = conjunction;
+            this.expr = expr;
+            this.key = key;
+            this.op = op;
+            this.value = value;
+        }
+    }
+}
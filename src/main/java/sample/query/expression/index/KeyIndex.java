@@ -0,0 +1,82 @@
+package sample.query.expression.index;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+
+import sample.query.expression.index.FilterIndex.Atom;
+import sample.query.expression.model.Model.BinaryOp;
+import lombok.val;
+
+/**
+ * The comparisons on one key of a {@link FilterIndex}, by operator and
+ * literal. Matching a value visits the comparisons it satisfies and no others.
+ *
+ * The sets of comparisons are immutable and replaced as a whole, since the
+ * compute methods of {@link ConcurrentSkipListMap} are not atomic: a remapping
+ * function may run for a value which another thread is replacing, and only a
+ * new value is safe to publish from it.
+ */
+class KeyIndex<T extends Comparable<T>, K, R> {
+
+    private final Map<T, Set<Atom<K, R>>> equal = new ConcurrentHashMap<>();
+    // value > literal, so the literals below the value
+    private final NavigableMap<T, Set<Atom<K, R>>> greater = new ConcurrentSkipListMap<>();
+    private final NavigableMap<T, Set<Atom<K, R>>> greaterOrEqual = new ConcurrentSkipListMap<>();
+    // value < literal, so the literals above the value
+    private final NavigableMap<T, Set<Atom<K, R>>> less = new ConcurrentSkipListMap<>();
+    private final NavigableMap<T, Set<Atom<K, R>>> lessOrEqual = new ConcurrentSkipListMap<>();
+
+    void add(BinaryOp op, T literal, Atom<K, R> atom) {
+        map(op).compute(literal, (k, atoms) -> atoms == null
+                ? ImmutableSet.of(atom)
+                : ImmutableSet.<Atom<K, R>>builder().addAll(atoms).add(atom).build());
+    }
+
+    void remove(BinaryOp op, T literal, Atom<K, R> atom) {
+        map(op).computeIfPresent(literal, (k, atoms) -> {
+            val rest = ImmutableSet.copyOf(Iterables.filter(atoms, a -> a != atom));
+            return rest.isEmpty() ? null : rest;
+        });
+    }
+
+    void match(T value, Consumer<Atom<K, R>> consumer) {
+        val equal = this.equal.get(value);
+        if (equal != null) {
+            equal.forEach(consumer);
+        }
+        visit(this.greater.headMap(value, false), consumer);
+        visit(this.greaterOrEqual.headMap(value, true), consumer);
+        visit(this.less.tailMap(value, false), consumer);
+        visit(this.lessOrEqual.tailMap(value, true), consumer);
+    }
+
+    private static <T, K, R> void visit(Map<T, Set<Atom<K, R>>> map, Consumer<Atom<K, R>> consumer) {
+        for (val atoms : map.values()) {
+            atoms.forEach(consumer);
+        }
+    }
+
+    private Map<T, Set<Atom<K, R>>> map(BinaryOp op) {
+        switch (op) {
+        case EQUAL_TO:
+            return this.equal;
+        case GREATER_THAN:
+            return this.greater;
+        case GREATER_THAN_OR_EQUAL_TO:
+            return this.greaterOrEqual;
+        case LESS_THAN:
+            return this.less;
+        case LESS_THAN_OR_EQUAL_TO:
+            return this.lessOrEqual;
+        default:
+            throw new RuntimeException("unknown: " + op.getCode());
+        }
+    }
+}
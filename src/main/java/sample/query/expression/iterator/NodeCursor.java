@@ -0,0 +1,201 @@
+package sample.query.expression.iterator;
+
+import java.util.Arrays;
+
+import com.google.common.math.DoubleMath;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import sample.query.expression.visitor.Node;
+import sample.query.expression.visitor.NodeVisitor;
+import sample.query.expression.visitor.NodeVisitor.NodeType;
+import lombok.val;
+
+/**
+ * Walks the nodes {@link NodeVisitor} makes of an {@link Expr}, in the same
+ * order, as one mutable view: each {@link #advance()} moves the view to the
+ * next node instead of making one.
+ *
+ * A walk allocates nothing and boxes no numbers once the stack has grown to
+ * the depth of the tree, and {@link #reset} starts a new walk on the same
+ * stack. A cursor is not thread-safe, so each thread needs its own.
+ *
+ * <pre>
+ * NodeCursor cursor = new NodeCursor(expr);
+ * while (cursor.advance()) {
+ *     if (cursor.type() == NodeType.LONG) {
+ *         sum += cursor.longValue();
+ *     }
+ * }
+ * </pre>
+ */
+public class NodeCursor {
+    // a bracket has opened, or the left hand side of a binary operator is done
+    private static final byte VISITED = 1;
+
+    // makes the nodes for node(), which holds no state
+    private static final NodeVisitor NODES = new NodeVisitor();
+
+    private Expr[] exprs = new Expr[16];
+    private int[] depths = new int[16];
+    private byte[] states = new byte[16];
+    private int top = -1;
+
+    // the current node, type is null before the first and after the last
+    private NodeType type;
+    private int depth;
+    private long longValue;
+    private double doubleValue;
+    private String text;
+
+    public NodeCursor() {
+    }
+
+    public NodeCursor(Expr expr) {
+        reset(expr);
+    }
+
+    // starts a new walk, before the first node of the expression
+    public NodeCursor reset(Expr expr) {
+        while (this.top >= 0) {
+            pop();
+        }
+        this.type = null;
+        push(expr, 0);
+        return this;
+    }
+
+    /**
+     * Moves to the next node.
+     *
+     * @return false after the last node
+     */
+    public boolean advance() {
+        while (this.top >= 0) {
+            val expr = this.exprs[this.top];
+            val depth = this.depths[this.top];
+            val visited = this.states[this.top] == VISITED;
+            switch (expr.getType()) {
+            case DOUBLE_EXPR:
+                pop();
+                return number(((DoubleExpr) expr).getValue(), depth);
+            case TEXT_EXPR:
+                pop();
+                return current(NodeType.TEXT, ((TextExpr) expr).getText(), depth);
+            case BRACKET_EXPR:
+                if (visited) {
+                    pop();
+                    return current(NodeType.CLOSE_BRACKET, ")", depth + 1);
+                }
+                this.states[this.top] = VISITED;
+                push(((BracketExpr) expr).getExpr(), depth + 1);
+                return current(NodeType.OPEN_BRACKET, "(", depth + 1);
+            case UNARY_OP_EXPR:
+                val unary = (UnaryOpExpr) expr;
+                replace(unary.getExpr());
+                return current(NodeVisitor.type(unary.getOp()), unary.getOp().getCode(), depth);
+            case BINARY_OP_EXPR:
+                val binary = (BinaryOpExpr) expr;
+                if (visited) {
+                    replace(binary.getRhs());
+                    return current(NodeVisitor.type(binary.getOp()), binary.getOp().getCode(), depth);
+                }
+                this.states[this.top] = VISITED;
+                push(binary.getLhs(), depth);
+                break;
+            default:
+                throw new RuntimeException("unknown: " + expr.getType().toString());
+            }
+        }
+        this.type = null;
+        this.text = null;
+        return false;
+    }
+
+    public NodeType type() {
+        return this.type;
+    }
+
+    public int depth() {
+        return this.depth;
+    }
+
+    public long longValue() {
+        if (this.type != NodeType.LONG) {
+            throw new IllegalStateException("not a LONG: " + this.type);
+        }
+        return this.longValue;
+    }
+
+    // the value of a LONG or a DOUBLE
+    public double doubleValue() {
+        if (this.type != NodeType.LONG && this.type != NodeType.DOUBLE) {
+            throw new IllegalStateException("not a number: " + this.type);
+        }
+        return this.doubleValue;
+    }
+
+    // the text of a TEXT, or the code of an operator or a bracket
+    public String text() {
+        if (this.type == null || this.type == NodeType.LONG || this.type == NodeType.DOUBLE) {
+            throw new IllegalStateException("not a text: " + this.type);
+        }
+        return this.text;
+    }
+
+    // the current node as NodeVisitor makes it, for a caller which keeps it
+    public Node node() {
+        if (this.type == null) {
+            throw new IllegalStateException("no node");
+        }
+        switch (this.type) {
+        case LONG:
+            return NODES.new LongNode(this.type, this.longValue, this.depth);
+        case DOUBLE:
+            return NODES.new DoubleNode(this.type, this.doubleValue, this.depth);
+        default:
+            return NODES.new StringNode(this.type, this.text, this.depth);
+        }
+    }
+
+    private boolean number(double value, int depth) {
+        this.type = DoubleMath.isMathematicalInteger(value) ? NodeType.LONG : NodeType.DOUBLE;
+        this.depth = depth;
+        this.longValue = (long) value;
+        this.doubleValue = value;
+        this.text = null;
+        return true;
+    }
+
+    private boolean current(NodeType type, String text, int depth) {
+        this.type = type;
+        this.depth = depth;
+        this.text = text;
+        return true;
+    }
+
+    private void push(Expr expr, int depth) {
+        if (++this.top == this.exprs.length) {
+            this.exprs = Arrays.copyOf(this.exprs, this.top * 2);
+            this.depths = Arrays.copyOf(this.depths, this.top * 2);
+            this.states = Arrays.copyOf(this.states, this.top * 2);
+        }
+        this.exprs[this.top] = expr;
+        this.depths[this.top] = depth;
+        this.states[this.top] = 0;
+    }
+
+    private void pop() {
+        this.exprs[this.top--] = null;
+    }
+
+    // the last operand takes the place of its parent at the same depth
+    private void replace(Expr expr) {
+        this.exprs[this.top] = expr;
+        this.states[this.top] = 0;
+    }
+}
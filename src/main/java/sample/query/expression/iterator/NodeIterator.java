@@ -1,14 +1,25 @@
 package sample.query.expression.iterator;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import sample.query.expression.model.Expr;
 import sample.query.expression.visitor.Node;
 import sample.query.expression.visitor.NodeVisitor;
 import lombok.AllArgsConstructor;
 import lombok.ToString;
-import lombok.val;
 
+/**
+ * Iterates the nodes {@link NodeVisitor} makes of an {@link Expr}, in the same
+ * order, but makes each one only when it is asked for.
+ *
+ * The tree is walked by a {@link NodeCursor}, so memory grows with the depth
+ * of the tree and not with its size.
+ */
 @ToString
 @AllArgsConstructor
 public class NodeIterator implements Iterable<Node> {
@@ -16,21 +27,42 @@ public class NodeIterator implements Iterable<Node> {
 
     @Override
     public Iterator<Node> iterator() {
-        val nodes = new NodeVisitor().visit(this.expr);
-        return new Iterator<Node>() {
-            int currentIndex = 0;
+        return new NodeWalker(this.expr);
+    }
+
+    @Override
+    public Spliterator<Node> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    public Stream<Node> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    private static class NodeWalker implements Iterator<Node> {
+        private final NodeCursor cursor;
+        // the cursor is on a node next() has not returned yet
+        private boolean ready;
+
+        NodeWalker(Expr expr) {
+            this.cursor = new NodeCursor(expr);
+        }
 
-            @Override
-            public boolean hasNext() {
-                return !(currentIndex == nodes.size());
+        @Override
+        public boolean hasNext() {
+            if (!this.ready) {
+                this.ready = this.cursor.advance();
             }
+            return this.ready;
+        }
 
-            @Override
-            public Node next() {
-                val node = nodes.get(currentIndex);
-                currentIndex++;
-                return node;
+        @Override
+        public Node next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
-        };
+            this.ready = false;
+            return this.cursor.node();
+        }
     }
 }
@@ -0,0 +1,583 @@
+package sample.query.expression.json;
+
+import static java.nio.charset.StandardCharsets.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import sample.query.expression.evaluator.Comparison;
+import sample.query.expression.evaluator.FieldAccessor;
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import lombok.val;
+
+/**
+ * Filters JSON objects, such as the lines of NDJSON, by an {@link Expr}
+ * without deserializing them.
+ *
+ * Only the top level fields named by the expression are read; every other
+ * value, nested objects and arrays included, is passed over without being
+ * decoded. The expression is evaluated with three values, true, false and not
+ * known yet: reading a field decides its comparisons and then only the
+ * operators above them which those decide, so each part of the expression is
+ * evaluated at most once per object, and the rest of an object is not read
+ * once the result is decided.
+ *
+ * The fields give the values {@link FieldAccessor#ofMap()} gives for the map
+ * a JSON parser makes of the object, except that the first of duplicate keys
+ * counts, the text of a number is as it is written and a nested object or
+ * array has neither a number nor a text. A malformed object is only noticed
+ * if it is read before the result is decided.
+ */
+public class JsonFilter {
+
+    // the instructions of the program, in postfix order so that an operand comes before its operator
+    private static final byte TRUE = 0;
+    private static final byte FALSE = 1;
+    private static final byte FLAG = 2;
+    private static final byte NUMBER = 3;
+    private static final byte TEXT = 4;
+    private static final byte NOT = 5;
+    private static final byte AND = 6;
+    private static final byte OR = 7;
+
+    // the three values, where NOT flips the lowest bit of a known one
+    private static final byte NO = 0;
+    private static final byte YES = 1;
+    private static final byte UNKNOWN = 2;
+
+    private final String[] keys;
+    private final Set<String> keySet;
+    private final byte[][] keyBytes;
+    // only the fields compared with texts or read as flags are decoded
+    private final boolean[] texts;
+
+    private final byte[] codes;
+    private final int[] slots;
+    private final BinaryOp[] ops;
+    private final double[] numbers;
+    private final String[] literals;
+    // the operator which reads each instruction, -1 for the last, and the left hand side of each AND
+    // and OR; the right hand side, like the operand of NOT, is the instruction just before
+    private final int[] parents;
+    private final int[] lefts;
+    // the comparisons and flags of each slot
+    private final int[][] readers;
+    // the values before any field is read
+    private final byte[] initial;
+
+    private final ThreadLocal<State> states;
+
+    private JsonFilter(Compiler compiler) {
+        this.keys = compiler.keys.keySet().toArray(new String[0]);
+        this.keySet = Collections.unmodifiableSet(new LinkedHashSet<>(compiler.keys.keySet()));
+        this.keyBytes = new byte[this.keys.length][];
+        for (int i = 0; i < this.keys.length; i++) {
+            this.keyBytes[i] = this.keys[i].getBytes(UTF_8);
+        }
+        this.texts = compiler.texts;
+        val size = compiler.codes.size();
+        this.codes = new byte[size];
+        this.slots = new int[size];
+        this.ops = compiler.ops.toArray(new BinaryOp[size]);
+        this.numbers = new double[size];
+        this.literals = compiler.literals.toArray(new String[size]);
+        this.parents = new int[size];
+        this.lefts = new int[size];
+        val counts = new int[this.keys.length];
+        for (int i = 0; i < size; i++) {
+            this.codes[i] = compiler.codes.get(i);
+            this.slots[i] = compiler.slots.get(i);
+            this.numbers[i] = compiler.numbers.get(i);
+            this.parents[i] = compiler.parents.get(i);
+            this.lefts[i] = compiler.lefts.get(i);
+            if (this.slots[i] >= 0) {
+                counts[this.slots[i]]++;
+            }
+        }
+        this.readers = new int[this.keys.length][];
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            this.readers[slot] = new int[counts[slot]];
+            counts[slot] = 0;
+        }
+        this.initial = new byte[size];
+        for (int i = 0; i < size; i++) {
+            val slot = this.slots[i];
+            if (slot >= 0) {
+                this.readers[slot][counts[slot]++] = i;
+            }
+            switch (this.codes[i]) {
+            case TRUE:
+                this.initial[i] = YES;
+                break;
+            case FALSE:
+                this.initial[i] = NO;
+                break;
+            case FLAG:
+            case NUMBER:
+            case TEXT:
+                this.initial[i] = UNKNOWN;
+                break;
+            default:
+                this.initial[i] = operator(this.initial, i);
+                break;
+            }
+        }
+        this.states = ThreadLocal.withInitial(() -> new State(this.keys.length, size));
+    }
+
+    public static JsonFilter compile(Expr expr) {
+        val compiler = new Compiler();
+        compiler.compile(expr);
+        compiler.texts = Arrays.copyOf(compiler.texts, compiler.keys.size());
+        return new JsonFilter(compiler);
+    }
+
+    // the top level keys which the expression reads
+    public Set<String> getKeys() {
+        return this.keySet;
+    }
+
+    public boolean test(byte[] bytes) {
+        return test(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Tests one JSON object in bytes[from, to).
+     *
+     * @throws IllegalArgumentException if the object is malformed before the
+     *                                  result is decided
+     */
+    public boolean test(byte[] bytes, int from, int to) {
+        val state = this.states.get();
+        state.begin(this.initial);
+        byte result = state.values[this.codes.length - 1];
+        if (result != UNKNOWN) {
+            return result == YES;
+        }
+        val scanner = state.scanner;
+        scanner.reset(bytes, from, to);
+        scanner.expect('{');
+        if (scanner.peek() == '}') {
+            return end(state) == YES;
+        }
+        for (;;) {
+            scanner.readString();
+            scanner.expect(':');
+            val slot = slot(scanner);
+            if (slot < 0 || state.stamps[slot] == state.stamp) {
+                scanner.skipValue();
+            } else {
+                read(state, slot);
+                result = update(state, slot);
+                if (result != UNKNOWN) {
+                    return result == YES;
+                }
+            }
+            if (scanner.peek() == '}') {
+                return end(state) == YES;
+            }
+            scanner.expect(',');
+        }
+    }
+
+    /**
+     * Copies the lines of NDJSON which pass the filter, each followed by a
+     * newline. Blank lines are dropped.
+     *
+     * @return the number of lines copied
+     * @throws IllegalArgumentException if a line is malformed before its result
+     *                                  is decided, with the line number
+     */
+    public long filter(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        // the start of the current line, the end of the bytes read and where the search for '\n' resumes
+        int start = 0;
+        int end = 0;
+        int scanned = 0;
+        long lines = 0;
+        long count = 0;
+        for (;;) {
+            for (int i = newline(buffer, scanned, end); i < end; i = newline(buffer, i + 1, end)) {
+                lines++;
+                count += line(buffer, start, i, out, lines);
+                start = i + 1;
+            }
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            } else if (end == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            scanned = end;
+            val n = in.read(buffer, end, buffer.length - end);
+            if (n < 0) {
+                break;
+            }
+            end += n;
+        }
+        if (end > 0) {
+            count += line(buffer, 0, end, out, lines + 1);
+        }
+        return count;
+    }
+
+    // the index of the next '\n', or to when there is none
+    private static int newline(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private int line(byte[] bytes, int from, int to, OutputStream out, long line) throws IOException {
+        if (to > from && bytes[to - 1] == '\r') {
+            to--;
+        }
+        int first = from;
+        while (first < to && (bytes[first] == ' ' || bytes[first] == '\t')) {
+            first++;
+        }
+        if (first == to) {
+            return 0;
+        }
+        try {
+            if (!test(bytes, first, to)) {
+                return 0;
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("line " + line + ": " + e.getMessage(), e);
+        }
+        out.write(bytes, from, to - from);
+        out.write('\n');
+        return 1;
+    }
+
+    // the slot of the key just read, or -1 when the expression does not read it
+    private int slot(JsonScanner scanner) {
+        if (scanner.isEscaped()) {
+            val key = scanner.string();
+            for (int i = 0; i < this.keys.length; i++) {
+                if (this.keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        for (int i = 0; i < this.keyBytes.length; i++) {
+            if (scanner.stringEquals(this.keyBytes[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void read(State state, int slot) {
+        val scanner = state.scanner;
+        double number = Double.NaN;
+        String text = null;
+        boolean flag = false;
+        switch (scanner.value()) {
+        case JsonScanner.STRING:
+            if (this.texts[slot]) {
+                text = scanner.string();
+                flag = Boolean.parseBoolean(text);
+            }
+            break;
+        case JsonScanner.NUMBER:
+            number = scanner.number();
+            if (this.texts[slot]) {
+                text = scanner.string();
+            }
+            break;
+        case JsonScanner.TRUE:
+            text = "true";
+            flag = true;
+            break;
+        case JsonScanner.FALSE:
+            text = "false";
+            break;
+        case JsonScanner.NULL:
+        case JsonScanner.NESTED:
+            break;
+        default:
+            throw new RuntimeException("unknown: " + slot);
+        }
+        state.stamps[slot] = state.stamp;
+        state.numbers[slot] = number;
+        state.texts[slot] = text;
+        state.flags[slot] = flag;
+    }
+
+    /**
+     * Decides the comparisons of the slot just read and walks up from each of
+     * them while it decides an operator. A value only goes from unknown to
+     * known, so the walk stops at an operator which is known already or stays
+     * unknown, and no part of the expression is decided twice in one object.
+     *
+     * @return the value of the whole expression
+     */
+    private byte update(State state, int slot) {
+        val values = state.values;
+        for (val reader : this.readers[slot]) {
+            int i = reader;
+            byte value = leaf(state, i);
+            for (;;) {
+                values[i] = value;
+                i = this.parents[i];
+                if (i < 0 || values[i] != UNKNOWN) {
+                    break;
+                }
+                value = operator(values, i);
+                if (value == UNKNOWN) {
+                    break;
+                }
+            }
+        }
+        return values[this.codes.length - 1];
+    }
+
+    // the fields not read by the end of the object are missing
+    private byte end(State state) {
+        byte result = UNKNOWN;
+        for (int slot = 0; slot < this.keys.length && result == UNKNOWN; slot++) {
+            if (state.stamps[slot] != state.stamp) {
+                state.missing(slot);
+                result = update(state, slot);
+            }
+        }
+        return result;
+    }
+
+    private byte leaf(State state, int i) {
+        val slot = this.slots[i];
+        switch (this.codes[i]) {
+        case FLAG:
+            return state.flag(slot) ? YES : NO;
+        case NUMBER:
+            return Comparison.compare(this.ops[i], state.number(slot), this.numbers[i]) ? YES : NO;
+        case TEXT:
+            return Comparison.compare(this.ops[i], state.text(slot), this.literals[i]) ? YES : NO;
+        default:
+            throw new RuntimeException("unknown: " + this.codes[i]);
+        }
+    }
+
+    // the value of an operator from the values of its operands
+    private byte operator(byte[] values, int i) {
+        switch (this.codes[i]) {
+        case NOT: {
+            val value = values[i - 1];
+            return value == UNKNOWN ? UNKNOWN : (byte) (value ^ 1);
+        }
+        case AND: {
+            val lhs = values[this.lefts[i]];
+            val rhs = values[i - 1];
+            return lhs == NO || rhs == NO ? NO : lhs == YES && rhs == YES ? YES : UNKNOWN;
+        }
+        case OR: {
+            val lhs = values[this.lefts[i]];
+            val rhs = values[i - 1];
+            return lhs == YES || rhs == YES ? YES : lhs == NO && rhs == NO ? NO : UNKNOWN;
+        }
+        default:
+            throw new RuntimeException("unknown: " + this.codes[i]);
+        }
+    }
+
+    // the fields of the object being read, per thread
+    private static class State {
+        private final JsonScanner scanner = new JsonScanner();
+        // the value of each instruction for the current object
+        private final byte[] values;
+        // a slot holds a field of the current object when its stamp is the current one
+        private final int[] stamps;
+        private int stamp;
+        private final double[] numbers;
+        private final String[] texts;
+        private final boolean[] flags;
+
+        State(int slots, int size) {
+            this.values = new byte[size];
+            this.stamps = new int[slots];
+            this.numbers = new double[slots];
+            this.texts = new String[slots];
+            this.flags = new boolean[slots];
+        }
+
+        void begin(byte[] initial) {
+            if (++this.stamp == 0) {
+                Arrays.fill(this.stamps, 0);
+                this.stamp = 1;
+            }
+            System.arraycopy(initial, 0, this.values, 0, initial.length);
+        }
+
+        void missing(int slot) {
+            this.stamps[slot] = this.stamp;
+            this.numbers[slot] = Double.NaN;
+            this.texts[slot] = null;
+            this.flags[slot] = false;
+        }
+
+        double number(int slot) {
+            return this.stamps[slot] == this.stamp ? this.numbers[slot] : Double.NaN;
+        }
+
+        String text(int slot) {
+            return this.stamps[slot] == this.stamp ? this.texts[slot] : null;
+        }
+
+        boolean flag(int slot) {
+            return this.stamps[slot] == this.stamp && this.flags[slot];
+        }
+    }
+
+    // turns an expression into the program, with the keys numbered in the order they appear
+    private static class Compiler {
+        private final Map<String, Integer> keys = new LinkedHashMap<>();
+        private boolean[] texts = new boolean[8];
+        private final List<Byte> codes = new ArrayList<>();
+        private final List<Integer> slots = new ArrayList<>();
+        private final List<BinaryOp> ops = new ArrayList<>();
+        private final List<Double> numbers = new ArrayList<>();
+        private final List<String> literals = new ArrayList<>();
+        private final List<Integer> parents = new ArrayList<>();
+        private final List<Integer> lefts = new ArrayList<>();
+        // the last instruction of each operand which has no operator yet
+        private int[] operands = new int[16];
+        private int operandTop = -1;
+
+        // walks with a stack on the heap, so that a tree of any depth takes a constant depth of the Java stack
+        void compile(Expr expr) {
+            // Exprs to compile and the codes of the operators to emit after their operands
+            Object[] items = new Object[16];
+            int top = 0;
+            items[0] = expr;
+            while (top >= 0) {
+                val item = items[top];
+                items[top--] = null;
+                if (item instanceof Byte) {
+                    emit((Byte) item, -1, null, Double.NaN, null);
+                    continue;
+                }
+                if (top + 3 >= items.length) {
+                    items = Arrays.copyOf(items, items.length * 2);
+                }
+                val e = (Expr) item;
+                switch (e.getType()) {
+                case DOUBLE_EXPR:
+                    emit(((DoubleExpr) e).getValue() != 0 ? TRUE : FALSE, -1, null, Double.NaN, null);
+                    break;
+                case TEXT_EXPR:
+                    emit(FLAG, slot(((TextExpr) e).getText(), true), null, Double.NaN, null);
+                    break;
+                case BRACKET_EXPR:
+                    items[++top] = ((BracketExpr) e).getExpr();
+                    break;
+                case UNARY_OP_EXPR:
+                    val unary = (UnaryOpExpr) e;
+                    switch (unary.getOp()) {
+                    case NOT:
+                        items[++top] = NOT;
+                        items[++top] = unary.getExpr();
+                        break;
+                    default:
+                        throw new RuntimeException("unknown: " + unary.getOp().getCode());
+                    }
+                    break;
+                case BINARY_OP_EXPR:
+                    val binary = (BinaryOpExpr) e;
+                    if (Model.ComparableOp.contains(binary.getOp())) {
+                        compileComparison(binary);
+                        break;
+                    }
+                    items[++top] = code(binary.getOp());
+                    items[++top] = binary.getRhs();
+                    items[++top] = binary.getLhs();
+                    break;
+                default:
+                    throw new RuntimeException("unknown: " + e.getType().toString());
+                }
+            }
+        }
+
+        private void compileComparison(BinaryOpExpr expr) {
+            val comparison = Comparison.of(expr);
+            switch (comparison.getKind()) {
+            case CONSTANT:
+                emit(comparison.isConstant() ? TRUE : FALSE, -1, null, Double.NaN, null);
+                break;
+            case NUMBER:
+                emit(NUMBER, slot(comparison.getKey(), false), comparison.getOp(), comparison.getNumber(), null);
+                break;
+            case TEXT:
+                emit(TEXT, slot(comparison.getKey(), true), comparison.getOp(), Double.NaN, comparison.getText());
+                break;
+            default:
+                throw new RuntimeException("unknown: " + comparison.getKind().toString());
+            }
+        }
+
+        private static byte code(BinaryOp op) {
+            switch (op) {
+            case AND:
+                return AND;
+            case OR:
+                return OR;
+            default:
+                throw new RuntimeException("unknown: " + op.getCode());
+            }
+        }
+
+        private int slot(String key, boolean text) {
+            val slot = this.keys.computeIfAbsent(key, k -> this.keys.size());
+            if (slot == this.texts.length) {
+                this.texts = Arrays.copyOf(this.texts, slot * 2);
+            }
+            this.texts[slot] |= text;
+            return slot;
+        }
+
+        private void emit(byte code, int slot, BinaryOp op, double number, String literal) {
+            val index = this.codes.size();
+            this.codes.add(code);
+            this.slots.add(slot);
+            this.ops.add(op);
+            this.numbers.add(number);
+            this.literals.add(literal);
+            this.parents.add(-1);
+            this.lefts.add(-1);
+            // NOT takes one operand and AND and OR take two, and each leaves one for its own operator
+            if (code == NOT) {
+                this.parents.set(this.operands[this.operandTop--], index);
+            } else if (code == AND || code == OR) {
+                this.parents.set(this.operands[this.operandTop--], index);
+                this.lefts.set(index, this.operands[this.operandTop]);
+                this.parents.set(this.operands[this.operandTop--], index);
+            }
+            if (++this.operandTop == this.operands.length) {
+                this.operands = Arrays.copyOf(this.operands, this.operandTop * 2);
+            }
+            this.operands[this.operandTop] = index;
+        }
+    }
+}
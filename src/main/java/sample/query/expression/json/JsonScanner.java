@@ -0,0 +1,355 @@
+package sample.query.expression.json;
+
+import static java.nio.charset.StandardCharsets.*;
+
+import lombok.val;
+
+/**
+ * Reads JSON from a range of UTF-8 bytes one token at a time, without
+ * building any value: a string is only located until {@link #string()} asks
+ * for it, and {@link #skipValue()} passes over objects and arrays by counting
+ * their brackets.
+ */
+class JsonScanner {
+
+    // the kinds value() returns
+    static final int STRING = 0;
+    static final int NUMBER = 1;
+    static final int TRUE = 2;
+    static final int FALSE = 3;
+    static final int NULL = 4;
+    // an object or an array, which value() skips
+    static final int NESTED = 5;
+
+    // 10^0 .. 10^22 are exact doubles
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    private static final boolean[] DELIMITERS = new boolean[128];
+
+    static {
+        for (val c : ",}]:\" \t\n\r".toCharArray()) {
+            DELIMITERS[c] = true;
+        }
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private byte[] bytes;
+    private int from;
+    private int pos;
+    private int end;
+
+    // the last string or number read, without the quotes
+    private int start;
+    private int stop;
+    private boolean escaped;
+    private double number;
+
+    void reset(byte[] bytes, int from, int to) {
+        this.bytes = bytes;
+        this.from = from;
+        this.pos = from;
+        this.end = to;
+    }
+
+    // the next byte after whitespace, without consuming it, or -1 at the end
+    int peek() {
+        val bytes = this.bytes;
+        for (int i = this.pos; i < this.end; i++) {
+            val b = bytes[i];
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                this.pos = i;
+                return b;
+            }
+        }
+        this.pos = this.end;
+        return -1;
+    }
+
+    // the next byte after whitespace
+    int next() {
+        val c = peek();
+        if (c < 0) {
+            throw malformed("more input");
+        }
+        this.pos++;
+        return c;
+    }
+
+    void expect(char c) {
+        if (next() != c) {
+            this.pos--;
+            throw malformed("'" + c + "'");
+        }
+    }
+
+    // reads a string and locates its content, for a key
+    void readString() {
+        expect('"');
+        this.start = this.pos;
+        this.escaped = false;
+        val bytes = this.bytes;
+        for (int i = this.pos; i < this.end; i++) {
+            val b = bytes[i];
+            if (b == '"') {
+                this.stop = i;
+                this.pos = i + 1;
+                return;
+            }
+            if (b == '\\') {
+                this.escaped = true;
+                i++;
+            }
+        }
+        this.pos = this.end;
+        throw malformed("'\"'");
+    }
+
+    /**
+     * Reads a value and tells its kind. A string or a number is located for
+     * {@link #string()} and {@link #number()}, and an object or an array is
+     * skipped.
+     */
+    int value() {
+        val c = peek();
+        switch (c) {
+        case '"':
+            readString();
+            return STRING;
+        case '{':
+        case '[':
+            skipValue();
+            return NESTED;
+        case 't':
+            literal("true");
+            return TRUE;
+        case 'f':
+            literal("false");
+            return FALSE;
+        case 'n':
+            literal("null");
+            return NULL;
+        default:
+            readNumber();
+            return NUMBER;
+        }
+    }
+
+    /**
+     * Passes over any value. Inside an object or an array only the strings and
+     * the brackets are looked at, to find where it ends.
+     */
+    void skipValue() {
+        val c = peek();
+        if (c == '"') {
+            readString();
+            return;
+        }
+        if (c != '{' && c != '[') {
+            // a number or a literal, up to the next delimiter
+            int i = this.pos;
+            while (i < this.end && !isDelimiter(this.bytes[i])) {
+                i++;
+            }
+            if (i == this.pos) {
+                throw malformed(c < 0 ? "more input" : "a value");
+            }
+            this.pos = i;
+            return;
+        }
+        val bytes = this.bytes;
+        int depth = 0;
+        for (int i = this.pos; i < this.end; i++) {
+            val b = bytes[i];
+            if (b == '"') {
+                for (i++; i < this.end && bytes[i] != '"'; i++) {
+                    if (bytes[i] == '\\') {
+                        i++;
+                    }
+                }
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                this.pos = i + 1;
+                return;
+            }
+        }
+        this.pos = this.end;
+        throw malformed("more input");
+    }
+
+    // whether the last string read holds exactly these bytes, for a key without escapes
+    boolean stringEquals(byte[] key) {
+        val length = this.stop - this.start;
+        if (this.escaped || length != key.length) {
+            return false;
+        }
+        val bytes = this.bytes;
+        for (int i = 0; i < length; i++) {
+            if (bytes[this.start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isEscaped() {
+        return this.escaped;
+    }
+
+    // the last string read, decoded, or the last number as it is written
+    String string() {
+        if (!this.escaped) {
+            return new String(this.bytes, this.start, this.stop - this.start, UTF_8);
+        }
+        val sb = new StringBuilder(this.stop - this.start);
+        int run = this.start;
+        for (int i = this.start; i < this.stop; i++) {
+            if (this.bytes[i] != '\\') {
+                continue;
+            }
+            sb.append(new String(this.bytes, run, i - run, UTF_8));
+            val b = this.bytes[++i];
+            switch (b) {
+            case '"':
+            case '\\':
+            case '/':
+                sb.append((char) b);
+                break;
+            case 'b':
+                sb.append('\b');
+                break;
+            case 'f':
+                sb.append('\f');
+                break;
+            case 'n':
+                sb.append('\n');
+                break;
+            case 'r':
+                sb.append('\r');
+                break;
+            case 't':
+                sb.append('\t');
+                break;
+            case 'u':
+                if (i + 4 >= this.stop) {
+                    this.pos = i;
+                    throw malformed("4 hex digits");
+                }
+                int code = 0;
+                for (int j = 1; j <= 4; j++) {
+                    val digit = Character.digit(this.bytes[i + j], 16);
+                    if (digit < 0) {
+                        this.pos = i + j;
+                        throw malformed("4 hex digits");
+                    }
+                    code = code * 16 + digit;
+                }
+                sb.append((char) code);
+                i += 4;
+                break;
+            default:
+                this.pos = i;
+                throw malformed("an escape");
+            }
+            run = i + 1;
+        }
+        return sb.append(new String(this.bytes, run, this.stop - run, UTF_8)).toString();
+    }
+
+    double number() {
+        return this.number;
+    }
+
+    /**
+     * Reads a number as JSON writes it. Up to 15 digits with a decimal
+     * exponent up to 22 are exact doubles, which give the correctly rounded
+     * value with one multiplication or division; others go to
+     * {@link Double#parseDouble}.
+     */
+    private void readNumber() {
+        val bytes = this.bytes;
+        this.start = this.pos;
+        this.escaped = false;
+        int i = this.pos;
+        val negative = i < this.end && bytes[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        val integers = i;
+        while (i < this.end && isDigit(bytes[i])) {
+            mantissa = mantissa * 10 + (bytes[i++] - '0');
+            digits += mantissa == 0 ? 0 : 1;
+        }
+        if (i == integers || (bytes[integers] == '0' && i - integers > 1)) {
+            this.pos = integers;
+            throw malformed("a value");
+        }
+        if (i < this.end && bytes[i] == '.') {
+            val fractions = ++i;
+            while (i < this.end && isDigit(bytes[i])) {
+                mantissa = mantissa * 10 + (bytes[i++] - '0');
+                digits += mantissa == 0 ? 0 : 1;
+                exponent--;
+            }
+            if (i == fractions) {
+                this.pos = i;
+                throw malformed("a digit");
+            }
+        }
+        if (i < this.end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            val negativeExponent = i < this.end && bytes[i] == '-';
+            if (i < this.end && (bytes[i] == '-' || bytes[i] == '+')) {
+                i++;
+            }
+            val exponents = i;
+            int value = 0;
+            while (i < this.end && isDigit(bytes[i])) {
+                value = Math.min(value * 10 + (bytes[i++] - '0'), 100_000);
+            }
+            if (i == exponents) {
+                this.pos = i;
+                throw malformed("a digit");
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        this.pos = i;
+        this.stop = i;
+        if (digits <= 15 && Math.abs(exponent) < POWERS_OF_TEN.length) {
+            val value = exponent < 0
+                    ? mantissa / POWERS_OF_TEN[-exponent]
+                    : mantissa * POWERS_OF_TEN[exponent];
+            this.number = negative ? -value : value;
+        } else {
+            this.number = Double.parseDouble(new String(bytes, this.start, i - this.start, US_ASCII));
+        }
+    }
+
+    private void literal(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (this.pos >= this.end || this.bytes[this.pos] != literal.charAt(i)) {
+                throw malformed("'" + literal + "'");
+            }
+            this.pos++;
+        }
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b >= 0 && DELIMITERS[b];
+    }
+
+    IllegalArgumentException malformed(String expected) {
+        return new IllegalArgumentException("Malformed JSON at position " + (this.pos - this.from)
+                + ", expected " + expected);
+    }
+}
@@ -0,0 +1,229 @@
+package sample.query.expression.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import sample.query.expression.parser.ParseListener;
+import sample.query.expression.parser.QueryParser.Engine;
+import lombok.Getter;
+import lombok.val;
+
+/**
+ * A {@link ParseListener} which counts parses and failures and records the
+ * latencies and the sizes and depths of the trees in {@link Histogram}s. It is
+ * also an MXBean, for when there is no other metrics system.
+ *
+ * <pre>
+ * val metrics = new ParseMetrics();
+ * QueryParser.setListener(metrics);
+ * metrics.register("default");
+ * </pre>
+ */
+public class ParseMetrics implements ParseListener, ParseMetricsMXBean {
+
+    public static final String DOMAIN = "sample.query.expression";
+
+    private final LongAdder parses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    // unknown, then 0, 1, 2-3, 4-7 and so on
+    private final AtomicLongArray failurePositions = new AtomicLongArray(Integer.SIZE + 1);
+    @Getter
+    private final Histogram latency = new Histogram();
+    @Getter
+    private final Histogram treeSizes = new Histogram();
+    @Getter
+    private final Histogram treeDepths = new Histogram();
+
+    @Override
+    public void parsed(Engine engine, long nanos, Expr expr) {
+        this.parses.increment();
+        this.latency.record(nanos);
+        measure(expr);
+    }
+
+    @Override
+    public void failed(Engine engine, long nanos, int position, RuntimeException e) {
+        this.failures.increment();
+        this.latency.record(nanos);
+        this.failurePositions.incrementAndGet(position < 0 ? 0 : Integer.SIZE + 1 - Integer.numberOfLeadingZeros(position));
+    }
+
+    // without recursion, since the trees of DescentParser may be deeper than the stack
+    private void measure(Expr expr) {
+        // the nodes to count with their depths side by side, as in NodeCursor, so no depth is boxed
+        Expr[] exprs = new Expr[16];
+        int[] depths = new int[16];
+        int top = 0;
+        exprs[0] = expr;
+        depths[0] = 1;
+        int size = 0;
+        int maxDepth = 0;
+        while (top >= 0) {
+            val node = exprs[top];
+            val depth = depths[top];
+            exprs[top--] = null;
+            size++;
+            maxDepth = Math.max(maxDepth, depth);
+            if (top + 2 >= exprs.length) {
+                exprs = Arrays.copyOf(exprs, exprs.length * 2);
+                depths = Arrays.copyOf(depths, depths.length * 2);
+            }
+            switch (node.getType()) {
+            case DOUBLE_EXPR:
+            case TEXT_EXPR:
+                break;
+            case BRACKET_EXPR:
+                exprs[++top] = ((BracketExpr) node).getExpr();
+                depths[top] = depth + 1;
+                break;
+            case UNARY_OP_EXPR:
+                exprs[++top] = ((UnaryOpExpr) node).getExpr();
+                depths[top] = depth + 1;
+                break;
+            case BINARY_OP_EXPR:
+                exprs[++top] = ((BinaryOpExpr) node).getLhs();
+                depths[top] = depth + 1;
+                exprs[++top] = ((BinaryOpExpr) node).getRhs();
+                depths[top] = depth + 1;
+                break;
+            default:
+                throw new RuntimeException("unknown: " + node.getType().toString());
+            }
+        }
+        this.treeSizes.record(size);
+        this.treeDepths.record(maxDepth);
+    }
+
+    /**
+     * Registers this to the platform MBean server as
+     * {@code sample.query.expression:type=ParseMetrics,name="<name>"}.
+     */
+    public ObjectName register(String name) {
+        try {
+            val objectName = new ObjectName(DOMAIN + ":type=ParseMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to register: " + name, e);
+        }
+    }
+
+    public void unregister(ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to unregister: " + objectName, e);
+        }
+    }
+
+    @Override
+    public long getParses() {
+        return this.parses.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return this.failures.sum();
+    }
+
+    @Override
+    public double getLatencyMeanNanos() {
+        return this.latency.mean();
+    }
+
+    @Override
+    public long getLatencyP50Nanos() {
+        return this.latency.percentile(50);
+    }
+
+    @Override
+    public long getLatencyP99Nanos() {
+        return this.latency.percentile(99);
+    }
+
+    @Override
+    public long getLatencyP999Nanos() {
+        return this.latency.percentile(99.9);
+    }
+
+    @Override
+    public long getLatencyMaxNanos() {
+        return this.latency.max();
+    }
+
+    @Override
+    public double getTreeSizeMean() {
+        return this.treeSizes.mean();
+    }
+
+    @Override
+    public long getTreeSizeP99() {
+        return this.treeSizes.percentile(99);
+    }
+
+    @Override
+    public long getTreeSizeMax() {
+        return this.treeSizes.max();
+    }
+
+    @Override
+    public double getTreeDepthMean() {
+        return this.treeDepths.mean();
+    }
+
+    @Override
+    public long getTreeDepthP99() {
+        return this.treeDepths.percentile(99);
+    }
+
+    @Override
+    public long getTreeDepthMax() {
+        return this.treeDepths.max();
+    }
+
+    @Override
+    public Map<String, Long> getFailuresByPosition() {
+        val failures = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < this.failurePositions.length(); i++) {
+            val count = this.failurePositions.get(i);
+            if (count != 0) {
+                failures.put(positions(i), count);
+            }
+        }
+        return failures;
+    }
+
+    private static String positions(int bucket) {
+        if (bucket == 0) {
+            return "unknown";
+        }
+        if (bucket <= 2) {
+            return String.valueOf(bucket - 1);
+        }
+        val from = 1L << (bucket - 2);
+        return from + "-" + (from * 2 - 1);
+    }
+
+    @Override
+    public void reset() {
+        this.parses.reset();
+        this.failures.reset();
+        for (int i = 0; i < this.failurePositions.length(); i++) {
+            this.failurePositions.set(i, 0);
+        }
+        this.latency.reset();
+        this.treeSizes.reset();
+        this.treeDepths.reset();
+    }
+}
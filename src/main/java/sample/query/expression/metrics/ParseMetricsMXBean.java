@@ -0,0 +1,37 @@
+package sample.query.expression.metrics;
+
+import java.util.Map;
+
+public interface ParseMetricsMXBean {
+
+    public long getParses();
+
+    public long getFailures();
+
+    public double getLatencyMeanNanos();
+
+    public long getLatencyP50Nanos();
+
+    public long getLatencyP99Nanos();
+
+    public long getLatencyP999Nanos();
+
+    public long getLatencyMaxNanos();
+
+    public double getTreeSizeMean();
+
+    public long getTreeSizeP99();
+
+    public long getTreeSizeMax();
+
+    public double getTreeDepthMean();
+
+    public long getTreeDepthP99();
+
+    public long getTreeDepthMax();
+
+    // failures by the range of their positions, such as "4-7", and "unknown"
+    public Map<String, Long> getFailuresByPosition();
+
+    public void reset();
+}
@@ -2,7 +2,31 @@ package sample.query.expression.model;
 
 public abstract class AbstractExpr implements Expr {
 
+    // computed on first use, like String.hashCode
+    private int hash;
+
     public String toString() {
         return string(new StringBuilder()).toString();
     }
+
+    @Override
+    public int hashCode() {
+        int h = this.hash;
+        if (h == 0) {
+            // the children first, without recursion
+            Trees.hash(this);
+            h = this.hash;
+        }
+        return h;
+    }
+
+    final boolean isHashed() {
+        return this.hash != 0;
+    }
+
+    final void computeHash() {
+        this.hash = hash();
+    }
+
+    protected abstract int hash();
 }
@@ -0,0 +1,60 @@
+package sample.query.expression.model;
+
+import java.util.Collections;
+import java.util.Set;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.MapMaker;
+
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.UnaryOp;
+import lombok.val;
+
+class CanonicalExprFactory implements ExprFactory {
+
+    static final CanonicalExprFactory INSTANCE = new CanonicalExprFactory();
+
+    private final Interner<Expr> nodes = Interners.newWeakInterner();
+    private final Interner<String> texts = Interners.newWeakInterner();
+    // the interned nodes by identity, whose subtrees are canonical all the way down
+    private final Set<Expr> interned = Collections.newSetFromMap(new MapMaker().weakKeys().makeMap());
+
+    @Override
+    public Expr doubleExpr(double value) {
+        return intern(Model.doubleExpr(value));
+    }
+
+    @Override
+    public Expr textExpr(String text) {
+        return intern(Model.textExpr(this.texts.intern(text)));
+    }
+
+    // a child made elsewhere is rebuilt once, so building a tree bottom up stays linear
+    @Override
+    public Expr bracketExpr(Expr expr) {
+        return intern(Model.bracketExpr(canonical(expr)));
+    }
+
+    @Override
+    public Expr unaryOpExpr(UnaryOp op, Expr expr) {
+        return intern(Model.unaryOpExpr(op, canonical(expr)));
+    }
+
+    @Override
+    public Expr binaryOpExpr(Expr lhs, BinaryOp op, Expr rhs) {
+        return intern(Model.binaryOpExpr(canonical(lhs), op, canonical(rhs)));
+    }
+
+    private Expr canonical(Expr expr) {
+        return this.interned.contains(expr) ? expr : rebuild(expr);
+    }
+
+    private Expr intern(Expr expr) {
+        val node = this.nodes.intern(expr);
+        if (node == expr) {
+            this.interned.add(node);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,81 @@
+package sample.query.expression.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import lombok.val;
+
+/**
+ * The chains of {@code AND} and {@code OR} of a tree, found with loops instead
+ * of recursion, so that a chain of any length takes a constant depth of the
+ * Java stack.
+ *
+ * The parsers make a chain left-deep, {@code ((a OR b) OR c) OR d}, so a walk
+ * which takes {@link #spine} and then recurses only into the right hand sides
+ * goes as deep as the brackets are nested, which {@code ParseLimits} bounds.
+ */
+public final class Chains {
+
+    private Chains() {
+    }
+
+    // the operands of a chain of op, looking through brackets, from the left
+    public static List<Expr> operands(Expr expr, BinaryOp op) {
+        val operands = new ArrayList<Expr>();
+        Expr[] stack = new Expr[16];
+        int top = 0;
+        stack[0] = expr;
+        while (top >= 0) {
+            Expr e = stack[top];
+            stack[top--] = null;
+            while (e.getType() == ExprType.BRACKET_EXPR) {
+                e = ((BracketExpr) e).getExpr();
+            }
+            if (e.getType() == ExprType.BINARY_OP_EXPR && ((BinaryOpExpr) e).getOp() == op) {
+                if (top + 2 >= stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[++top] = ((BinaryOpExpr) e).getRhs();
+                stack[++top] = ((BinaryOpExpr) e).getLhs();
+            } else {
+                operands.add(e);
+            }
+        }
+        return operands;
+    }
+
+    /**
+     * The {@code AND} and {@code OR} down the left hand side of the expression,
+     * looking through brackets, from the top. Folding the right hand sides from
+     * the last one up onto the left hand side of the last one evaluates the
+     * same chain, whatever its mix of operators. Empty unless the expression
+     * is an {@code AND} or an {@code OR}.
+     */
+    public static List<BinaryOpExpr> spine(Expr expr) {
+        val spine = new ArrayList<BinaryOpExpr>();
+        for (;;) {
+            while (expr.getType() == ExprType.BRACKET_EXPR) {
+                expr = ((BracketExpr) expr).getExpr();
+            }
+            if (expr.getType() != ExprType.BINARY_OP_EXPR
+                    || !Model.LogicalBinaryOp.contains(((BinaryOpExpr) expr).getOp())) {
+                return spine;
+            }
+            spine.add((BinaryOpExpr) expr);
+            expr = ((BinaryOpExpr) expr).getLhs();
+        }
+    }
+
+    // the left hand side of the last operator of the spine, looking through brackets
+    public static Expr first(List<BinaryOpExpr> spine) {
+        Expr expr = spine.get(spine.size() - 1).getLhs();
+        while (expr.getType() == ExprType.BRACKET_EXPR) {
+            expr = ((BracketExpr) expr).getExpr();
+        }
+        return expr;
+    }
+}
@@ -0,0 +1,40 @@
+package sample.query.expression.model;
+
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.UnaryOp;
+
+/**
+ * Makes {@link Expr} nodes. {@link #plain()} makes a new node every time like
+ * the {@link Model} methods, and {@link #canonical()} shares one instance
+ * between all equal nodes.
+ */
+public interface ExprFactory {
+
+    public Expr doubleExpr(double value);
+
+    public Expr textExpr(String text);
+
+    public Expr bracketExpr(Expr expr);
+
+    public Expr unaryOpExpr(UnaryOp op, Expr expr);
+
+    public Expr binaryOpExpr(Expr lhs, BinaryOp op, Expr rhs);
+
+    // makes the same tree with this factory, in a loop
+    public default Expr rebuild(Expr expr) {
+        return Trees.rebuild(this, expr);
+    }
+
+    public static ExprFactory plain() {
+        return PlainExprFactory.INSTANCE;
+    }
+
+    /**
+     * The hash-consing factory: equal nodes, and so equal subtrees, are the same
+     * instance and texts are interned. Nodes are held weakly, so that the ones
+     * no longer referenced can be collected.
+     */
+    public static ExprFactory canonical() {
+        return CanonicalExprFactory.INSTANCE;
+    }
+}
@@ -6,6 +6,7 @@ import org.typemeta.funcj.functions.Functions;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.val;
 
 public class Model {
 
@@ -23,6 +24,22 @@ public class Model {
         public StringBuilder string(StringBuilder sb) {
             return sb.append(value);
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DoubleExpr)) {
+                return false;
+            }
+            return Double.compare(this.value, ((DoubleExpr) o).value) == 0;
+        }
+
+        @Override
+        protected int hash() {
+            return Double.hashCode(this.value);
+        }
     }
 
     public static Expr textExpr(String text) {
@@ -39,6 +56,23 @@ public class Model {
         public StringBuilder string(StringBuilder sb) {
             return sb.append(text);
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TextExpr)) {
+                return false;
+            }
+            val other = (TextExpr) o;
+            return hashCode() == other.hashCode() && this.text.equals(other.text);
+        }
+
+        @Override
+        protected int hash() {
+            return 31 + this.text.hashCode();
+        }
     }
 
     public static Expr bracketExpr(Expr expr) {
@@ -53,7 +87,23 @@ public class Model {
 
         @Override
         public StringBuilder string(StringBuilder sb) {
-            return sb.append(expr);
+            return Trees.write(this, sb, false);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BracketExpr)) {
+                return false;
+            }
+            return Trees.equal(this, (BracketExpr) o);
+        }
+
+        @Override
+        protected int hash() {
+            return 37 * 31 + this.expr.hashCode();
         }
     }
 
@@ -85,14 +135,28 @@ public class Model {
 
         @Override
         public StringBuilder string(StringBuilder sb) {
-            sb.append(op);
-            sb.append(expr);
-            return sb;
+            return Trees.write(this, sb, false);
         }
 
         @Override
         public String toString() {
-            return this.op.getCode() + " " + this.expr.toString();
+            return Trees.write(this, new StringBuilder(), true).toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof UnaryOpExpr)) {
+                return false;
+            }
+            return Trees.equal(this, (UnaryOpExpr) o);
+        }
+
+        @Override
+        protected int hash() {
+            return (41 * 31 + this.op.ordinal()) * 31 + this.expr.hashCode();
         }
     }
 
@@ -124,6 +188,22 @@ public class Model {
         public Functions.Op2<Expr> ctor() {
             return (lhs, rhs) -> new BinaryOpExpr(ExprType.BINARY_OP_EXPR, lhs, this, rhs);
         }
+
+        // the operator which gives the same result when both operands are swapped
+        public BinaryOp mirror() {
+            switch (this) {
+            case GREATER_THAN:
+                return LESS_THAN;
+            case GREATER_THAN_OR_EQUAL_TO:
+                return LESS_THAN_OR_EQUAL_TO;
+            case LESS_THAN:
+                return GREATER_THAN;
+            case LESS_THAN_OR_EQUAL_TO:
+                return GREATER_THAN_OR_EQUAL_TO;
+            default:
+                return this;
+            }
+        }
     }
 
     public static final EnumSet<BinaryOp> LogicalBinaryOp = EnumSet.of(BinaryOp.AND, BinaryOp.OR);
@@ -142,16 +222,23 @@ public class Model {
 
         @Override
         public StringBuilder string(StringBuilder sb) {
-            if (LogicalBinaryOp.contains(op)) {
-                sb.append('(');
+            return Trees.write(this, sb, false);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
             }
-            lhs.string(sb);
-            sb.append(op);
-            rhs.string(sb);
-            if (LogicalBinaryOp.contains(op)) {
-                sb.append(')');
+            if (!(o instanceof BinaryOpExpr)) {
+                return false;
             }
-            return sb;
+            return Trees.equal(this, (BinaryOpExpr) o);
+        }
+
+        @Override
+        protected int hash() {
+            return ((43 * 31 + this.lhs.hashCode()) * 31 + this.op.ordinal()) * 31 + this.rhs.hashCode();
         }
     }
 }
@@ -0,0 +1,34 @@
+package sample.query.expression.model;
+
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.UnaryOp;
+
+class PlainExprFactory implements ExprFactory {
+
+    static final PlainExprFactory INSTANCE = new PlainExprFactory();
+
+    @Override
+    public Expr doubleExpr(double value) {
+        return Model.doubleExpr(value);
+    }
+
+    @Override
+    public Expr textExpr(String text) {
+        return Model.textExpr(text);
+    }
+
+    @Override
+    public Expr bracketExpr(Expr expr) {
+        return Model.bracketExpr(expr);
+    }
+
+    @Override
+    public Expr unaryOpExpr(UnaryOp op, Expr expr) {
+        return Model.unaryOpExpr(op, expr);
+    }
+
+    @Override
+    public Expr binaryOpExpr(Expr lhs, BinaryOp op, Expr rhs) {
+        return Model.binaryOpExpr(lhs, op, rhs);
+    }
+}
@@ -0,0 +1,249 @@
+package sample.query.expression.model;
+
+import java.util.Arrays;
+
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import lombok.val;
+
+/**
+ * The rendering, hashing and comparison of {@link Model} trees with stacks on
+ * the heap, so that a tree of any depth takes linear time and a constant depth
+ * of the Java stack. Nodes of other classes are left to their own methods.
+ */
+final class Trees {
+
+    private Trees() {
+    }
+
+    /**
+     * Appends the tree as {@link Expr#string} does, or as
+     * {@link Object#toString} does, which only differ for NOT: its string has
+     * no space after the operator.
+     */
+    static StringBuilder write(Expr expr, StringBuilder sb, boolean toString) {
+        // Strings to append and Exprs to write, with how each Expr is written
+        Object[] items = new Object[16];
+        boolean[] toStrings = new boolean[16];
+        int top = 0;
+        items[0] = expr;
+        toStrings[0] = toString;
+        while (top >= 0) {
+            val item = items[top];
+            val asString = toStrings[top];
+            items[top--] = null;
+            if (item instanceof String) {
+                sb.append((String) item);
+                continue;
+            }
+            if (top + 5 >= items.length) {
+                items = Arrays.copyOf(items, items.length * 2);
+                toStrings = Arrays.copyOf(toStrings, toStrings.length * 2);
+            }
+            if (item instanceof DoubleExpr) {
+                sb.append(((DoubleExpr) item).getValue());
+            } else if (item instanceof TextExpr) {
+                sb.append(((TextExpr) item).getText());
+            } else if (item instanceof BracketExpr) {
+                // a bracket renders its contents with toString
+                items[++top] = ((BracketExpr) item).getExpr();
+                toStrings[top] = true;
+            } else if (item instanceof UnaryOpExpr) {
+                val unary = (UnaryOpExpr) item;
+                sb.append(unary.getOp().getCode());
+                if (asString) {
+                    sb.append(' ');
+                }
+                items[++top] = unary.getExpr();
+                toStrings[top] = true;
+            } else if (item instanceof BinaryOpExpr) {
+                val binary = (BinaryOpExpr) item;
+                val logical = Model.LogicalBinaryOp.contains(binary.getOp());
+                if (logical) {
+                    sb.append('(');
+                    items[++top] = ")";
+                }
+                items[++top] = binary.getRhs();
+                toStrings[top] = false;
+                items[++top] = binary.getOp().toString();
+                items[++top] = binary.getLhs();
+                toStrings[top] = false;
+            } else if (asString) {
+                sb.append(item);
+            } else {
+                ((Expr) item).string(sb);
+            }
+        }
+        return sb;
+    }
+
+    // hashes the nodes under the expression bottom up, so that hashing each one only reads the hashes of its children
+    static void hash(AbstractExpr expr) {
+        if (!isBranch(expr)) {
+            expr.computeHash();
+            return;
+        }
+        AbstractExpr[] stack = new AbstractExpr[16];
+        boolean[] visited = new boolean[16];
+        int top = 0;
+        stack[0] = expr;
+        while (top >= 0) {
+            val node = stack[top];
+            if (visited[top]) {
+                node.computeHash();
+                stack[top--] = null;
+                continue;
+            }
+            visited[top] = true;
+            if (top + 2 >= stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                visited = Arrays.copyOf(visited, visited.length * 2);
+            }
+            if (node instanceof BinaryOpExpr) {
+                top = pushUnhashed(((BinaryOpExpr) node).getRhs(), stack, visited, top);
+                top = pushUnhashed(((BinaryOpExpr) node).getLhs(), stack, visited, top);
+            } else if (node instanceof BracketExpr) {
+                top = pushUnhashed(((BracketExpr) node).getExpr(), stack, visited, top);
+            } else if (node instanceof UnaryOpExpr) {
+                top = pushUnhashed(((UnaryOpExpr) node).getExpr(), stack, visited, top);
+            }
+        }
+    }
+
+    private static boolean isBranch(Expr expr) {
+        return expr instanceof BinaryOpExpr || expr instanceof BracketExpr || expr instanceof UnaryOpExpr;
+    }
+
+    private static int pushUnhashed(Expr child, AbstractExpr[] stack, boolean[] visited, int top) {
+        if (child instanceof AbstractExpr && !((AbstractExpr) child).isHashed()) {
+            stack[++top] = (AbstractExpr) child;
+            visited[top] = false;
+        }
+        return top;
+    }
+
+    // makes the tree with the factory children first, so that each node is made from the nodes the factory made
+    static Expr rebuild(ExprFactory factory, Expr expr) {
+        // Exprs to visit, and again to make once their children are on the results
+        Expr[] stack = new Expr[16];
+        boolean[] visited = new boolean[16];
+        Expr[] results = new Expr[16];
+        int top = 0;
+        int count = 0;
+        stack[0] = expr;
+        while (top >= 0) {
+            val node = stack[top];
+            val made = visited[top];
+            stack[top--] = null;
+            if (top + 3 >= stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                visited = Arrays.copyOf(visited, visited.length * 2);
+            }
+            if (count == results.length) {
+                results = Arrays.copyOf(results, results.length * 2);
+            }
+            switch (node.getType()) {
+            case DOUBLE_EXPR:
+                results[count++] = factory.doubleExpr(((DoubleExpr) node).getValue());
+                break;
+            case TEXT_EXPR:
+                results[count++] = factory.textExpr(((TextExpr) node).getText());
+                break;
+            case BRACKET_EXPR:
+                if (made) {
+                    results[count - 1] = factory.bracketExpr(results[count - 1]);
+                } else {
+                    top = push(node, ((BracketExpr) node).getExpr(), stack, visited, top);
+                }
+                break;
+            case UNARY_OP_EXPR:
+                val unary = (UnaryOpExpr) node;
+                if (made) {
+                    results[count - 1] = factory.unaryOpExpr(unary.getOp(), results[count - 1]);
+                } else {
+                    top = push(node, unary.getExpr(), stack, visited, top);
+                }
+                break;
+            case BINARY_OP_EXPR:
+                val binary = (BinaryOpExpr) node;
+                if (made) {
+                    val rhs = results[--count];
+                    results[count] = null;
+                    results[count - 1] = factory.binaryOpExpr(results[count - 1], binary.getOp(), rhs);
+                } else {
+                    top = push(node, binary.getRhs(), stack, visited, top);
+                    stack[++top] = binary.getLhs();
+                    visited[top] = false;
+                }
+                break;
+            default:
+                throw new RuntimeException("unknown: " + node.getType().toString());
+            }
+        }
+        return results[0];
+    }
+
+    // the node to make after its child, then the child to visit
+    private static int push(Expr node, Expr child, Expr[] stack, boolean[] visited, int top) {
+        stack[++top] = node;
+        visited[top] = true;
+        stack[++top] = child;
+        visited[top] = false;
+        return top;
+    }
+
+    static boolean equal(Expr a, Expr b) {
+        Expr[] stack = new Expr[16];
+        int top = -1;
+        Expr x = a;
+        Expr y = b;
+        for (;;) {
+            if (x != y) {
+                if (x.getClass() != y.getClass() || x.hashCode() != y.hashCode()) {
+                    return false;
+                }
+                if (x instanceof BracketExpr) {
+                    x = ((BracketExpr) x).getExpr();
+                    y = ((BracketExpr) y).getExpr();
+                    continue;
+                }
+                if (x instanceof UnaryOpExpr) {
+                    if (((UnaryOpExpr) x).getOp() != ((UnaryOpExpr) y).getOp()) {
+                        return false;
+                    }
+                    x = ((UnaryOpExpr) x).getExpr();
+                    y = ((UnaryOpExpr) y).getExpr();
+                    continue;
+                }
+                if (x instanceof BinaryOpExpr) {
+                    val lhs = (BinaryOpExpr) x;
+                    val rhs = (BinaryOpExpr) y;
+                    if (lhs.getOp() != rhs.getOp()) {
+                        return false;
+                    }
+                    if (top + 2 >= stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[++top] = lhs.getRhs();
+                    stack[++top] = rhs.getRhs();
+                    x = lhs.getLhs();
+                    y = rhs.getLhs();
+                    continue;
+                }
+                if (!x.equals(y)) {
+                    return false;
+                }
+            }
+            if (top < 0) {
+                return true;
+            }
+            y = stack[top];
+            x = stack[top - 1];
+            stack[top--] = null;
+            stack[top--] = null;
+        }
+    }
+}
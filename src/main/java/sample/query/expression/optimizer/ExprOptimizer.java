@@ -0,0 +1,376 @@
+package sample.query.expression.optimizer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import sample.query.expression.evaluator.Comparison;
+import sample.query.expression.model.Chains;
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.ExprType;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOp;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import lombok.val;
+
+/**
+ * Rewrites an {@link Expr} into one which selects the same records with less
+ * work.
+ *
+ * <ul>
+ * <li>brackets are dropped, the tree already holds the grouping</li>
+ * <li>comparisons are normalized to {@code key op literal} and those between
+ * two numbers are folded, with {@code 1.0} for true and {@code 0.0} for
+ * false</li>
+ * <li>{@code NOT} is folded into {@code =} and {@code !=}, and two of them
+ * cancel out</li>
+ * <li>nested {@code AND}s and {@code OR}s are flattened, and constant and
+ * duplicate operands are dropped</li>
+ * <li>bounds on the same key are merged, {@code k >= 1 AND k >= 3 AND k <= 5}
+ * into {@code k >= 3 AND k <= 5}</li>
+ * </ul>
+ *
+ * {@code NOT} stays in front of the other comparisons: a missing value fails
+ * both {@code k > 1} and {@code k <= 1}, so one is not the negation of the
+ * other. Comparisons the evaluators reject are left as they are.
+ */
+public class ExprOptimizer {
+
+    private static final Expr TRUE = Model.doubleExpr(1.0);
+    private static final Expr FALSE = Model.doubleExpr(0.0);
+
+    public static Expr optimize(Expr expr) {
+        // runs of brackets and NOT in a loop, so only the operands of chains recurse
+        int nots = 0;
+        for (;;) {
+            if (expr.getType() == ExprType.BRACKET_EXPR) {
+                expr = ((BracketExpr) expr).getExpr();
+            } else if (expr.getType() == ExprType.UNARY_OP_EXPR) {
+                val unary = (UnaryOpExpr) expr;
+                switch (unary.getOp()) {
+                case NOT:
+                    nots++;
+                    break;
+                default:
+                    throw new RuntimeException("unknown: " + unary.getOp().getCode());
+                }
+                expr = unary.getExpr();
+            } else {
+                break;
+            }
+        }
+        Expr result = optimizeOperand(expr);
+        for (; nots > 0; nots--) {
+            result = not(result);
+        }
+        return result;
+    }
+
+    private static Expr optimizeOperand(Expr expr) {
+        switch (expr.getType()) {
+        case DOUBLE_EXPR:
+        case TEXT_EXPR:
+            return expr;
+        case BINARY_OP_EXPR:
+            val binary = (BinaryOpExpr) expr;
+            if (Model.ComparableOp.contains(binary.getOp())) {
+                return optimizeComparison(binary);
+            }
+            return optimizeLogical(binary);
+        default:
+            throw new RuntimeException("unknown: " + expr.getType().toString());
+        }
+    }
+
+    private static Expr optimizeComparison(BinaryOpExpr expr) {
+        Comparison comparison;
+        try {
+            comparison = Comparison.of(expr);
+        } catch (IllegalArgumentException e) {
+            // left for the evaluator to report
+            return expr;
+        }
+        switch (comparison.getKind()) {
+        case CONSTANT:
+            return constant(comparison.isConstant());
+        case NUMBER:
+            return compare(comparison.getKey(), comparison.getOp(), comparison.getNumber());
+        case TEXT:
+            return Model.binaryOpExpr(Model.textExpr(comparison.getKey()), comparison.getOp(),
+                    Model.textExpr(comparison.getText()));
+        default:
+            throw new RuntimeException("unknown: " + comparison.getKind().toString());
+        }
+    }
+
+    private static Expr not(Expr expr) {
+        if (expr.getType() == ExprType.DOUBLE_EXPR) {
+            return constant(((DoubleExpr) expr).getValue() == 0);
+        }
+        if (expr.getType() == ExprType.UNARY_OP_EXPR) {
+            return ((UnaryOpExpr) expr).getExpr();
+        }
+        if (isComparison(expr)) {
+            val comparison = (BinaryOpExpr) expr;
+            switch (comparison.getOp()) {
+            case EQUAL_TO:
+                return Model.binaryOpExpr(comparison.getLhs(), BinaryOp.NOT_EQUAL_TO, comparison.getRhs());
+            case NOT_EQUAL_TO:
+                return Model.binaryOpExpr(comparison.getLhs(), BinaryOp.EQUAL_TO, comparison.getRhs());
+            default:
+                break;
+            }
+        }
+        return Model.unaryOpExpr(UnaryOp.NOT, expr);
+    }
+
+    // a chain such as ((a AND b) OR c) AND d one run of an operator at a time from the left, in a loop
+    private static Expr optimizeLogical(BinaryOpExpr expr) {
+        val spine = Chains.spine(expr);
+        Expr result = optimize(Chains.first(spine));
+        int i = spine.size() - 1;
+        while (i >= 0) {
+            val op = spine.get(i).getOp();
+            val operands = new ArrayList<Expr>();
+            for (; i >= 0 && spine.get(i).getOp() == op; i--) {
+                operands.addAll(Chains.operands(spine.get(i).getRhs(), op));
+            }
+            result = optimizeLogical(op, result, operands);
+        }
+        return result;
+    }
+
+    // first is already optimized
+    private static Expr optimizeLogical(BinaryOp op, Expr first, List<Expr> operands) {
+        val absorbing = op == BinaryOp.OR;
+
+        val optimized = new LinkedHashSet<Expr>();
+        for (int i = -1; i < operands.size(); i++) {
+            val result = i < 0 ? first : optimize(operands.get(i));
+            if (result.getType() == ExprType.DOUBLE_EXPR) {
+                if ((((DoubleExpr) result).getValue() != 0) == absorbing) {
+                    return result;
+                }
+                // the identity of the operator
+                continue;
+            }
+            if (isLogical(result, op)) {
+                // already optimized, so without brackets or constants
+                optimized.addAll(Chains.operands(result, op));
+            } else {
+                optimized.add(result);
+            }
+        }
+
+        val merged = mergeRanges(op, optimized);
+        if (merged == null) {
+            return constant(absorbing);
+        }
+        if (merged.isEmpty()) {
+            return constant(!absorbing);
+        }
+        Expr result = merged.get(0);
+        for (int i = 1; i < merged.size(); i++) {
+            result = Model.binaryOpExpr(result, op, merged.get(i));
+        }
+        return result;
+    }
+
+    // null if the operands always give the absorbing value of op
+    private static List<Expr> mergeRanges(BinaryOp op, Set<Expr> operands) {
+        val ranges = new LinkedHashMap<String, Range>();
+        for (val operand : operands) {
+            if (isBound(operand)) {
+                val bound = (BinaryOpExpr) operand;
+                val key = ((TextExpr) bound.getLhs()).getText();
+                ranges.computeIfAbsent(key, k -> new Range(op == BinaryOp.AND))
+                        .add(bound.getOp(), ((DoubleExpr) bound.getRhs()).getValue());
+            }
+        }
+
+        val merged = new ArrayList<Expr>();
+        for (val operand : operands) {
+            if (!isBound(operand)) {
+                merged.add(operand);
+                continue;
+            }
+            val key = ((TextExpr) ((BinaryOpExpr) operand).getLhs()).getText();
+            val range = ranges.remove(key);
+            if (range == null) {
+                // merged at the first bound of the key
+                continue;
+            }
+            if (!range.toExprs(key, merged)) {
+                return null;
+            }
+        }
+        return merged;
+    }
+
+    private static boolean isLogical(Expr expr, BinaryOp op) {
+        return expr.getType() == ExprType.BINARY_OP_EXPR && ((BinaryOpExpr) expr).getOp() == op;
+    }
+
+    // a normalized comparison, as made by optimizeComparison
+    private static boolean isComparison(Expr expr) {
+        if (expr.getType() != ExprType.BINARY_OP_EXPR) {
+            return false;
+        }
+        val binary = (BinaryOpExpr) expr;
+        return Model.ComparableOp.contains(binary.getOp())
+                && binary.getLhs().getType() == ExprType.TEXT_EXPR
+                && (binary.getRhs().getType() == ExprType.DOUBLE_EXPR
+                        || binary.getRhs().getType() == ExprType.TEXT_EXPR);
+    }
+
+    private static boolean isBound(Expr expr) {
+        return isComparison(expr)
+                && ((BinaryOpExpr) expr).getOp() != BinaryOp.NOT_EQUAL_TO
+                && ((BinaryOpExpr) expr).getRhs().getType() == ExprType.DOUBLE_EXPR;
+    }
+
+    private static Expr compare(String key, BinaryOp op, double value) {
+        return Model.binaryOpExpr(Model.textExpr(key), op, Model.doubleExpr(value));
+    }
+
+    private static Expr constant(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    /**
+     * The bounds on one key: the tightest ones under AND and the loosest ones
+     * under OR. A comparison with NaN is never true.
+     */
+    private static class Range {
+        private final boolean intersect;
+        private double lower = Double.NaN;
+        private boolean lowerInclusive;
+        private double upper = Double.NaN;
+        private boolean upperInclusive;
+        private final List<Double> values = new ArrayList<>();
+        private boolean never;
+
+        Range(boolean intersect) {
+            this.intersect = intersect;
+        }
+
+        void add(BinaryOp op, double value) {
+            if (Double.isNaN(value)) {
+                this.never |= this.intersect;
+                return;
+            }
+            switch (op) {
+            case EQUAL_TO:
+                // -0.0 and 0.0 are the same value here
+                if (this.values.stream().noneMatch(v -> v == value)) {
+                    this.values.add(value);
+                }
+                break;
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL_TO:
+                val lowerInclusive = op == BinaryOp.GREATER_THAN_OR_EQUAL_TO;
+                if (Double.isNaN(this.lower) || (this.intersect
+                        ? value > this.lower || value == this.lower && !lowerInclusive
+                        : value < this.lower || value == this.lower && lowerInclusive)) {
+                    this.lower = value;
+                    this.lowerInclusive = lowerInclusive;
+                }
+                break;
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL_TO:
+                val upperInclusive = op == BinaryOp.LESS_THAN_OR_EQUAL_TO;
+                if (Double.isNaN(this.upper) || (this.intersect
+                        ? value < this.upper || value == this.upper && !upperInclusive
+                        : value > this.upper || value == this.upper && upperInclusive)) {
+                    this.upper = value;
+                    this.upperInclusive = upperInclusive;
+                }
+                break;
+            default:
+                throw new RuntimeException("unknown: " + op.getCode());
+            }
+        }
+
+        // false if the range decides the whole AND or OR
+        boolean toExprs(String key, List<Expr> exprs) {
+            return this.intersect ? intersection(key, exprs) : union(key, exprs);
+        }
+
+        private boolean intersection(String key, List<Expr> exprs) {
+            if (this.never || this.values.size() > 1) {
+                return false;
+            }
+            if (this.values.size() == 1) {
+                val value = this.values.get(0);
+                if (!aboveLower(value) || !belowUpper(value)) {
+                    return false;
+                }
+                exprs.add(compare(key, BinaryOp.EQUAL_TO, value));
+                return true;
+            }
+            if (!Double.isNaN(this.lower) && !Double.isNaN(this.upper)) {
+                if (this.lower > this.upper
+                        || this.lower == this.upper && !(this.lowerInclusive && this.upperInclusive)) {
+                    return false;
+                }
+                if (this.lower == this.upper) {
+                    exprs.add(compare(key, BinaryOp.EQUAL_TO, this.lower));
+                    return true;
+                }
+            }
+            addBounds(key, exprs);
+            return true;
+        }
+
+        private boolean union(String key, List<Expr> exprs) {
+            for (val value : this.values) {
+                // k = 3 OR k > 3 is k >= 3
+                if (value == this.lower && !this.lowerInclusive) {
+                    this.lowerInclusive = true;
+                } else if (value == this.upper && !this.upperInclusive) {
+                    this.upperInclusive = true;
+                }
+            }
+            for (val value : this.values) {
+                if (!aboveLower(value) && !belowUpper(value)) {
+                    exprs.add(compare(key, BinaryOp.EQUAL_TO, value));
+                }
+            }
+            addBounds(key, exprs);
+            return true;
+        }
+
+        private void addBounds(String key, List<Expr> exprs) {
+            if (!Double.isNaN(this.lower)) {
+                exprs.add(compare(key, this.lowerInclusive
+                        ? BinaryOp.GREATER_THAN_OR_EQUAL_TO : BinaryOp.GREATER_THAN, this.lower));
+            }
+            if (!Double.isNaN(this.upper)) {
+                exprs.add(compare(key, this.upperInclusive
+                        ? BinaryOp.LESS_THAN_OR_EQUAL_TO : BinaryOp.LESS_THAN, this.upper));
+            }
+        }
+
+        // NaN bounds are absent: no bound under AND, nothing covered under OR
+        private boolean aboveLower(double value) {
+            if (Double.isNaN(this.lower)) {
+                return this.intersect;
+            }
+            return this.lowerInclusive ? value >= this.lower : value > this.lower;
+        }
+
+        private boolean belowUpper(double value) {
+            if (Double.isNaN(this.upper)) {
+                return this.intersect;
+            }
+            return this.upperInclusive ? value <= this.upper : value < this.upper;
+        }
+    }
+}
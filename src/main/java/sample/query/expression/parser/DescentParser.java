@@ -0,0 +1,688 @@
+package sample.query.expression.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.UnaryOp;
+import lombok.val;
+
+/**
+ * Hand-written recursive descent parser for the same language as {@link Grammar}.
+ *
+ * Every choice is made on the next character like the funcj combinators do,
+ * so it accepts and rejects the same inputs, builds the same trees and reports
+ * the same failure positions and expected sets.
+ *
+ * Spaces are skipped while scanning instead of being removed up front, which
+ * keeps their meaning in {@link Grammar}: they are dropped even inside a token
+ * ("key1 AND val1" is the text "key1ANDval1") and failure positions count the
+ * characters other than spaces. The input is read in place, either from a
+ * {@link CharSequence}, a region of a {@code char[]} or the UTF-8 bytes of a
+ * {@link ByteBuffer}; only the texts of the resulting {@link Expr} are copied.
+ */
+public abstract class DescentParser {
+
+    private static final int EOF = -1;
+
+    static final String EXPECTED_TERM = "0 \" # $ ' ( + , - N ? _ <nonZeroDigit> <letterOrDigit>";
+    static final String EXPECTED_INTEGER = "0 <nonZeroDigit>";
+    static final String EXPECTED_DIGIT = "<digit>";
+    static final String EXPECTED_FRACTION = ".";
+    static final String EXPECTED_EXPONENT = "e E";
+    static final String EXPECTED_EOF = "<empty>";
+
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final int start;
+    private final int end;
+    private int pos;
+    // the spaces before pos and the bytes after the first of each multi-byte character, which positions leave out
+    private int skipped;
+    private int extra;
+    // the end of the last consumed character and the spaces skipped before it
+    private int last;
+    private int lastSkipped;
+    // the value of the last number token
+    private double lastNumber;
+
+    private DescentParser(int start, int end) {
+        this.start = start;
+        this.end = end;
+        this.pos = start;
+    }
+
+    public static Expr parse(CharSequence s) {
+        return query(new CharSequenceParser(s));
+    }
+
+    public static Expr parse(char[] chars, int offset, int length) {
+        if (offset < 0 || length < 0 || length > chars.length - offset) {
+            throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length);
+        }
+        return query(new CharArrayParser(chars, offset, offset + length));
+    }
+
+    // the UTF-8 bytes between the position and the limit, without moving the position
+    public static Expr parse(ByteBuffer utf8) {
+        return query(new Utf8Parser(utf8));
+    }
+
+    /**
+     * Parses the operands of the top level AND/OR chain from the index, like
+     * {@link #logicalExpr}, keeping each operand with the operator after it for
+     * {@link ParsedQuery}. With a stop index it ends where the next operator
+     * starts there and gives null when the chain passes it or ends before;
+     * with -1 it ends at the end of the input.
+     */
+    static List<ParsedQuery.Operand> chain(CharSequence s, int from, int stop) {
+        final DescentParser parser = new CharSequenceParser(s);
+        parser.pos = from;
+        return parser.chain(stop);
+    }
+
+    private List<ParsedQuery.Operand> chain(int stop) {
+        val operands = new ArrayList<ParsedQuery.Operand>();
+        for (;;) {
+            val expr = relationalExpr();
+            val c = peek();
+            if (stop >= 0 && pos >= stop) {
+                if (pos != stop) {
+                    return null;
+                }
+                operands.add(new ParsedQuery.Operand(expr, null, -1, -1));
+                return operands;
+            }
+            val opStart = pos;
+            final BinaryOp op;
+            switch (c) {
+            case 'A':
+                expect("AND");
+                op = BinaryOp.AND;
+                break;
+            case 'O':
+                expect("OR");
+                op = BinaryOp.OR;
+                break;
+            case EOF:
+                if (stop >= 0) {
+                    return null;
+                }
+                operands.add(new ParsedQuery.Operand(expr, null, -1, -1));
+                return operands;
+            default:
+                if (stop >= 0) {
+                    return null;
+                }
+                throw failure(EXPECTED_EOF);
+            }
+            operands.add(new ParsedQuery.Operand(expr, op, opStart, pos));
+        }
+    }
+
+    // the tokens of the query for Lexer, scanned like the parser scans them
+    static Tokens tokenize(CharSequence s) {
+        final DescentParser parser = new CharSequenceParser(s);
+        return parser.tokenize(new Tokens(s));
+    }
+
+    private Tokens tokenize(Tokens tokens) {
+        // whether a term comes next, which decides between a text and an operator
+        boolean term = true;
+        try {
+            for (;;) {
+                val c = peek();
+                val start = pos;
+                if (c == EOF) {
+                    tokens.add(Tokens.EOF, start, start, Double.NaN);
+                    return tokens;
+                }
+                // NOT is only followed by a bracket, which the parser expects before anything else
+                val afterNot = tokens.size() > 0 && tokens.kind(tokens.size() - 1) == Tokens.NOT;
+                val kind = afterNot && c != '(' ? Tokens.ERROR : term ? termToken(c) : operatorToken(c);
+                if (kind == Tokens.ERROR) {
+                    // a character which no token starts with here, left to the parser to report
+                    tokens.add(Tokens.ERROR, start, start, Double.NaN);
+                    return tokens;
+                }
+                tokens.add(kind, start, last, kind == Tokens.NUMBER ? lastNumber : Double.NaN);
+                term = kind != Tokens.NUMBER && kind != Tokens.TEXT && kind != Tokens.RIGHT_BRACKET;
+            }
+        } catch (ParseException e) {
+            tokens.add(Tokens.ERROR, pos, pos, Double.NaN);
+            tokens.failure(e);
+            return tokens;
+        }
+    }
+
+    private byte termToken(int c) {
+        if (isNumberStart(c)) {
+            lastNumber = numberValue();
+            return Tokens.NUMBER;
+        }
+        if (c == '(') {
+            next();
+            return Tokens.LEFT_BRACKET;
+        }
+        if (c == 'N') {
+            expect("NOT");
+            return Tokens.NOT;
+        }
+        if (isTextChar(c)) {
+            while (isTextChar(peek())) {
+                next();
+            }
+            return Tokens.TEXT;
+        }
+        return Tokens.ERROR;
+    }
+
+    private byte operatorToken(int c) {
+        switch (c) {
+        case '=':
+            next();
+            return Tokens.EQUAL_TO;
+        case '!':
+            expect("!=");
+            return Tokens.NOT_EQUAL_TO;
+        case '>':
+            next();
+            return orEqual() ? Tokens.GREATER_THAN_OR_EQUAL_TO : Tokens.GREATER_THAN;
+        case '<':
+            next();
+            return orEqual() ? Tokens.LESS_THAN_OR_EQUAL_TO : Tokens.LESS_THAN;
+        case 'A':
+            expect("AND");
+            return Tokens.AND;
+        case 'O':
+            expect("OR");
+            return Tokens.OR;
+        case ')':
+            next();
+            return Tokens.RIGHT_BRACKET;
+        default:
+            return Tokens.ERROR;
+        }
+    }
+
+    // the character at the index, which is only called for indexes in the input
+    abstract int read(int index);
+
+    // the index of the character after the one at the index
+    abstract int next(int index);
+
+    // the characters between the indexes as they are
+    abstract String string(int start, int end);
+
+    private static Expr query(DescentParser parser) {
+        val expr = parser.logicalExpr();
+        if (parser.peek() != EOF) {
+            throw parser.failure(EXPECTED_EOF);
+        }
+        return expr;
+    }
+
+    private Expr logicalExpr() {
+        return expression(false);
+    }
+
+    private Expr relationalExpr() {
+        return expression(true);
+    }
+
+    /**
+     * Parses these rules with a {@link Frame} on the heap for each open
+     * bracket instead of a call, so that nesting takes no Java stack:
+     *
+     * <pre>
+     * logicalExpr    = relationalExpr (("AND" | "OR") relationalExpr)*
+     * relationalExpr = term (("=" | "!=" | ">" | ">=" | "<" | "<=") term)*
+     * term           = number | text | "(" logicalExpr ")" | "NOT" "(" logicalExpr ")"
+     * </pre>
+     *
+     * With relational, the outermost level is one relationalExpr.
+     */
+    private Expr expression(boolean relational) {
+        Frame frame = new Frame(null, false);
+        for (;;) {
+            Expr term;
+            val c = peek();
+            if (isNumberStart(c)) {
+                term = number();
+            } else if (c == '(') {
+                next();
+                frame = new Frame(frame, false);
+                continue;
+            } else if (c == 'N') {
+                expect("NOT");
+                expect("(");
+                frame = new Frame(frame, true);
+                continue;
+            } else if (isTextChar(c)) {
+                term = text();
+            } else {
+                throw failure(EXPECTED_TERM);
+            }
+
+            // the operator after the term, closing the brackets before it
+            for (;;) {
+                frame.relational = frame.relational == null ? term
+                        : Model.binaryOpExpr(frame.relational, frame.relationalOp, term);
+                frame.relationalOp = relationalOp();
+                if (frame.relationalOp != null) {
+                    break;
+                }
+                frame.logical = frame.logical == null ? frame.relational
+                        : Model.binaryOpExpr(frame.logical, frame.logicalOp, frame.relational);
+                frame.relational = null;
+                if (relational && frame.parent == null) {
+                    return frame.logical;
+                }
+                frame.logicalOp = logicalOp();
+                if (frame.logicalOp != null) {
+                    break;
+                }
+                if (frame.parent == null) {
+                    return frame.logical;
+                }
+                expect(")");
+                term = Model.bracketExpr(frame.logical);
+                if (frame.not) {
+                    term = Model.unaryOpExpr(UnaryOp.NOT, term);
+                }
+                frame = frame.parent;
+            }
+        }
+    }
+
+    // the relational operator at pos, or null if there is none
+    private BinaryOp relationalOp() {
+        switch (peek()) {
+        case '=':
+            next();
+            return BinaryOp.EQUAL_TO;
+        case '!':
+            expect("!=");
+            return BinaryOp.NOT_EQUAL_TO;
+        case '>':
+            next();
+            return orEqual() ? BinaryOp.GREATER_THAN_OR_EQUAL_TO : BinaryOp.GREATER_THAN;
+        case '<':
+            next();
+            return orEqual() ? BinaryOp.LESS_THAN_OR_EQUAL_TO : BinaryOp.LESS_THAN;
+        default:
+            return null;
+        }
+    }
+
+    // the logical operator at pos, or null if there is none
+    private BinaryOp logicalOp() {
+        switch (peek()) {
+        case 'A':
+            expect("AND");
+            return BinaryOp.AND;
+        case 'O':
+            expect("OR");
+            return BinaryOp.OR;
+        default:
+            return null;
+        }
+    }
+
+    // the optional '=' of '>=' and '<=', which may only be followed by a term
+    private boolean orEqual() {
+        val c = peek();
+        if (c == '=') {
+            next();
+            return true;
+        }
+        if (c != EOF && !isTermStart(c)) {
+            throw failure("=");
+        }
+        return false;
+    }
+
+    // an open bracket and the operands before the current one inside it
+    private static final class Frame {
+        private final Frame parent;
+        // whether the bracket follows NOT
+        private final boolean not;
+        private Expr logical;
+        private BinaryOp logicalOp;
+        private Expr relational;
+        private BinaryOp relationalOp;
+
+        Frame(Frame parent, boolean not) {
+            this.parent = parent;
+            this.not = not;
+        }
+    }
+
+    private Expr text() {
+        val start = pos;
+        val skippedBefore = skipped;
+        while (isTextChar(peek())) {
+            next();
+        }
+        return Model.textExpr(token(start, skippedBefore));
+    }
+
+    private Expr number() {
+        return Model.doubleExpr(numberValue());
+    }
+
+    private double numberValue() {
+        val start = pos;
+        val skippedBefore = skipped;
+        boolean negative = false;
+        int c = peek();
+        if (c == '+' || c == '-') {
+            negative = c == '-';
+            next();
+            c = peek();
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean exact = true;
+
+        if (c == '0') {
+            next();
+        } else if (isNonZeroDigit(c)) {
+            while (isDigit(c = peek())) {
+                if (digits < MAX_FAST_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                } else {
+                    exact = false;
+                }
+                next();
+            }
+        } else {
+            throw failure(EXPECTED_INTEGER);
+        }
+
+        c = peek();
+        if (c == '.') {
+            next();
+            if (!isDigit(peek())) {
+                throw failure(EXPECTED_DIGIT);
+            }
+            while (isDigit(c = peek())) {
+                if (mantissa == 0 && c == '0') {
+                    scale--;
+                } else if (digits < MAX_FAST_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    scale--;
+                } else {
+                    exact = false;
+                }
+                next();
+            }
+        } else if (c != 'e' && c != 'E' && !isNumberEnd(c)) {
+            throw failure(EXPECTED_FRACTION);
+        }
+
+        c = peek();
+        if (c == 'e' || c == 'E') {
+            next();
+            boolean negativeExponent = false;
+            c = peek();
+            if (c == '+' || c == '-') {
+                negativeExponent = c == '-';
+                next();
+            }
+            if (!isDigit(peek())) {
+                throw failure(EXPECTED_DIGIT);
+            }
+            int exponent = 0;
+            while (isDigit(c = peek())) {
+                if (exponent < POWERS_OF_TEN.length) {
+                    exponent = exponent * 10 + (c - '0');
+                } else {
+                    // too far for the table, and the digits are no longer counted
+                    exact = false;
+                }
+                next();
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        } else if (!isNumberEnd(c)) {
+            throw failure(EXPECTED_EXPONENT);
+        }
+
+        final double value;
+        if (exact && mantissa == 0) {
+            value = 0.0;
+        } else if (exact && scale >= 0 && scale < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[scale];
+        } else if (exact && scale < 0 && -scale < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-scale];
+        } else {
+            return Double.parseDouble(token(start, skippedBefore));
+        }
+        return negative ? -value : value;
+    }
+
+    private void expect(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (peek() != s.charAt(i)) {
+                throw failure(String.valueOf(s.charAt(i)));
+            }
+            next();
+        }
+    }
+
+    private int peek() {
+        while (pos < end) {
+            val c = read(pos);
+            if (c != ' ') {
+                return c;
+            }
+            pos++;
+            skipped++;
+        }
+        return EOF;
+    }
+
+    // consumes the character peek() returned
+    private void next() {
+        val next = next(pos);
+        extra += next - pos - 1;
+        pos = next;
+        last = next;
+        lastSkipped = skipped;
+    }
+
+    // the token from start to the last consumed character without the spaces in it
+    private String token(int start, int skippedBefore) {
+        if (lastSkipped == skippedBefore) {
+            return string(start, last);
+        }
+        val sb = new StringBuilder(last - start);
+        for (int i = start; i < last; i = next(i)) {
+            val c = read(i);
+            if (c != ' ') {
+                sb.append((char) c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private ParseException failure(String expected) {
+        return new ParseException(pos - start - skipped - extra, expected);
+    }
+
+    static boolean isDigit(int c) {
+        return '0' <= c && c <= '9';
+    }
+
+    static boolean isNonZeroDigit(int c) {
+        return '1' <= c && c <= '9';
+    }
+
+    static boolean isNumberStart(int c) {
+        return isDigit(c) || c == '+' || c == '-';
+    }
+
+    // characters which may follow a number: operators, a closing bracket or the end
+    static boolean isNumberEnd(int c) {
+        switch (c) {
+        case EOF:
+        case '=':
+        case '!':
+        case '>':
+        case '<':
+        case 'A':
+        case 'O':
+        case ')':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    static boolean isTermStart(int c) {
+        return isNumberStart(c) || c == '(' || c == 'N' || isTextChar(c);
+    }
+
+    static boolean isTextChar(int c) {
+        switch (c) {
+        case EOF:
+            return false;
+        case '"':
+        case '\'':
+        case '#':
+        case '$':
+        case ',':
+        case '-':
+        case '?':
+        case '_':
+            return true;
+        default:
+            return Character.isLetterOrDigit((char) c);
+        }
+    }
+
+    private static final class CharSequenceParser extends DescentParser {
+        private final CharSequence in;
+
+        CharSequenceParser(CharSequence in) {
+            super(0, in.length());
+            this.in = in;
+        }
+
+        @Override
+        int read(int index) {
+            return in.charAt(index);
+        }
+
+        @Override
+        int next(int index) {
+            return index + 1;
+        }
+
+        @Override
+        String string(int start, int end) {
+            return in.subSequence(start, end).toString();
+        }
+    }
+
+    private static final class CharArrayParser extends DescentParser {
+        private final char[] chars;
+
+        CharArrayParser(char[] chars, int start, int end) {
+            super(start, end);
+            this.chars = chars;
+        }
+
+        @Override
+        int read(int index) {
+            return chars[index];
+        }
+
+        @Override
+        int next(int index) {
+            return index + 1;
+        }
+
+        @Override
+        String string(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+    }
+
+    /**
+     * Decodes UTF-8 as it reads. A character outside the BMP or a malformed
+     * sequence reads as U+FFFD, which no rule accepts, so the parser never
+     * moves past one and a position is the same as in the decoded string.
+     */
+    private static final class Utf8Parser extends DescentParser {
+        private static final int REPLACEMENT = 0xFFFD;
+
+        private final ByteBuffer in;
+        private final int limit;
+
+        Utf8Parser(ByteBuffer in) {
+            super(in.position(), in.limit());
+            this.in = in;
+            this.limit = in.limit();
+        }
+
+        @Override
+        int read(int index) {
+            val b = in.get(index);
+            if (b >= 0) {
+                return b;
+            }
+            if ((b & 0xE0) == 0xC0 && index + 1 < limit) {
+                val c = (b & 0x1F) << 6 | continuation(index + 1);
+                return 0x80 <= c && c < 0x800 ? c : REPLACEMENT;
+            }
+            if ((b & 0xF0) == 0xE0 && index + 2 < limit) {
+                val c = (b & 0x0F) << 12 | continuation(index + 1) << 6 | continuation(index + 2);
+                return 0x800 <= c && c < 0x10000 && !Character.isSurrogate((char) c) ? c : REPLACEMENT;
+            }
+            return REPLACEMENT;
+        }
+
+        // the low 6 bits of a continuation byte, or a bit out of the range of any valid character
+        private int continuation(int index) {
+            val b = in.get(index);
+            return (b & 0xC0) == 0x80 ? b & 0x3F : 0x100000;
+        }
+
+        @Override
+        int next(int index) {
+            val b = in.get(index);
+            if ((b & 0xE0) == 0xC0) {
+                return index + 2;
+            }
+            if ((b & 0xF0) == 0xE0) {
+                return index + 3;
+            }
+            return index + 1;
+        }
+
+        @Override
+        String string(int start, int end) {
+            if (in.hasArray()) {
+                return new String(in.array(), in.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+            }
+            val bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = in.get(start + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
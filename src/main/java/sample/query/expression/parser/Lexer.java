@@ -0,0 +1,20 @@
+package sample.query.expression.parser;
+
+/**
+ * Splits a query into {@link Tokens} without building an {@link
+ * sample.query.expression.model.Expr}, for callers which only need the tokens,
+ * such as highlighting, and for {@link TokenParser}.
+ *
+ * Whether a letter starts a text or an operator depends on what comes before
+ * it ("a = AB" is a text, "a = 1 AB" is a failed AND), so the lexer follows
+ * whether a term or an operator comes next, like the parser does.
+ */
+public final class Lexer {
+
+    private Lexer() {
+    }
+
+    public static Tokens tokenize(CharSequence query) {
+        return DescentParser.tokenize(query);
+    }
+}
@@ -0,0 +1,18 @@
+package sample.query.expression.parser;
+
+import lombok.Getter;
+
+@Getter
+public class ParseException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int position;
+    private final String expected;
+
+    public ParseException(int position, String expected) {
+        super("Failure at position " + position + ", expected=" + expected);
+        this.position = position;
+        this.expected = expected;
+    }
+}
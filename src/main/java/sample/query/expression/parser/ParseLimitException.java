@@ -0,0 +1,26 @@
+package sample.query.expression.parser;
+
+import lombok.Getter;
+
+/**
+ * Thrown by {@link ParseLimits#check} for a query which is too large to be
+ * parsed, before any tree is built.
+ */
+@Getter
+public class ParseLimitException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    // "length", "depth" or "terms"
+    private final String limit;
+    private final int max;
+    // just after the bracket or term which passed the limit, without the spaces before, or -1 for the length
+    private final int position;
+
+    public ParseLimitException(String limit, int max, int position) {
+        super("Limit exceeded at position " + position + ", " + limit + " > " + max);
+        this.limit = limit;
+        this.max = max;
+        this.position = position;
+    }
+}
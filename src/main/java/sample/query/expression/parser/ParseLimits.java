@@ -0,0 +1,39 @@
+package sample.query.expression.parser;
+
+import lombok.Value;
+import lombok.val;
+
+/**
+ * Admission limits for queries: the length in characters, the nesting of
+ * brackets and the number of terms, the numbers and texts.
+ *
+ * {@link #check} reads the query once with a recognizer which allocates
+ * nothing and stops at the first limit passed, so an oversized query is
+ * rejected in time linear in the part read and before any tree is built.
+ */
+@Value
+public class ParseLimits {
+
+    public static final ParseLimits NONE = new ParseLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final int maxLength;
+    private final int maxDepth;
+    private final int maxTerms;
+
+    /**
+     * @throws ParseLimitException if the query passes a limit
+     * @throws ParseException      if the query does not parse
+     */
+    public void check(CharSequence query) {
+        if (query.length() > this.maxLength) {
+            throw new ParseLimitException("length", this.maxLength, -1);
+        }
+        if (this.maxDepth == Integer.MAX_VALUE && this.maxTerms == Integer.MAX_VALUE) {
+            return;
+        }
+        val validation = Recognizer.validate(query, this.maxDepth, this.maxTerms);
+        if (!validation.isValid()) {
+            throw validation.toException();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package sample.query.expression.parser;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.parser.QueryParser.Engine;
+
+/**
+ * Told about every parse through {@link QueryParser} once it is set with
+ * {@link QueryParser#setListener}, to bridge parsing to a metrics system.
+ *
+ * The methods run on the parsing thread, so they should be quick and must not
+ * throw.
+ */
+public interface ParseListener {
+
+    public default void parsed(Engine engine, long nanos, Expr expr) {
+    }
+
+    // position is -1 when the failure has none
+    public default void failed(Engine engine, long nanos, int position, RuntimeException e) {
+    }
+}
@@ -0,0 +1,25 @@
+package sample.query.expression.parser;
+
+import sample.query.expression.model.Expr;
+import lombok.Value;
+
+/**
+ * The outcome of parsing one line in {@link QueryParser#parseAll}: the parsed
+ * {@link Expr}, or the position and message of the failure.
+ */
+@Value
+public class ParseResult {
+    // 1-based
+    private final int line;
+    private final String query;
+    // null if the parse failed
+    private final Expr expr;
+    // -1 if the parse succeeded or the failure has no position
+    private final int position;
+    // null if the parse succeeded
+    private final String message;
+
+    public boolean isSuccess() {
+        return this.expr != null;
+    }
+}
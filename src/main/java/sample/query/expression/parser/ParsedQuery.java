@@ -0,0 +1,187 @@
+package sample.query.expression.parser;
+
+import java.util.List;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import lombok.Getter;
+import lombok.Value;
+import lombok.val;
+
+/**
+ * A query parsed with {@link DescentParser} which can be edited without
+ * parsing all of it again, for editors which validate the query on every
+ * keystroke.
+ *
+ * The operands of the top level AND/OR chain are kept with the indexes of the
+ * operators between them. An edit parses again only the operands it touches,
+ * together with the operators next to them, from the end of the operator before
+ * to the start of the operator after; the left hand side before them is reused
+ * as it is and the operands after them are joined to the new ones again. An
+ * edit inside a bracket parses the whole top level operand around it.
+ *
+ * The grammar looks one character ahead and the operators are never changed
+ * by the edit, so this gives the same tree as parsing the new query. When the
+ * operands do not end at the next operator (a text which runs into it, or an
+ * unclosed bracket) or do not parse, the whole query is parsed instead, which
+ * also gives the same {@link ParseException}.
+ */
+public final class ParsedQuery {
+
+    @Getter
+    private final String query;
+    private final Expr[] operands;
+    // the left hand sides of the chain: spine[i] joins operands 0 to i
+    private final Expr[] spine;
+    // the operator after each operand but the last, and where it is in the query
+    private final BinaryOp[] ops;
+    private final int[] opStarts;
+    private final int[] opEnds;
+
+    private ParsedQuery(String query, Expr[] operands, Expr[] spine, BinaryOp[] ops, int[] opStarts,
+            int[] opEnds) {
+        this.query = query;
+        this.operands = operands;
+        this.spine = spine;
+        this.ops = ops;
+        this.opStarts = opStarts;
+        this.opEnds = opEnds;
+    }
+
+    public static ParsedQuery parse(String query) {
+        val operands = DescentParser.chain(query, 0, -1);
+        val size = operands.size();
+        val parsed = new ParsedQuery(query, new Expr[size], new Expr[size], new BinaryOp[size - 1],
+                new int[size - 1], new int[size - 1]);
+        parsed.set(0, operands);
+        parsed.join(0);
+        return parsed;
+    }
+
+    public Expr getExpr() {
+        return this.spine[this.spine.length - 1];
+    }
+
+    /**
+     * The query with the characters from the offset replaced.
+     *
+     * @param offset   the index of the first character to replace
+     * @param removed  the number of characters to replace
+     * @param inserted the characters to put instead
+     * @throws ParseException if the new query does not parse
+     */
+    public ParsedQuery edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > this.query.length()) {
+            throw new IndexOutOfBoundsException("offset=" + offset + ", removed=" + removed);
+        }
+        val query = this.query.substring(0, offset) + inserted + this.query.substring(offset + removed);
+        val delta = inserted.length() - removed;
+
+        // the operands with the edit between the start of the operator before and the end of the one after
+        val first = firstEndingFrom(offset);
+        val last = lastStartingUntil(offset + removed);
+        val from = first == 0 ? 0 : this.opEnds[first - 1];
+        val stop = last == this.operands.length - 1 ? -1 : this.opStarts[last] + delta;
+
+        List<Operand> window;
+        try {
+            window = DescentParser.chain(query, from, stop);
+        } catch (ParseException e) {
+            window = null;
+        }
+        if (window == null) {
+            return parse(query);
+        }
+
+        val size = this.operands.length - (last - first + 1) + window.size();
+        val tail = this.operands.length - last - 1;
+        val parsed = new ParsedQuery(query, new Expr[size], new Expr[size], new BinaryOp[size - 1],
+                new int[size - 1], new int[size - 1]);
+        System.arraycopy(this.operands, 0, parsed.operands, 0, first);
+        System.arraycopy(this.spine, 0, parsed.spine, 0, first);
+        System.arraycopy(this.ops, 0, parsed.ops, 0, first);
+        System.arraycopy(this.opStarts, 0, parsed.opStarts, 0, first);
+        System.arraycopy(this.opEnds, 0, parsed.opEnds, 0, first);
+        parsed.set(first, window);
+        val at = first + window.size();
+        if (tail > 0) {
+            // the operator after the window and the operands after it, which have moved by delta
+            parsed.ops[at - 1] = this.ops[last];
+            parsed.opStarts[at - 1] = this.opStarts[last] + delta;
+            parsed.opEnds[at - 1] = this.opEnds[last] + delta;
+            System.arraycopy(this.operands, last + 1, parsed.operands, at, tail);
+            System.arraycopy(this.ops, last + 1, parsed.ops, at, tail - 1);
+            for (int i = 0; i < tail - 1; i++) {
+                parsed.opStarts[at + i] = this.opStarts[last + 1 + i] + delta;
+                parsed.opEnds[at + i] = this.opEnds[last + 1 + i] + delta;
+            }
+        }
+        parsed.join(first);
+        return parsed;
+    }
+
+    // the number of operands in the top level chain
+    int size() {
+        return this.operands.length;
+    }
+
+    private void set(int at, List<Operand> operands) {
+        for (int i = 0; i < operands.size(); i++) {
+            val operand = operands.get(i);
+            this.operands[at + i] = operand.expr;
+            if (operand.op != null) {
+                this.ops[at + i] = operand.op;
+                this.opStarts[at + i] = operand.opStart;
+                this.opEnds[at + i] = operand.opEnd;
+            }
+        }
+    }
+
+    // joins the operands again from the index
+    private void join(int from) {
+        for (int i = from; i < this.operands.length; i++) {
+            this.spine[i] = i == 0 ? this.operands[0]
+                    : Model.binaryOpExpr(this.spine[i - 1], this.ops[i - 1], this.operands[i]);
+        }
+    }
+
+    // the first operand whose operator after it ends at or after the index
+    private int firstEndingFrom(int index) {
+        int low = 0;
+        int high = this.opEnds.length;
+        while (low < high) {
+            val mid = (low + high) >>> 1;
+            if (this.opEnds[mid] < index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // the last operand whose operator before it starts at or before the index
+    private int lastStartingUntil(int index) {
+        int low = 0;
+        int high = this.opStarts.length;
+        while (low < high) {
+            val mid = (low + high) >>> 1;
+            if (this.opStarts[mid] <= index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Value
+    static class Operand {
+        private final Expr expr;
+        // the operator after the operand, or null for the last one
+        private final BinaryOp op;
+        private final int opStart;
+        private final int opEnd;
+    }
+}
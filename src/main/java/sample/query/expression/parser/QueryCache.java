@@ -0,0 +1,71 @@
+package sample.query.expression.parser;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.parser.QueryParser.Engine;
+import lombok.Value;
+import lombok.val;
+
+/**
+ * Size-bounded cache of parsed queries keyed on the raw query string.
+ *
+ * Concurrent misses on the same query wait for a single parse. Failed parses
+ * are not cached, so the same {@link RuntimeException} is raised again.
+ */
+public class QueryCache {
+
+    private final LoadingCache<String, Expr> cache;
+
+    public QueryCache(long maximumSize) {
+        this(maximumSize, Engine.GRAMMAR);
+    }
+
+    public QueryCache(long maximumSize, Engine engine) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build(CacheLoader.from(query -> QueryParser.parse(query, engine)));
+    }
+
+    public Expr parse(String query) {
+        try {
+            return this.cache.getUnchecked(query);
+        } catch (UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
+    public long size() {
+        return this.cache.size();
+    }
+
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    public Stats stats() {
+        val stats = this.cache.stats();
+        return new Stats(stats.hitCount(), stats.missCount(), stats.evictionCount(),
+                stats.loadCount(), stats.loadExceptionCount());
+    }
+
+    @Value
+    public static class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long loadCount;
+        private final long failureCount;
+
+        public double hitRate() {
+            val requestCount = this.hitCount + this.missCount;
+            return requestCount == 0 ? 1.0 : (double) this.hitCount / requestCount;
+        }
+    }
+}
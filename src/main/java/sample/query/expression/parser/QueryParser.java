@@ -3,6 +3,26 @@
  */
 package sample.query.expression.parser;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.common.base.Throwables;
+
 import lombok.val;
 import lombok.extern.slf4j.Slf4j;
 import sample.query.expression.model.Expr;
@@ -10,9 +30,180 @@ import sample.query.expression.model.Expr;
 @Slf4j
 public class QueryParser {
 
+    public enum Engine {
+        GRAMMAR, DESCENT, TOKENS;
+    }
+
+    // null unless parses are observed, so that they cost a volatile read otherwise
+    private static volatile ParseListener listener;
+
+    // null stops observing
+    public static void setListener(ParseListener listener) {
+        QueryParser.listener = listener;
+    }
+
+    public static ParseListener getListener() {
+        return listener;
+    }
+
     public static Expr parse(String query) {
-        val s = query.replaceAll(" ", "");
-        val expr = Grammar.parse(s).getOrThrow();
+        return parse(query, Engine.GRAMMAR);
+    }
+
+    public static Expr parse(String query, Engine engine) {
+        val listener = QueryParser.listener;
+        if (listener != null) {
+            return observe(listener, engine, () -> parseWith(query, engine));
+        }
+        return parseWith(query, engine);
+    }
+
+    /**
+     * Parses the query after checking it against the limits, so that a query
+     * too long, too deeply nested or with too many terms is rejected without
+     * building a tree.
+     *
+     * @throws ParseLimitException if the query passes a limit
+     */
+    public static Expr parse(String query, Engine engine, ParseLimits limits) {
+        limits.check(query);
+        return parse(query, engine);
+    }
+
+    private static Expr parseWith(String query, Engine engine) {
+        switch (engine) {
+        case GRAMMAR:
+            return Grammar.parse(query.replace(" ", "")).getOrThrow();
+        case DESCENT:
+            return DescentParser.parse(query);
+        case TOKENS:
+            return TokenParser.parse(query);
+        default:
+            throw new RuntimeException("unknown: " + engine.toString());
+        }
+    }
+
+    // the parsers below read the query in place with DescentParser
+
+    public static Expr parse(CharSequence query) {
+        val listener = QueryParser.listener;
+        if (listener != null) {
+            return observe(listener, Engine.DESCENT, () -> DescentParser.parse(query));
+        }
+        return DescentParser.parse(query);
+    }
+
+    public static Expr parse(char[] query, int offset, int length) {
+        val listener = QueryParser.listener;
+        if (listener != null) {
+            return observe(listener, Engine.DESCENT, () -> DescentParser.parse(query, offset, length));
+        }
+        return DescentParser.parse(query, offset, length);
+    }
+
+    // the UTF-8 bytes between the position and the limit, without moving the position
+    public static Expr parse(ByteBuffer query) {
+        val listener = QueryParser.listener;
+        if (listener != null) {
+            return observe(listener, Engine.DESCENT, () -> DescentParser.parse(query));
+        }
+        return DescentParser.parse(query);
+    }
+
+    /**
+     * Checks whether the query parses without building the tree or throwing,
+     * which allocates nothing for a valid query. The failures are the same as
+     * the ones the parsers throw.
+     */
+    public static Validation validate(CharSequence query) {
+        return Recognizer.validate(query);
+    }
+
+    private static Expr observe(ParseListener listener, Engine engine, Supplier<Expr> parser) {
+        val start = System.nanoTime();
+        Expr expr;
+        try {
+            expr = parser.get();
+        } catch (RuntimeException e) {
+            listener.failed(engine, System.nanoTime() - start, position(e), e);
+            throw e;
+        }
+        listener.parsed(engine, System.nanoTime() - start, expr);
         return expr;
     }
+
+    // lines parsed by one task of parseAll
+    private static final int BULK_CHUNK_SIZE = 256;
+    private static final Pattern FAILURE_POSITION = Pattern.compile("^Failure at position (\\d+)");
+
+    /**
+     * Parses each line of a UTF-8 file, in parallel on the common
+     * {@link ForkJoinPool}. See {@link #parseAll(Stream, Engine, Executor)}.
+     */
+    public static List<ParseResult> parseAll(Path path) throws IOException {
+        return parseAll(path, Engine.GRAMMAR, ForkJoinPool.commonPool());
+    }
+
+    public static List<ParseResult> parseAll(Path path, Engine engine, Executor executor) throws IOException {
+        try (val lines = Files.lines(path, StandardCharsets.UTF_8)) {
+            return parseAll(lines, engine, executor);
+        }
+    }
+
+    public static List<ParseResult> parseAll(Stream<String> lines) {
+        return parseAll(lines, Engine.GRAMMAR, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses each line in chunks on the executor and returns the results in
+     * the order of the lines. A line which fails gets a failed
+     * {@link ParseResult} instead of stopping the others, and blank lines are
+     * skipped without changing the numbers of the following lines.
+     */
+    public static List<ParseResult> parseAll(Stream<String> lines, Engine engine, Executor executor) {
+        val queries = lines.collect(Collectors.toList());
+        val results = new ParseResult[queries.size()];
+        val tasks = new ArrayList<CompletableFuture<Void>>();
+        for (int from = 0; from < queries.size(); from += BULK_CHUNK_SIZE) {
+            val start = from;
+            val end = Math.min(from + BULK_CHUNK_SIZE, queries.size());
+            tasks.add(CompletableFuture.runAsync(() -> {
+                for (int i = start; i < end; i++) {
+                    results[i] = parseLine(i + 1, queries.get(i), engine);
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+        return Arrays.stream(results).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    private static ParseResult parseLine(int line, String query, Engine engine) {
+        if (query.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return new ParseResult(line, query, parse(query, engine), -1, null);
+        } catch (RuntimeException e) {
+            return new ParseResult(line, query, null, position(e), e.getMessage());
+        } catch (StackOverflowError e) {
+            return new ParseResult(line, query, null, -1, "too deeply nested: " + e);
+        }
+    }
+
+    // the position of a DescentParser failure or the one in the message of a Grammar failure
+    private static int position(RuntimeException e) {
+        if (e instanceof ParseException) {
+            return ((ParseException) e).getPosition();
+        }
+        if (e.getMessage() == null) {
+            return -1;
+        }
+        val matcher = FAILURE_POSITION.matcher(e.getMessage());
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
 }
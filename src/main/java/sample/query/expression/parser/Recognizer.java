@@ -0,0 +1,236 @@
+package sample.query.expression.parser;
+
+import static sample.query.expression.parser.DescentParser.*;
+
+import lombok.val;
+
+/**
+ * {@link DescentParser} without the trees: it only tells whether a query
+ * parses, and where and why it does not.
+ *
+ * The methods return false on a failure instead of throwing, and each thread
+ * reuses one recognizer, so a valid query allocates nothing. Brackets are
+ * only counted, so any nesting takes a constant depth of the Java stack.
+ */
+final class Recognizer {
+
+    private static final int EOF = -1;
+
+    private static final ThreadLocal<Recognizer> RECOGNIZERS = ThreadLocal.withInitial(Recognizer::new);
+
+    private CharSequence in;
+    private int end;
+    private int pos;
+    // the spaces before pos, which positions leave out
+    private int skipped;
+    private int failure;
+    private String expected;
+    private int maxDepth;
+    private int maxTerms;
+    // the limit which was passed, or null
+    private String limit;
+    private int limitValue;
+
+    private Recognizer() {
+    }
+
+    static Validation validate(CharSequence s) {
+        return validate(s, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #validate(CharSequence)}, counting the nesting of brackets
+     * and the terms as it goes.
+     *
+     * @throws ParseLimitException as soon as one passes its limit
+     */
+    static Validation validate(CharSequence s, int maxDepth, int maxTerms) {
+        val recognizer = RECOGNIZERS.get();
+        recognizer.in = s;
+        recognizer.end = s.length();
+        recognizer.pos = 0;
+        recognizer.skipped = 0;
+        recognizer.maxDepth = maxDepth;
+        recognizer.maxTerms = maxTerms;
+        recognizer.limit = null;
+        try {
+            if (recognizer.query()) {
+                return Validation.VALID;
+            }
+            if (recognizer.limit != null) {
+                throw new ParseLimitException(recognizer.limit, recognizer.limitValue, recognizer.failure);
+            }
+            return new Validation(false, recognizer.failure, recognizer.expected);
+        } finally {
+            recognizer.in = null;
+        }
+    }
+
+    // the rules of DescentParser, where a bracket only needs its depth to be counted
+    private boolean query() {
+        int depth = 0;
+        int terms = 0;
+        for (;;) {
+            val c = peek();
+            if (c == '(' || c == 'N') {
+                if (c == '(') {
+                    next();
+                } else if (!expect("NOT") || !expect("(")) {
+                    return false;
+                }
+                if (++depth > maxDepth) {
+                    return exceed("depth", maxDepth);
+                }
+                continue;
+            }
+            if (isNumberStart(c)) {
+                if (!number()) {
+                    return false;
+                }
+            } else if (isTextChar(c)) {
+                while (isTextChar(peek())) {
+                    next();
+                }
+            } else {
+                return fail(EXPECTED_TERM);
+            }
+            if (++terms > maxTerms) {
+                return exceed("terms", maxTerms);
+            }
+
+            // the operator after the term, closing the brackets before it
+            for (;;) {
+                val op = peek();
+                if (op == '=' || op == '!' || op == '>' || op == '<' || op == 'A' || op == 'O') {
+                    if (!operator(op)) {
+                        return false;
+                    }
+                    break;
+                }
+                if (depth == 0) {
+                    return op == EOF || fail(EXPECTED_EOF);
+                }
+                if (!expect(")")) {
+                    return false;
+                }
+                depth--;
+            }
+        }
+    }
+
+    private boolean operator(int c) {
+        switch (c) {
+        case '!':
+            return expect("!=");
+        case '>':
+        case '<':
+            next();
+            return orEqual();
+        case 'A':
+            return expect("AND");
+        case 'O':
+            return expect("OR");
+        default:
+            next();
+            return true;
+        }
+    }
+
+    private boolean orEqual() {
+        val c = peek();
+        if (c == '=') {
+            next();
+        } else if (c != EOF && !isTermStart(c)) {
+            return fail("=");
+        }
+        return true;
+    }
+
+    private boolean number() {
+        int c = peek();
+        if (c == '+' || c == '-') {
+            next();
+            c = peek();
+        }
+        if (c == '0') {
+            next();
+        } else if (isNonZeroDigit(c)) {
+            while (isDigit(peek())) {
+                next();
+            }
+        } else {
+            return fail(EXPECTED_INTEGER);
+        }
+
+        c = peek();
+        if (c == '.') {
+            next();
+            if (!digits()) {
+                return false;
+            }
+        } else if (c != 'e' && c != 'E' && !isNumberEnd(c)) {
+            return fail(EXPECTED_FRACTION);
+        }
+
+        c = peek();
+        if (c == 'e' || c == 'E') {
+            next();
+            c = peek();
+            if (c == '+' || c == '-') {
+                next();
+            }
+            return digits();
+        }
+        return isNumberEnd(c) || fail(EXPECTED_EXPONENT);
+    }
+
+    // one digit or more
+    private boolean digits() {
+        if (!isDigit(peek())) {
+            return fail(EXPECTED_DIGIT);
+        }
+        while (isDigit(peek())) {
+            next();
+        }
+        return true;
+    }
+
+    private boolean expect(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (peek() != s.charAt(i)) {
+                return fail(String.valueOf(s.charAt(i)));
+            }
+            next();
+        }
+        return true;
+    }
+
+    private int peek() {
+        while (pos < end) {
+            val c = in.charAt(pos);
+            if (c != ' ') {
+                return c;
+            }
+            pos++;
+            skipped++;
+        }
+        return EOF;
+    }
+
+    // consumes the character peek() returned
+    private void next() {
+        pos++;
+    }
+
+    private boolean exceed(String limit, int value) {
+        this.limit = limit;
+        this.limitValue = value;
+        return fail(null);
+    }
+
+    private boolean fail(String expected) {
+        this.failure = pos - skipped;
+        this.expected = expected;
+        return false;
+    }
+}
@@ -0,0 +1,155 @@
+package sample.query.expression.parser;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.UnaryOp;
+import lombok.val;
+
+/**
+ * Builds an {@link Expr} from the {@link Tokens} of {@link Lexer} with the
+ * rules of {@link DescentParser}, so it gives the same trees and the same
+ * failures.
+ */
+public final class TokenParser {
+
+    private final Tokens tokens;
+    private int index;
+
+    private TokenParser(Tokens tokens) {
+        this.tokens = tokens;
+    }
+
+    public static Expr parse(CharSequence query) {
+        return parse(Lexer.tokenize(query));
+    }
+
+    public static Expr parse(Tokens tokens) {
+        val parser = new TokenParser(tokens);
+        val expr = parser.logicalExpr();
+        if (parser.peek() != Tokens.EOF) {
+            throw parser.failure(DescentParser.EXPECTED_EOF);
+        }
+        return expr;
+    }
+
+    // the rules of DescentParser with a frame on the heap for each open bracket
+    private Expr logicalExpr() {
+        Frame frame = new Frame(null, false);
+        for (;;) {
+            Expr term;
+            switch (peek()) {
+            case Tokens.NUMBER:
+                term = Model.doubleExpr(this.tokens.number(this.index++));
+                break;
+            case Tokens.TEXT:
+                term = Model.textExpr(this.tokens.text(this.index++));
+                break;
+            case Tokens.LEFT_BRACKET:
+                this.index++;
+                frame = new Frame(frame, false);
+                continue;
+            case Tokens.NOT:
+                this.index++;
+                expect(Tokens.LEFT_BRACKET, "(");
+                frame = new Frame(frame, true);
+                continue;
+            default:
+                throw failure(DescentParser.EXPECTED_TERM);
+            }
+
+            // the operator after the term, closing the brackets before it
+            for (;;) {
+                frame.relational = frame.relational == null ? term
+                        : Model.binaryOpExpr(frame.relational, frame.relationalOp, term);
+                frame.relationalOp = relationalOp(peek());
+                if (frame.relationalOp != null) {
+                    this.index++;
+                    break;
+                }
+                frame.logical = frame.logical == null ? frame.relational
+                        : Model.binaryOpExpr(frame.logical, frame.logicalOp, frame.relational);
+                frame.relational = null;
+                frame.logicalOp = logicalOp(peek());
+                if (frame.logicalOp != null) {
+                    this.index++;
+                    break;
+                }
+                if (frame.parent == null) {
+                    return frame.logical;
+                }
+                expect(Tokens.RIGHT_BRACKET, ")");
+                term = Model.bracketExpr(frame.logical);
+                if (frame.not) {
+                    term = Model.unaryOpExpr(UnaryOp.NOT, term);
+                }
+                frame = frame.parent;
+            }
+        }
+    }
+
+    private static BinaryOp relationalOp(byte kind) {
+        switch (kind) {
+        case Tokens.EQUAL_TO:
+            return BinaryOp.EQUAL_TO;
+        case Tokens.NOT_EQUAL_TO:
+            return BinaryOp.NOT_EQUAL_TO;
+        case Tokens.GREATER_THAN:
+            return BinaryOp.GREATER_THAN;
+        case Tokens.GREATER_THAN_OR_EQUAL_TO:
+            return BinaryOp.GREATER_THAN_OR_EQUAL_TO;
+        case Tokens.LESS_THAN:
+            return BinaryOp.LESS_THAN;
+        case Tokens.LESS_THAN_OR_EQUAL_TO:
+            return BinaryOp.LESS_THAN_OR_EQUAL_TO;
+        default:
+            return null;
+        }
+    }
+
+    private static BinaryOp logicalOp(byte kind) {
+        switch (kind) {
+        case Tokens.AND:
+            return BinaryOp.AND;
+        case Tokens.OR:
+            return BinaryOp.OR;
+        default:
+            return null;
+        }
+    }
+
+    private void expect(byte kind, String expected) {
+        if (peek() != kind) {
+            throw failure(expected);
+        }
+        this.index++;
+    }
+
+    private byte peek() {
+        return this.tokens.kind(this.index);
+    }
+
+    // the failure of a malformed token wins, since the parser would have failed inside it
+    private ParseException failure(String expected) {
+        if (peek() == Tokens.ERROR && this.tokens.getFailure() != null) {
+            return this.tokens.getFailure();
+        }
+        return new ParseException(this.tokens.position(this.index), expected);
+    }
+
+    // an open bracket and the operands before the current one inside it
+    private static final class Frame {
+        private final Frame parent;
+        // whether the bracket follows NOT
+        private final boolean not;
+        private Expr logical;
+        private BinaryOp logicalOp;
+        private Expr relational;
+        private BinaryOp relationalOp;
+
+        Frame(Frame parent, boolean not) {
+            this.parent = parent;
+            this.not = not;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package sample.query.expression.parser;
+
+import java.util.Arrays;
+
+import lombok.val;
+
+/**
+ * The tokens of a query from {@link Lexer}, kept in parallel arrays: the kind,
+ * the start and end indexes in the query and the value of each number.
+ *
+ * The last token is either {@link #EOF} or {@link #ERROR}, where the query
+ * stops being a sequence of tokens; {@link #getFailure} tells why when the
+ * token there is malformed. Spaces are dropped inside tokens as the parser
+ * does, so a token may span some.
+ */
+public final class Tokens {
+
+    public static final byte NUMBER = 0;
+    public static final byte TEXT = 1;
+    public static final byte LEFT_BRACKET = 2;
+    public static final byte RIGHT_BRACKET = 3;
+    public static final byte NOT = 4;
+    public static final byte AND = 5;
+    public static final byte OR = 6;
+    public static final byte EQUAL_TO = 7;
+    public static final byte NOT_EQUAL_TO = 8;
+    public static final byte GREATER_THAN = 9;
+    public static final byte GREATER_THAN_OR_EQUAL_TO = 10;
+    public static final byte LESS_THAN = 11;
+    public static final byte LESS_THAN_OR_EQUAL_TO = 12;
+    public static final byte EOF = 13;
+    public static final byte ERROR = 14;
+
+    private static final String[] NAMES = {
+            "NUMBER", "TEXT", "LEFT_BRACKET", "RIGHT_BRACKET", "NOT", "AND", "OR",
+            "EQUAL_TO", "NOT_EQUAL_TO", "GREATER_THAN", "GREATER_THAN_OR_EQUAL_TO", "LESS_THAN",
+            "LESS_THAN_OR_EQUAL_TO", "EOF", "ERROR" };
+
+    private final CharSequence query;
+    private byte[] kinds = new byte[16];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private double[] numbers = new double[16];
+    private int size;
+    private ParseException failure;
+
+    Tokens(CharSequence query) {
+        this.query = query;
+    }
+
+    void add(byte kind, int start, int end, double number) {
+        if (this.size == this.kinds.length) {
+            val length = this.size * 2;
+            this.kinds = Arrays.copyOf(this.kinds, length);
+            this.starts = Arrays.copyOf(this.starts, length);
+            this.ends = Arrays.copyOf(this.ends, length);
+            this.numbers = Arrays.copyOf(this.numbers, length);
+        }
+        this.kinds[this.size] = kind;
+        this.starts[this.size] = start;
+        this.ends[this.size] = end;
+        this.numbers[this.size] = number;
+        this.size++;
+    }
+
+    void failure(ParseException failure) {
+        this.failure = failure;
+    }
+
+    public static String name(byte kind) {
+        return NAMES[kind];
+    }
+
+    public CharSequence getQuery() {
+        return this.query;
+    }
+
+    // the failure of a malformed last token, or null
+    public ParseException getFailure() {
+        return this.failure;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public byte kind(int index) {
+        return this.kinds[index];
+    }
+
+    public int start(int index) {
+        return this.starts[index];
+    }
+
+    public int end(int index) {
+        return this.ends[index];
+    }
+
+    // the value of a number, or NaN for the other tokens
+    public double number(int index) {
+        return this.numbers[index];
+    }
+
+    // the characters of the token without spaces
+    public String text(int index) {
+        val text = this.query.subSequence(this.starts[index], this.ends[index]).toString();
+        return text.indexOf(' ') < 0 ? text : text.replace(" ", "");
+    }
+
+    // the position of the token as ParseException counts it, without the spaces before
+    int position(int index) {
+        val start = this.starts[index];
+        int position = start;
+        for (int i = 0; i < start; i++) {
+            if (this.query.charAt(i) == ' ') {
+                position--;
+            }
+        }
+        return position;
+    }
+
+    @Override
+    public String toString() {
+        val sb = new StringBuilder();
+        for (int i = 0; i < this.size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(name(this.kinds[i]));
+            if (this.kinds[i] == NUMBER) {
+                sb.append(' ').append(this.numbers[i]);
+            } else if (this.kinds[i] == TEXT) {
+                sb.append(' ').append(text(i));
+            }
+        }
+        return sb.toString();
+    }
+}
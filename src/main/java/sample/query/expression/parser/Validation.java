@@ -0,0 +1,32 @@
+package sample.query.expression.parser;
+
+import lombok.Value;
+
+/**
+ * The outcome of {@link QueryParser#validate}: whether the query parses, or the
+ * position and the expected characters of the failure like in
+ * {@link ParseException}.
+ */
+@Value
+public class Validation {
+
+    static final Validation VALID = new Validation(true, -1, null);
+
+    private final boolean valid;
+    // -1 if the query is valid
+    private final int position;
+    // null if the query is valid
+    private final String expected;
+
+    // the message of the ParseException the parsers would throw, or null if the query is valid
+    public String getMessage() {
+        return this.valid ? null : "Failure at position " + this.position + ", expected=" + this.expected;
+    }
+
+    public ParseException toException() {
+        if (this.valid) {
+            throw new IllegalStateException("valid query");
+        }
+        return new ParseException(this.position, this.expected);
+    }
+}
@@ -0,0 +1,161 @@
+package sample.query.expression.program;
+
+import static sample.query.expression.program.Opcodes.*;
+
+import java.util.function.Predicate;
+
+import sample.query.expression.evaluator.Comparison;
+import sample.query.expression.evaluator.FieldAccessor;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import lombok.val;
+
+/**
+ * Runs a {@link Program} on a stack of instructions: a comparison or a logical
+ * operator leaves {@code TRUE} or {@code FALSE}, and an operand stays as the
+ * {@code DOUBLE} or {@code TEXT} instruction which pushed it until an operator
+ * reads it.
+ */
+class Interpreter<R> implements Predicate<R> {
+
+    // one stack per thread for every program, grown to the deepest one it has run; the operands are read
+    // off it before any accessor is called, so an accessor can run another program on the same stack
+    private static final ThreadLocal<int[]> STACKS = ThreadLocal.withInitial(() -> new int[16]);
+
+    private final int[] code;
+    private final double[] numbers;
+    private final String[] texts;
+    private final int maxStack;
+    private final FieldAccessor<R> accessor;
+
+    Interpreter(Program program, FieldAccessor<R> accessor) {
+        this.code = program.code;
+        this.numbers = program.numbers;
+        this.texts = program.texts;
+        this.maxStack = program.maxStack;
+        this.accessor = accessor;
+        verify(program);
+    }
+
+    @Override
+    public boolean test(R record) {
+        int[] stack = STACKS.get();
+        if (stack.length < this.maxStack) {
+            stack = new int[Math.max(this.maxStack, stack.length * 2)];
+            STACKS.set(stack);
+        }
+        return run(record, stack);
+    }
+
+    private boolean run(R record, int[] stack) {
+        int sp = 0;
+        int pc = 0;
+        while (pc < this.code.length) {
+            val instruction = this.code[pc++];
+            val opcode = opcode(instruction);
+            switch (opcode) {
+            case DOUBLE:
+            case TEXT:
+                stack[sp++] = instruction;
+                break;
+            case BRACKET:
+                break;
+            case NOT:
+                stack[sp - 1] = truth(stack[sp - 1], record) ? FALSE : TRUE;
+                break;
+            case AND_JUMP:
+                if (truth(stack[sp - 1], record)) {
+                    sp--;
+                } else {
+                    stack[sp - 1] = FALSE;
+                    pc = operand(instruction);
+                }
+                break;
+            case OR_JUMP:
+                if (truth(stack[sp - 1], record)) {
+                    stack[sp - 1] = TRUE;
+                    pc = operand(instruction);
+                } else {
+                    sp--;
+                }
+                break;
+            default:
+                val op = binaryOp(opcode);
+                if (Model.LogicalBinaryOp.contains(op)) {
+                    // the jump has dropped the left hand side, so the right hand side is the result
+                    stack[sp - 1] = truth(stack[sp - 1], record) ? TRUE : FALSE;
+                } else {
+                    val rhs = stack[--sp];
+                    stack[sp - 1] = compare(op, stack[sp - 1], rhs, record) ? TRUE : FALSE;
+                }
+                break;
+            }
+        }
+        return truth(stack[0], record);
+    }
+
+    // a text on its own is a flag and a number on its own is true unless it is zero
+    private boolean truth(int value, R record) {
+        switch (opcode(value)) {
+        case TRUE:
+            return true;
+        case FALSE:
+            return false;
+        case DOUBLE:
+            return this.numbers[operand(value)] != 0;
+        case TEXT:
+            return this.accessor.getBoolean(record, this.texts[operand(value)]);
+        default:
+            throw new IllegalStateException("not a value: " + value);
+        }
+    }
+
+    // the same as Comparison.of: a text on the left is a key and one on the right a literal
+    private boolean compare(BinaryOp op, int lhs, int rhs, R record) {
+        if (opcode(lhs) == TEXT) {
+            val key = this.texts[operand(lhs)];
+            if (opcode(rhs) == DOUBLE) {
+                return Comparison.compare(op, this.accessor.getDouble(record, key), this.numbers[operand(rhs)]);
+            }
+            return Comparison.compare(op, this.accessor.getText(record, key), this.texts[operand(rhs)]);
+        }
+        val number = this.numbers[operand(lhs)];
+        if (opcode(rhs) == DOUBLE) {
+            return Comparison.compare(op, number, this.numbers[operand(rhs)]);
+        }
+        return Comparison.compare(op.mirror(), this.accessor.getDouble(record, this.texts[operand(rhs)]), number);
+    }
+
+    // rejects the comparisons which Comparison.of rejects, before any record is read
+    private static void verify(Program program) {
+        val operands = new boolean[program.maxStack];
+        int sp = 0;
+        for (val instruction : program.code) {
+            val opcode = opcode(instruction);
+            switch (opcode) {
+            case DOUBLE:
+            case TEXT:
+                operands[sp++] = true;
+                break;
+            case BRACKET:
+                break;
+            case NOT:
+                operands[sp - 1] = false;
+                break;
+            case AND_JUMP:
+            case OR_JUMP:
+                sp--;
+                break;
+            default:
+                if (!Model.LogicalBinaryOp.contains(binaryOp(opcode))) {
+                    sp--;
+                    if (!operands[sp] || !operands[sp - 1]) {
+                        throw new IllegalArgumentException("unsupported comparison: " + program.toExpr());
+                    }
+                }
+                operands[sp - 1] = false;
+                break;
+            }
+        }
+    }
+}
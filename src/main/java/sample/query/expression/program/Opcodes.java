@@ -0,0 +1,61 @@
+package sample.query.expression.program;
+
+import sample.query.expression.model.Model.BinaryOp;
+
+/**
+ * The instructions of a {@link Program}: an opcode in the low 8 bits and an
+ * operand (a pool index or a jump target) in the rest.
+ */
+final class Opcodes {
+
+    static final int OPCODE_BITS = 8;
+    static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+    static final int MAX_OPERAND = Integer.MAX_VALUE >>> OPCODE_BITS;
+
+    // stack values only: the result of a logical or relational operator
+    static final int FALSE = 0;
+    static final int TRUE = 1;
+
+    // pushes numbers[operand] and texts[operand]
+    static final int DOUBLE = 2;
+    static final int TEXT = 3;
+
+    static final int BRACKET = 4;
+    static final int NOT = 5;
+
+    // leaves false or true on the stack and goes to the operand, or drops it and goes on
+    static final int AND_JUMP = 6;
+    static final int OR_JUMP = 7;
+
+    // BINARY_OP + BinaryOp.ordinal()
+    static final int BINARY_OP = 8;
+
+    private static final BinaryOp[] BINARY_OPS = BinaryOp.values();
+
+    private Opcodes() {
+    }
+
+    static int instruction(int opcode, int operand) {
+        return operand << OPCODE_BITS | opcode;
+    }
+
+    static int opcode(int instruction) {
+        return instruction & OPCODE_MASK;
+    }
+
+    static int operand(int instruction) {
+        return instruction >>> OPCODE_BITS;
+    }
+
+    static int binaryOp(BinaryOp op) {
+        return BINARY_OP + op.ordinal();
+    }
+
+    static BinaryOp binaryOp(int opcode) {
+        return BINARY_OPS[opcode - BINARY_OP];
+    }
+
+    static boolean isBinaryOp(int opcode) {
+        return BINARY_OP <= opcode && opcode < BINARY_OP + BINARY_OPS.length;
+    }
+}
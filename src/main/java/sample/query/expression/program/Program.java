@@ -0,0 +1,243 @@
+package sample.query.expression.program;
+
+import static sample.query.expression.program.Opcodes.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import sample.query.expression.evaluator.FieldAccessor;
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOp;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import lombok.val;
+
+/**
+ * An {@link Expr} flattened into postfix order: an {@code int[]} of
+ * instructions, a {@code double[]} pool for the numbers and a {@code String[]}
+ * pool for the texts, whose strings are interned across all programs.
+ *
+ * AND and OR are preceded by a jump over their right hand side, so that
+ * {@link #predicate} short-circuits like
+ * {@link sample.query.expression.evaluator.PredicateCompiler}; {@link #toExpr}
+ * skips the jumps and gives back the same tree.
+ */
+public final class Program {
+
+    private static final Interner<String> TEXTS = Interners.newWeakInterner();
+
+    final int[] code;
+    final double[] numbers;
+    final String[] texts;
+    final int maxStack;
+
+    Program(int[] code, double[] numbers, String[] texts, int maxStack) {
+        this.code = code;
+        this.numbers = numbers;
+        this.texts = texts;
+        this.maxStack = maxStack;
+    }
+
+    public static Program compile(Expr expr) {
+        val compiler = new Compiler();
+        compiler.compile(expr);
+        return compiler.build();
+    }
+
+    public <R> Predicate<R> predicate(FieldAccessor<R> accessor) {
+        return new Interpreter<>(this, accessor);
+    }
+
+    public Expr toExpr() {
+        val stack = new Expr[this.maxStack];
+        int sp = 0;
+        for (val instruction : this.code) {
+            val opcode = opcode(instruction);
+            switch (opcode) {
+            case DOUBLE:
+                stack[sp++] = Model.doubleExpr(this.numbers[operand(instruction)]);
+                break;
+            case TEXT:
+                stack[sp++] = Model.textExpr(this.texts[operand(instruction)]);
+                break;
+            case BRACKET:
+                stack[sp - 1] = Model.bracketExpr(stack[sp - 1]);
+                break;
+            case NOT:
+                stack[sp - 1] = Model.unaryOpExpr(UnaryOp.NOT, stack[sp - 1]);
+                break;
+            case AND_JUMP:
+            case OR_JUMP:
+                break;
+            default:
+                val rhs = stack[--sp];
+                stack[sp - 1] = Model.binaryOpExpr(stack[sp - 1], binaryOp(opcode), rhs);
+                break;
+            }
+        }
+        return stack[0];
+    }
+
+    // the number of instructions
+    public int size() {
+        return this.code.length;
+    }
+
+    @Override
+    public String toString() {
+        val sb = new StringBuilder();
+        for (int pc = 0; pc < this.code.length; pc++) {
+            val instruction = this.code[pc];
+            val opcode = opcode(instruction);
+            sb.append(pc).append(": ");
+            switch (opcode) {
+            case DOUBLE:
+                sb.append("DOUBLE ").append(this.numbers[operand(instruction)]);
+                break;
+            case TEXT:
+                sb.append("TEXT ").append(this.texts[operand(instruction)]);
+                break;
+            case BRACKET:
+                sb.append("BRACKET");
+                break;
+            case NOT:
+                sb.append("NOT");
+                break;
+            case AND_JUMP:
+                sb.append("AND_JUMP ").append(operand(instruction));
+                break;
+            case OR_JUMP:
+                sb.append("OR_JUMP ").append(operand(instruction));
+                break;
+            default:
+                sb.append(binaryOp(opcode).name());
+                break;
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static class Compiler {
+        private int[] code = new int[16];
+        private int pc;
+        private final Map<Long, Integer> numbers = new HashMap<>();
+        private final Map<String, Integer> texts = new HashMap<>();
+        private int depth;
+        private int maxStack;
+        // the AND_JUMP and OR_JUMP waiting for the end of their right hand side
+        private int[] jumps = new int[16];
+        private int jumpCount;
+
+        void compile(Expr expr) {
+            // Exprs to compile, and the Integer instructions which come after their operands
+            Object[] items = new Object[16];
+            int top = 0;
+            items[0] = expr;
+            while (top >= 0) {
+                val item = items[top];
+                items[top--] = null;
+                if (item instanceof Integer) {
+                    follow((Integer) item);
+                    continue;
+                }
+                if (top + 4 >= items.length) {
+                    items = Arrays.copyOf(items, items.length * 2);
+                }
+                val node = (Expr) item;
+                switch (node.getType()) {
+                case DOUBLE_EXPR:
+                    val value = ((DoubleExpr) node).getValue();
+                    push(instruction(DOUBLE, index(this.numbers, Double.doubleToLongBits(value))));
+                    break;
+                case TEXT_EXPR:
+                    push(instruction(TEXT, index(this.texts, ((TextExpr) node).getText())));
+                    break;
+                case BRACKET_EXPR:
+                    items[++top] = BRACKET;
+                    items[++top] = ((BracketExpr) node).getExpr();
+                    break;
+                case UNARY_OP_EXPR:
+                    items[++top] = NOT;
+                    items[++top] = ((UnaryOpExpr) node).getExpr();
+                    break;
+                case BINARY_OP_EXPR:
+                    val binary = (BinaryOpExpr) node;
+                    val op = binary.getOp();
+                    items[++top] = binaryOp(op);
+                    items[++top] = binary.getRhs();
+                    if (Model.LogicalBinaryOp.contains(op)) {
+                        items[++top] = op == BinaryOp.AND ? AND_JUMP : OR_JUMP;
+                    }
+                    items[++top] = binary.getLhs();
+                    break;
+                default:
+                    throw new RuntimeException("unknown: " + node.getType().toString());
+                }
+            }
+        }
+
+        // emits the instruction which comes after the operands compiled so far
+        private void follow(int opcode) {
+            if (opcode == AND_JUMP || opcode == OR_JUMP) {
+                // the interpreter drops the left hand side unless the jump is taken,
+                // but toExpr keeps it, so the depth counts it
+                if (this.jumpCount == this.jumps.length) {
+                    this.jumps = Arrays.copyOf(this.jumps, this.jumpCount * 2);
+                }
+                this.jumps[this.jumpCount++] = emit(opcode);
+                return;
+            }
+            emit(opcode);
+            if (isBinaryOp(opcode)) {
+                if (Model.LogicalBinaryOp.contains(binaryOp(opcode))) {
+                    val jump = this.jumps[--this.jumpCount];
+                    this.code[jump] = instruction(opcode(this.code[jump]), checked(this.pc));
+                }
+                this.depth--;
+            }
+        }
+
+        private void push(int instruction) {
+            emit(instruction);
+            this.maxStack = Math.max(this.maxStack, ++this.depth);
+        }
+
+        private int emit(int instruction) {
+            if (this.pc == this.code.length) {
+                this.code = Arrays.copyOf(this.code, this.pc * 2);
+            }
+            this.code[this.pc] = instruction;
+            return this.pc++;
+        }
+
+        private static <K> int index(Map<K, Integer> pool, K key) {
+            return checked(pool.computeIfAbsent(key, k -> pool.size()));
+        }
+
+        private static int checked(int operand) {
+            if (operand > MAX_OPERAND) {
+                throw new IllegalArgumentException("too large to compile: " + operand);
+            }
+            return operand;
+        }
+
+        Program build() {
+            val numbers = new double[this.numbers.size()];
+            this.numbers.forEach((bits, index) -> numbers[index] = Double.longBitsToDouble(bits));
+            val texts = new String[this.texts.size()];
+            this.texts.forEach((text, index) -> texts[index] = TEXTS.intern(text));
+            return new Program(Arrays.copyOf(this.code, this.pc), numbers, texts, this.maxStack);
+        }
+    }
+}
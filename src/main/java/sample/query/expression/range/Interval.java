@@ -0,0 +1,29 @@
+package sample.query.expression.range;
+
+import lombok.Value;
+
+/**
+ * An interval of numbers; the unbounded ends are the infinities, included.
+ */
+@Value
+public class Interval {
+    private final double lower;
+    private final boolean lowerInclusive;
+    private final double upper;
+    private final boolean upperInclusive;
+
+    public boolean contains(double value) {
+        return (this.lowerInclusive ? value >= this.lower : value > this.lower)
+                && (this.upperInclusive ? value <= this.upper : value < this.upper);
+    }
+
+    boolean isEmpty() {
+        return this.lower > this.upper
+                || this.lower == this.upper && !(this.lowerInclusive && this.upperInclusive);
+    }
+
+    @Override
+    public String toString() {
+        return (this.lowerInclusive ? "[" : "(") + this.lower + ", " + this.upper + (this.upperInclusive ? "]" : ")");
+    }
+}
@@ -0,0 +1,117 @@
+package sample.query.expression.range;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import lombok.val;
+
+/**
+ * Disjoint intervals of numbers in ascending order.
+ */
+public final class IntervalSet {
+
+    static final IntervalSet EMPTY = new IntervalSet(Collections.emptyList());
+    static final IntervalSet ALL = new IntervalSet(Collections.singletonList(
+            new Interval(Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY, true)));
+
+    private final List<Interval> intervals;
+
+    private IntervalSet(List<Interval> intervals) {
+        this.intervals = intervals;
+    }
+
+    static IntervalSet of(Interval interval) {
+        return interval.isEmpty() ? EMPTY : new IntervalSet(Collections.singletonList(interval));
+    }
+
+    public List<Interval> getIntervals() {
+        return Collections.unmodifiableList(this.intervals);
+    }
+
+    public boolean contains(double value) {
+        for (val interval : this.intervals) {
+            if (interval.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return this.intervals.isEmpty();
+    }
+
+    public boolean isAll() {
+        return this.equals(ALL);
+    }
+
+    IntervalSet intersect(IntervalSet other) {
+        val result = new ArrayList<Interval>();
+        int i = 0;
+        int j = 0;
+        while (i < this.intervals.size() && j < other.intervals.size()) {
+            val a = this.intervals.get(i);
+            val b = other.intervals.get(j);
+            val lowerA = a.getLower() > b.getLower()
+                    || a.getLower() == b.getLower() && !a.isLowerInclusive();
+            val upperA = a.getUpper() < b.getUpper()
+                    || a.getUpper() == b.getUpper() && !a.isUpperInclusive();
+            val interval = new Interval(
+                    lowerA ? a.getLower() : b.getLower(), lowerA ? a.isLowerInclusive() : b.isLowerInclusive(),
+                    upperA ? a.getUpper() : b.getUpper(), upperA ? a.isUpperInclusive() : b.isUpperInclusive());
+            if (!interval.isEmpty()) {
+                result.add(interval);
+            }
+            // the one which ends first cannot meet the next of the other
+            if (upperA) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return new IntervalSet(result);
+    }
+
+    IntervalSet union(IntervalSet other) {
+        return complement().intersect(other.complement()).complement();
+    }
+
+    IntervalSet complement() {
+        val result = new ArrayList<Interval>();
+        double lower = Double.NEGATIVE_INFINITY;
+        boolean lowerInclusive = true;
+        for (val interval : this.intervals) {
+            val gap = new Interval(lower, lowerInclusive, interval.getLower(), !interval.isLowerInclusive());
+            if (!gap.isEmpty()) {
+                result.add(gap);
+            }
+            lower = interval.getUpper();
+            lowerInclusive = !interval.isUpperInclusive();
+        }
+        val gap = new Interval(lower, lowerInclusive, Double.POSITIVE_INFINITY, true);
+        if (!gap.isEmpty()) {
+            result.add(gap);
+        }
+        return new IntervalSet(result);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IntervalSet && this.intervals.equals(((IntervalSet) o).intervals);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.intervals.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        if (this.intervals.isEmpty()) {
+            return "{}";
+        }
+        return this.intervals.stream().map(Interval::toString).collect(Collectors.joining(" | "));
+    }
+}
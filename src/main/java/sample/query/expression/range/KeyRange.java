@@ -0,0 +1,69 @@
+package sample.query.expression.range;
+
+import lombok.Value;
+import lombok.val;
+
+/**
+ * The values of a key which can match: the numbers read by
+ * {@code FieldAccessor.getDouble}, with {@code NaN} for a missing or
+ * non-numeric value, and the texts read by {@code FieldAccessor.getText}, with
+ * {@code null} for a missing value.
+ */
+@Value
+public class KeyRange {
+
+    static final KeyRange ALL = new KeyRange(IntervalSet.ALL, true, TextSet.ALL, true);
+
+    private final IntervalSet numbers;
+    private final boolean nan;
+    private final TextSet texts;
+    private final boolean nullText;
+
+    public boolean contains(double number, String text) {
+        return (Double.isNaN(number) ? this.nan : this.numbers.contains(number))
+                && (text == null ? this.nullText : this.texts.contains(text));
+    }
+
+    public boolean isEmpty() {
+        return this.numbers.isEmpty() && !this.nan || this.texts.isEmpty() && !this.nullText;
+    }
+
+    public boolean isAll() {
+        return this.numbers.isAll() && this.nan && this.texts.isAll() && this.nullText;
+    }
+
+    KeyRange intersect(KeyRange other) {
+        return new KeyRange(this.numbers.intersect(other.numbers), this.nan && other.nan,
+                this.texts.intersect(other.texts), this.nullText && other.nullText);
+    }
+
+    // the union of each view, which holds more than the union of the values if both views are set
+    KeyRange union(KeyRange other) {
+        return new KeyRange(this.numbers.union(other.numbers), this.nan || other.nan,
+                this.texts.union(other.texts), this.nullText || other.nullText);
+    }
+
+    // true if numbers or NaN are left out
+    boolean constrainsNumbers() {
+        return !(this.numbers.isAll() && this.nan);
+    }
+
+    // true if texts or null are left out
+    boolean constrainsTexts() {
+        return !(this.texts.isAll() && this.nullText);
+    }
+
+    // the views which leave nothing out are not shown
+    @Override
+    public String toString() {
+        val sb = new StringBuilder();
+        if (constrainsNumbers()) {
+            sb.append("numbers=").append(this.numbers).append(this.nan ? " +NaN" : "");
+        }
+        if (constrainsTexts()) {
+            sb.append(sb.length() == 0 ? "" : ", ");
+            sb.append("texts=").append(this.texts).append(this.nullText ? " +null" : "");
+        }
+        return sb.length() == 0 ? "*" : sb.toString();
+    }
+}
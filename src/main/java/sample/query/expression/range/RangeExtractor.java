@@ -0,0 +1,130 @@
+package sample.query.expression.range;
+
+import sample.query.expression.evaluator.Comparison;
+import sample.query.expression.model.Chains;
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.ExprType;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import lombok.val;
+
+/**
+ * Finds the values of each key which a record needs to match an {@link Expr},
+ * so that a store can read only those ranges of its indexes.
+ *
+ * {@code NOT} is pushed down to the comparisons, whose ranges are exact and so
+ * can be complemented; {@code AND} intersects the ranges of each key and
+ * {@code OR} joins them, keeping only the keys on both sides. Text flags,
+ * ordered text comparisons and unsupported comparisons allow any value and
+ * are listed in {@link Ranges#getUnsupported}.
+ */
+public class RangeExtractor {
+
+    public static Ranges extract(Expr expr) {
+        return extract(expr, false);
+    }
+
+    private static Ranges extract(Expr expr, boolean negated) {
+        // runs of brackets and NOT in a loop, so only the operands of chains recurse
+        for (;;) {
+            if (expr.getType() == ExprType.BRACKET_EXPR) {
+                expr = ((BracketExpr) expr).getExpr();
+            } else if (expr.getType() == ExprType.UNARY_OP_EXPR) {
+                expr = ((UnaryOpExpr) expr).getExpr();
+                negated = !negated;
+            } else {
+                break;
+            }
+        }
+        switch (expr.getType()) {
+        case DOUBLE_EXPR:
+            return constant((((DoubleExpr) expr).getValue() != 0) != negated);
+        case TEXT_EXPR:
+            return Ranges.unsupported(expr);
+        case BINARY_OP_EXPR:
+            val binary = (BinaryOpExpr) expr;
+            if (Model.ComparableOp.contains(binary.getOp())) {
+                return extractComparison(binary, negated);
+            }
+            return extractChain(binary, negated);
+        default:
+            throw new RuntimeException("unknown: " + expr.getType().toString());
+        }
+    }
+
+    // ((a AND b) OR c) AND d folded from the left, in a loop
+    private static Ranges extractChain(BinaryOpExpr expr, boolean negated) {
+        val spine = Chains.spine(expr);
+        Ranges ranges = extract(Chains.first(spine), negated);
+        for (int i = spine.size() - 1; i >= 0; i--) {
+            val binary = spine.get(i);
+            val rhs = extract(binary.getRhs(), negated);
+            // NOT (a AND b) is NOT a OR NOT b
+            ranges = (binary.getOp() == BinaryOp.AND) != negated ? ranges.and(rhs) : ranges.or(rhs);
+        }
+        return ranges;
+    }
+
+    private static Ranges extractComparison(BinaryOpExpr expr, boolean negated) {
+        Comparison comparison;
+        try {
+            comparison = Comparison.of(expr);
+        } catch (IllegalArgumentException e) {
+            return Ranges.unsupported(expr);
+        }
+        switch (comparison.getKind()) {
+        case CONSTANT:
+            return constant(comparison.isConstant() != negated);
+        case NUMBER:
+            val numbers = numbers(comparison.getOp(), comparison.getNumber() + 0.0);
+            // only != holds for NaN
+            val nan = comparison.getOp() == BinaryOp.NOT_EQUAL_TO;
+            return Ranges.of(comparison.getKey(), negated
+                    ? new KeyRange(numbers.complement(), !nan, TextSet.ALL, true)
+                    : new KeyRange(numbers, nan, TextSet.ALL, true));
+        case TEXT:
+            if (comparison.getOp() != BinaryOp.EQUAL_TO && comparison.getOp() != BinaryOp.NOT_EQUAL_TO) {
+                return Ranges.unsupported(expr);
+            }
+            val equal = (comparison.getOp() == BinaryOp.EQUAL_TO) != negated;
+            val texts = TextSet.of(comparison.getText());
+            return Ranges.of(comparison.getKey(), equal
+                    ? new KeyRange(IntervalSet.ALL, true, texts, false)
+                    : new KeyRange(IntervalSet.ALL, true, texts.complement(), true));
+        default:
+            throw new RuntimeException("unknown: " + comparison.getKind().toString());
+        }
+    }
+
+    // the numbers, NaN aside, for which "number op value" holds
+    private static IntervalSet numbers(BinaryOp op, double value) {
+        if (Double.isNaN(value)) {
+            return op == BinaryOp.NOT_EQUAL_TO ? IntervalSet.ALL : IntervalSet.EMPTY;
+        }
+        val inf = Double.POSITIVE_INFINITY;
+        switch (op) {
+        case EQUAL_TO:
+            return IntervalSet.of(new Interval(value, true, value, true));
+        case NOT_EQUAL_TO:
+            return IntervalSet.of(new Interval(value, true, value, true)).complement();
+        case GREATER_THAN:
+            return IntervalSet.of(new Interval(value, false, inf, true));
+        case GREATER_THAN_OR_EQUAL_TO:
+            return IntervalSet.of(new Interval(value, true, inf, true));
+        case LESS_THAN:
+            return IntervalSet.of(new Interval(-inf, true, value, false));
+        case LESS_THAN_OR_EQUAL_TO:
+            return IntervalSet.of(new Interval(-inf, true, value, true));
+        default:
+            throw new RuntimeException("unknown: " + op.getCode());
+        }
+    }
+
+    private static Ranges constant(boolean value) {
+        return value ? Ranges.ALWAYS : Ranges.NEVER;
+    }
+}
@@ -0,0 +1,166 @@
+package sample.query.expression.range;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import sample.query.expression.evaluator.FieldAccessor;
+import sample.query.expression.model.Expr;
+import lombok.val;
+
+/**
+ * The values of each key which a record needs to match a filter, as found by
+ * {@link RangeExtractor}. The keys not listed can have any value.
+ *
+ * The ranges always hold every record the filter matches. They are exact when
+ * a record in all of them also matches the filter; otherwise they hold more,
+ * for example for the parts listed by {@link #getUnsupported}.
+ */
+public final class Ranges {
+
+    static final Ranges ALWAYS = new Ranges(Collections.emptyMap(), false, true, Collections.emptyList());
+    static final Ranges NEVER = new Ranges(Collections.emptyMap(), true, true, Collections.emptyList());
+
+    private final Map<String, KeyRange> keys;
+    private final boolean never;
+    private final boolean exact;
+    private final List<Expr> unsupported;
+
+    Ranges(Map<String, KeyRange> keys, boolean never, boolean exact, List<Expr> unsupported) {
+        this.keys = keys;
+        this.never = never;
+        this.exact = exact;
+        this.unsupported = unsupported;
+    }
+
+    static Ranges of(String key, KeyRange range) {
+        if (range.isEmpty()) {
+            return NEVER;
+        }
+        if (range.isAll()) {
+            return ALWAYS;
+        }
+        return new Ranges(Collections.singletonMap(key, range), false, true, Collections.emptyList());
+    }
+
+    static Ranges unsupported(Expr expr) {
+        return new Ranges(Collections.emptyMap(), false, false, Collections.singletonList(expr));
+    }
+
+    // the keys which are constrained, in order
+    public Map<String, KeyRange> getKeys() {
+        return Collections.unmodifiableMap(this.keys);
+    }
+
+    public KeyRange get(String key) {
+        return this.keys.getOrDefault(key, KeyRange.ALL);
+    }
+
+    // true if no record can match
+    public boolean isNever() {
+        return this.never;
+    }
+
+    public boolean isExact() {
+        return this.exact;
+    }
+
+    // the parts of the filter which are not ranges and were taken as any value
+    public List<Expr> getUnsupported() {
+        return Collections.unmodifiableList(this.unsupported);
+    }
+
+    // false only if the record cannot match the filter
+    public <R> boolean mayMatch(R record, FieldAccessor<R> accessor) {
+        if (this.never) {
+            return false;
+        }
+        for (val entry : this.keys.entrySet()) {
+            val key = entry.getKey();
+            if (!entry.getValue().contains(accessor.getDouble(record, key), accessor.getText(record, key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Ranges and(Ranges other) {
+        // whatever the unsupported parts are, nothing matches
+        if (this.never || other.never) {
+            return NEVER;
+        }
+        val keys = new TreeMap<String, KeyRange>(this.keys);
+        for (val entry : other.keys.entrySet()) {
+            val range = keys.merge(entry.getKey(), entry.getValue(), KeyRange::intersect);
+            if (range.isEmpty()) {
+                return NEVER;
+            }
+        }
+        return new Ranges(keys, false, this.exact && other.exact, concat(this.unsupported, other.unsupported));
+    }
+
+    Ranges or(Ranges other) {
+        if (this.never) {
+            return other;
+        }
+        if (other.never) {
+            return this;
+        }
+        // whatever the unsupported parts are, everything matches
+        if (this.exact && this.keys.isEmpty() || other.exact && other.keys.isEmpty()) {
+            return ALWAYS;
+        }
+        val keys = new TreeMap<String, KeyRange>();
+        for (val entry : this.keys.entrySet()) {
+            val range = other.keys.get(entry.getKey());
+            if (range != null) {
+                val union = entry.getValue().union(range);
+                if (!union.isAll()) {
+                    keys.put(entry.getKey(), union);
+                }
+            }
+        }
+        return new Ranges(keys, false, isUnionExact(other), concat(this.unsupported, other.unsupported));
+    }
+
+    // the union of the ranges is the union of the values when they constrain one view of one key
+    private boolean isUnionExact(Ranges other) {
+        if (!this.exact || !other.exact || this.keys.size() != 1 || !this.keys.keySet().equals(other.keys.keySet())) {
+            return false;
+        }
+        val lhs = this.keys.values().iterator().next();
+        val rhs = other.keys.values().iterator().next();
+        return !(lhs.constrainsNumbers() || rhs.constrainsNumbers())
+                || !(lhs.constrainsTexts() || rhs.constrainsTexts());
+    }
+
+    private static List<Expr> concat(List<Expr> lhs, List<Expr> rhs) {
+        if (lhs.isEmpty()) {
+            return rhs;
+        }
+        if (rhs.isEmpty()) {
+            return lhs;
+        }
+        val list = new ArrayList<Expr>(lhs);
+        list.addAll(rhs);
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        String string;
+        if (this.never) {
+            string = "never";
+        } else if (this.keys.isEmpty()) {
+            string = "*";
+        } else {
+            string = this.keys.entrySet().stream()
+                    .map(entry -> entry.getKey() + ": " + entry.getValue())
+                    .collect(Collectors.joining("; "));
+        }
+        return this.exact ? string : string + " (inexact)";
+    }
+}
@@ -0,0 +1,97 @@
+package sample.query.expression.range;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import lombok.val;
+
+/**
+ * A set of texts, either the listed ones or all but the listed ones.
+ */
+public final class TextSet {
+
+    static final TextSet EMPTY = new TextSet(Collections.emptySet(), false);
+    static final TextSet ALL = new TextSet(Collections.emptySet(), true);
+
+    private final Set<String> texts;
+    private final boolean excluded;
+
+    private TextSet(Set<String> texts, boolean excluded) {
+        this.texts = texts;
+        this.excluded = excluded;
+    }
+
+    static TextSet of(String text) {
+        return new TextSet(Collections.singleton(text), false);
+    }
+
+    // the listed texts, which are the ones out of the set if isExcluded()
+    public Set<String> getTexts() {
+        return Collections.unmodifiableSet(this.texts);
+    }
+
+    public boolean isExcluded() {
+        return this.excluded;
+    }
+
+    public boolean contains(String text) {
+        return this.texts.contains(text) != this.excluded;
+    }
+
+    public boolean isEmpty() {
+        return !this.excluded && this.texts.isEmpty();
+    }
+
+    public boolean isAll() {
+        return this.excluded && this.texts.isEmpty();
+    }
+
+    TextSet intersect(TextSet other) {
+        if (!this.excluded && !other.excluded) {
+            val texts = new TreeSet<>(this.texts);
+            texts.retainAll(other.texts);
+            return new TextSet(texts, false);
+        }
+        if (this.excluded && other.excluded) {
+            val texts = new TreeSet<>(this.texts);
+            texts.addAll(other.texts);
+            return new TextSet(texts, true);
+        }
+        val listed = this.excluded ? other : this;
+        val texts = new TreeSet<>(listed.texts);
+        texts.removeAll(this.excluded ? this.texts : other.texts);
+        return new TextSet(texts, false);
+    }
+
+    TextSet union(TextSet other) {
+        return complement().intersect(other.complement()).complement();
+    }
+
+    TextSet complement() {
+        return new TextSet(this.texts, !this.excluded);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TextSet)) {
+            return false;
+        }
+        val other = (TextSet) o;
+        return this.excluded == other.excluded && this.texts.equals(other.texts);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.texts.hashCode() * 31 + Boolean.hashCode(this.excluded);
+    }
+
+    @Override
+    public String toString() {
+        val texts = String.join(", ", new TreeSet<>(this.texts));
+        if (this.excluded) {
+            return this.texts.isEmpty() ? "*" : "* - {" + texts + "}";
+        }
+        return "{" + texts + "}";
+    }
+}
@@ -0,0 +1,50 @@
+package sample.query.expression.visitor;
+
+import java.util.List;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOpExpr;
+
+/**
+ * A {@link SinkVisitor} which also works as a {@link Visitor}: the list of
+ * each {@code Visitor} method is the sink of the walk under that node.
+ *
+ * The {@code Visitor} methods are final, since the walk only calls the sink
+ * ones: a subclass overrides those.
+ */
+public abstract class AbstractSinkVisitor<T> implements SinkVisitor<T>, Visitor<T> {
+
+    @Override
+    public List<T> visit(Expr expr) {
+        return SinkVisitor.super.visit(expr);
+    }
+
+    @Override
+    public final void visitDoubleExpr(DoubleExpr expr, List<T> nodes) {
+        visitDoubleExpr(expr, nodes::add);
+    }
+
+    @Override
+    public final void visitTextExpr(TextExpr expr, List<T> nodes) {
+        visitTextExpr(expr, nodes::add);
+    }
+
+    @Override
+    public final void visitBracketExpr(BracketExpr expr, List<T> nodes) {
+        visitBracketExpr(expr, nodes::add);
+    }
+
+    @Override
+    public final void visitUnaryOpExpr(UnaryOpExpr expr, List<T> nodes) {
+        visitUnaryOpExpr(expr, nodes::add);
+    }
+
+    @Override
+    public final void visitBinaryOpExpr(BinaryOpExpr expr, List<T> nodes) {
+        visitBinaryOpExpr(expr, nodes::add);
+    }
+}
@@ -1,21 +1,31 @@
 package sample.query.expression.visitor;
 
-import static java.util.stream.Collectors.*;
-
-import java.util.List;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
 import com.google.common.math.DoubleMath;
 
+import sample.query.expression.model.Expr;
 import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
 import sample.query.expression.model.Model.BinaryOpExpr;
 import sample.query.expression.model.Model.BracketExpr;
 import sample.query.expression.model.Model.DoubleExpr;
 import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOp;
 import sample.query.expression.model.Model.UnaryOpExpr;
 import lombok.Value;
 import lombok.val;
 
-public class NodeVisitor implements Visitor<Node> {
+/**
+ * Makes a {@link Node} of each part of an expression, with the number of
+ * brackets it is in.
+ *
+ * The walk keeps its own stack on the heap and makes the nodes itself, so the
+ * visit methods are final: overriding them would change nothing below the top
+ * of an expression.
+ */
+public class NodeVisitor extends AbstractSinkVisitor<Node> {
 
     public enum NodeType {
         LONG, DOUBLE, TEXT,
@@ -25,8 +35,6 @@ public class NodeVisitor implements Visitor<Node> {
         UNARY_OP, BINARY_OP, RELATIONAL_OP, LOGICAL_OP;
     }
 
-    private int depth = 0;
-
     @Value
     public class LongNode implements Node {
         private final NodeType type;
@@ -48,68 +56,138 @@ public class NodeVisitor implements Visitor<Node> {
         private final int depth;
     }
 
+    /**
+     * Walks the expression with a stack on the heap instead of through the
+     * visit methods, so that a tree of any depth takes a constant depth of the
+     * Java stack. The depth travels with the walk, so one instance can be
+     * shared by any number of threads.
+     */
     @Override
-    public void visitDoubleExpr(DoubleExpr expr, List<Node> nodes) {
-        final Node numNode;
-        val value = Double.valueOf(expr.getValue());
-        if (DoubleMath.isMathematicalInteger(value)) {
-            numNode = new LongNode(NodeType.LONG, value.longValue(), this.depth);
-        } else {
-            numNode = new DoubleNode(NodeType.DOUBLE, value, this.depth);
+    public void accept(Expr expr, Consumer<? super Node> sink) {
+        accept(expr, 0, sink);
+    }
+
+    // the nodes of an expression inside depth brackets
+    public void accept(Expr expr, int depth, Consumer<? super Node> sink) {
+        // Exprs to walk and Nodes to give to the sink, with their depths
+        Object[] items = new Object[16];
+        int[] depths = new int[16];
+        int top = 0;
+        items[0] = expr;
+        depths[0] = depth;
+        while (top >= 0) {
+            val item = items[top];
+            val d = depths[top];
+            items[top--] = null;
+            if (item instanceof Node) {
+                sink.accept((Node) item);
+                continue;
+            }
+            if (top + 3 >= items.length) {
+                items = Arrays.copyOf(items, items.length * 2);
+                depths = Arrays.copyOf(depths, depths.length * 2);
+            }
+            val e = (Expr) item;
+            switch (e.getType()) {
+            case DOUBLE_EXPR:
+                sink.accept(node((DoubleExpr) e, d));
+                break;
+            case TEXT_EXPR:
+                sink.accept(node((TextExpr) e, d));
+                break;
+            case BRACKET_EXPR:
+                sink.accept(openBracket(d + 1));
+                items[++top] = closeBracket(d + 1);
+                items[++top] = ((BracketExpr) e).getExpr();
+                depths[top] = d + 1;
+                break;
+            case UNARY_OP_EXPR:
+                sink.accept(node(((UnaryOpExpr) e).getOp(), d));
+                items[++top] = ((UnaryOpExpr) e).getExpr();
+                depths[top] = d;
+                break;
+            case BINARY_OP_EXPR:
+                val binary = (BinaryOpExpr) e;
+                items[++top] = binary.getRhs();
+                depths[top] = d;
+                items[++top] = node(binary.getOp(), d);
+                items[++top] = binary.getLhs();
+                depths[top] = d;
+                break;
+            default:
+                throw new RuntimeException("unknown: " + e.getType().toString());
+            }
         }
-        nodes.add(numNode);
     }
 
+    // the visit methods walk an expression which is not inside brackets
+
     @Override
-    public void visitTextExpr(TextExpr expr, List<Node> nodes) {
-        nodes.add(new StringNode(NodeType.TEXT, expr.getText(), this.depth));
+    public final void visitDoubleExpr(DoubleExpr expr, Consumer<? super Node> sink) {
+        sink.accept(node(expr, 0));
     }
 
     @Override
-    public void visitBracketExpr(BracketExpr expr, List<Node> nodes) {
-        this.depth++;
-        val nested = visit(expr.getExpr());
-        nodes.add(new StringNode(NodeType.OPEN_BRACKET, "(", this.depth));
-        nodes.addAll(nested.stream().collect(toList()));
-        nodes.add(new StringNode(NodeType.CLOSE_BRACKET, ")", this.depth));
-        this.depth--;
+    public final void visitTextExpr(TextExpr expr, Consumer<? super Node> sink) {
+        sink.accept(node(expr, 0));
     }
 
     @Override
-    public void visitUnaryOpExpr(UnaryOpExpr expr, List<Node> nodes) {
-        val nested = visit(expr.getExpr());
-
-        final Node opNode;
-        val op = expr.getOp();
-        val opCode = op.getCode();
-        if (Model.LogicalUnaryOp.contains(op)) {
-            opNode = new StringNode(NodeType.LOGICAL_OP, opCode, this.depth);
-        } else {
-            opNode = new StringNode(NodeType.UNARY_OP, opCode, this.depth);
-        }
+    public final void visitBracketExpr(BracketExpr expr, Consumer<? super Node> sink) {
+        accept(expr, 0, sink);
+    }
 
-        nodes.add(opNode);
-        nodes.addAll(nested);
+    @Override
+    public final void visitUnaryOpExpr(UnaryOpExpr expr, Consumer<? super Node> sink) {
+        accept(expr, 0, sink);
     }
 
     @Override
-    public void visitBinaryOpExpr(BinaryOpExpr expr, List<Node> nodes) {
-        val lhs = visit(expr.getLhs());
-        val rhs = visit(expr.getRhs());
+    public final void visitBinaryOpExpr(BinaryOpExpr expr, Consumer<? super Node> sink) {
+        accept(expr, 0, sink);
+    }
 
-        final Node opNode;
-        val op = expr.getOp();
-        val opCode = op.getCode();
-        if (Model.LogicalBinaryOp.contains(op)) {
-            opNode = new StringNode(NodeType.LOGICAL_OP, opCode, this.depth);
-        } else if (Model.ComparableOp.contains(op)) {
-            opNode = new StringNode(NodeType.RELATIONAL_OP, opCode, this.depth);
-        } else {
-            opNode = new StringNode(NodeType.BINARY_OP, opCode, this.depth);
+    // the nodes for each part of an expression
+
+    private Node node(DoubleExpr expr, int depth) {
+        val value = Double.valueOf(expr.getValue());
+        if (DoubleMath.isMathematicalInteger(value)) {
+            return new LongNode(NodeType.LONG, value.longValue(), depth);
         }
+        return new DoubleNode(NodeType.DOUBLE, value, depth);
+    }
 
-        nodes.addAll(lhs.stream().collect(toList()));
-        nodes.add(opNode);
-        nodes.addAll(rhs.stream().collect(toList()));
+    private Node node(TextExpr expr, int depth) {
+        return new StringNode(NodeType.TEXT, expr.getText(), depth);
+    }
+
+    private Node node(UnaryOp op, int depth) {
+        return new StringNode(type(op), op.getCode(), depth);
+    }
+
+    private Node node(BinaryOp op, int depth) {
+        return new StringNode(type(op), op.getCode(), depth);
+    }
+
+    private Node openBracket(int depth) {
+        return new StringNode(NodeType.OPEN_BRACKET, "(", depth);
+    }
+
+    private Node closeBracket(int depth) {
+        return new StringNode(NodeType.CLOSE_BRACKET, ")", depth);
+    }
+
+    public static NodeType type(UnaryOp op) {
+        return Model.LogicalUnaryOp.contains(op) ? NodeType.LOGICAL_OP : NodeType.UNARY_OP;
+    }
+
+    public static NodeType type(BinaryOp op) {
+        if (Model.LogicalBinaryOp.contains(op)) {
+            return NodeType.LOGICAL_OP;
+        }
+        if (Model.ComparableOp.contains(op)) {
+            return NodeType.RELATIONAL_OP;
+        }
+        return NodeType.BINARY_OP;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package sample.query.expression.visitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import lombok.val;
+
+/**
+ * Walks an {@link Expr} and pushes what it makes of each part into one sink,
+ * which is passed down the whole walk, so no list is made per node as with
+ * {@link Visitor}.
+ */
+public interface SinkVisitor<T> {
+
+    public void visitDoubleExpr(DoubleExpr expr, Consumer<? super T> sink);
+
+    public void visitTextExpr(TextExpr expr, Consumer<? super T> sink);
+
+    public void visitBracketExpr(BracketExpr expr, Consumer<? super T> sink);
+
+    public void visitUnaryOpExpr(UnaryOpExpr expr, Consumer<? super T> sink);
+
+    public void visitBinaryOpExpr(BinaryOpExpr expr, Consumer<? super T> sink);
+
+    public default void accept(Expr expr, Consumer<? super T> sink) {
+        switch (expr.getType()) {
+        case DOUBLE_EXPR:
+            visitDoubleExpr((DoubleExpr) expr, sink);
+            break;
+        case TEXT_EXPR:
+            visitTextExpr((TextExpr) expr, sink);
+            break;
+        case BRACKET_EXPR:
+            visitBracketExpr((BracketExpr) expr, sink);
+            break;
+        case UNARY_OP_EXPR:
+            visitUnaryOpExpr((UnaryOpExpr) expr, sink);
+            break;
+        case BINARY_OP_EXPR:
+            visitBinaryOpExpr((BinaryOpExpr) expr, sink);
+            break;
+        default:
+            throw new RuntimeException("unknown: " + expr.getType().toString());
+        }
+    }
+
+    public default List<T> visit(Expr expr) {
+        val nodes = new ArrayList<T>();
+        accept(expr, nodes::add);
+        return nodes;
+    }
+}
@@ -1,9 +1,9 @@
 package sample.query.expression.visitor;
 
-import static java.util.stream.Collectors.*;
-
-import java.util.List;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
+import sample.query.expression.model.Expr;
 import sample.query.expression.model.Model.BinaryOpExpr;
 import sample.query.expression.model.Model.BracketExpr;
 import sample.query.expression.model.Model.DoubleExpr;
@@ -11,39 +11,88 @@ import sample.query.expression.model.Model.TextExpr;
 import sample.query.expression.model.Model.UnaryOpExpr;
 import lombok.val;
 
-public class StrVisitor implements Visitor<String> {
+/**
+ * Makes a string of each part of an expression.
+ *
+ * The walk keeps its own stack on the heap like {@link NodeVisitor}, so only
+ * the leaves go through the visit methods, and a subclass can change what is
+ * made of a number or a text. The visit methods of brackets and operators are
+ * final, since the walk does not call them.
+ */
+public class StrVisitor extends AbstractSinkVisitor<String> {
+
+    @Override
+    public void accept(Expr expr, Consumer<? super String> sink) {
+        // Exprs to walk and Strings to give to the sink
+        Object[] items = new Object[16];
+        int top = 0;
+        items[0] = expr;
+        while (top >= 0) {
+            val item = items[top];
+            items[top--] = null;
+            if (item instanceof String) {
+                sink.accept((String) item);
+                continue;
+            }
+            if (top + 3 >= items.length) {
+                items = Arrays.copyOf(items, items.length * 2);
+            }
+            val e = (Expr) item;
+            switch (e.getType()) {
+            case DOUBLE_EXPR:
+                visitDoubleExpr((DoubleExpr) e, sink);
+                break;
+            case TEXT_EXPR:
+                visitTextExpr((TextExpr) e, sink);
+                break;
+            case BRACKET_EXPR:
+                sink.accept("(");
+                items[++top] = ")";
+                items[++top] = ((BracketExpr) e).getExpr();
+                break;
+            case UNARY_OP_EXPR:
+                sink.accept(((UnaryOpExpr) e).getOp().getCode());
+                items[++top] = ((UnaryOpExpr) e).getExpr();
+                break;
+            case BINARY_OP_EXPR:
+                val binary = (BinaryOpExpr) e;
+                items[++top] = binary.getRhs();
+                items[++top] = binary.getOp().getCode();
+                items[++top] = binary.getLhs();
+                break;
+            default:
+                throw new RuntimeException("unknown: " + e.getType().toString());
+            }
+        }
+    }
 
     @Override
-    public void visitDoubleExpr(DoubleExpr expr, List<String> nodes) {
-        nodes.add("double:" + expr.toString());
+    public void visitDoubleExpr(DoubleExpr expr, Consumer<? super String> sink) {
+        sink.accept("double:" + expr.toString());
     }
 
     @Override
-    public void visitTextExpr(TextExpr expr, List<String> nodes) {
-        nodes.add("text:" + expr.toString());
+    public void visitTextExpr(TextExpr expr, Consumer<? super String> sink) {
+        sink.accept("text:" + expr.toString());
     }
 
     @Override
-    public void visitBracketExpr(BracketExpr expr, List<String> nodes) {
-        val nested = visit(expr.getExpr());
-        nodes.add("(");
-        nodes.addAll(nested.stream().collect(toList()));
-        nodes.add(")");
+    public final void visitBracketExpr(BracketExpr expr, Consumer<? super String> sink) {
+        sink.accept("(");
+        accept(expr.getExpr(), sink);
+        sink.accept(")");
     }
 
     @Override
-    public void visitUnaryOpExpr(UnaryOpExpr expr, List<String> nodes) {
-        val nested = visit(expr.getExpr());
-        nodes.add(expr.getOp().getCode());
-        nodes.addAll(nested.stream().collect(toList()));
+    public final void visitUnaryOpExpr(UnaryOpExpr expr, Consumer<? super String> sink) {
+        sink.accept(expr.getOp().getCode());
+        accept(expr.getExpr(), sink);
     }
 
     @Override
-    public void visitBinaryOpExpr(BinaryOpExpr expr, List<String> nodes) {
-        val lhs = visit(expr.getLhs());
-        val rhs = visit(expr.getRhs());
-        nodes.addAll(lhs.stream().collect(toList()));
-        nodes.add(expr.getOp().getCode());
-        nodes.addAll(rhs.stream().collect(toList()));
+    public final void visitBinaryOpExpr(BinaryOpExpr expr, Consumer<? super String> sink) {
+        accept(expr.getLhs(), sink);
+        sink.accept(expr.getOp().getCode());
+        accept(expr.getRhs(), sink);
     }
 }
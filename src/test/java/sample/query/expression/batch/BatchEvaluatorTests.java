@@ -0,0 +1,117 @@
+package sample.query.expression.batch;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.evaluator.FieldAccessor;
+import sample.query.expression.evaluator.PredicateCompiler;
+import sample.query.expression.evaluator.PredicateCompilerTests;
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class BatchEvaluatorTests {
+
+    static final String[] NUMBER_KEYS = {
+            "total_pv", "smartphone_pv", "twenties_feature", "kyusyu_feature", "shiga_ub", "sizuoka_feature",
+            "kyoto_ub" };
+    static final String[] NAMES = { "abb", "abc", "abd" };
+    static final String[] FLAGS = { "true", "false" };
+
+    // 150 rows leave a partial last word
+    static final List<Map<String, Object>> RECORDS = records(150);
+
+    @Parameters(name = "{index}: query [{0}]")
+    public static Iterable<Object[]> data() {
+        val data = new ArrayList<Object[]>();
+        for (val row : PredicateCompilerTests.data()) {
+            data.add(new Object[] { row[0] });
+        }
+        return data;
+    }
+
+    private String query;
+
+    public BatchEvaluatorTests(String query) {
+        this.query = query;
+    }
+
+    @Test
+    public void testEvaluate() {
+        val expr = QueryParser.parse(this.query);
+        val predicate = PredicateCompiler.compile(expr, FieldAccessor.ofMap());
+        val bitmap = BatchEvaluator.evaluate(expr, batch(RECORDS));
+        assertEquals(Bitmaps.words(RECORDS.size()), bitmap.length);
+
+        int count = 0;
+        for (int i = 0; i < RECORDS.size(); i++) {
+            val expected = predicate.test(RECORDS.get(i));
+            assertEquals(RECORDS.get(i).toString(), expected, Bitmaps.get(bitmap, i));
+            count += expected ? 1 : 0;
+        }
+        // no bits past the last row
+        assertEquals(count, Bitmaps.count(bitmap));
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        val expr = QueryParser.parse(this.query);
+        assertEquals(0, BatchEvaluator.evaluate(expr, new ColumnBatch(0)).length);
+    }
+
+    private static List<Map<String, Object>> records(int size) {
+        val random = new Random(0);
+        val records = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < size; i++) {
+            val record = new HashMap<String, Object>();
+            for (val key : NUMBER_KEYS) {
+                if (random.nextInt(8) != 0) {
+                    record.put(key, (double) (random.nextInt(21) - 10) * (key.equals("kyoto_ub") ? 100 : 5));
+                }
+            }
+            if (random.nextInt(4) != 0) {
+                record.put("name", NAMES[random.nextInt(NAMES.length)]);
+            }
+            if (random.nextInt(4) != 0) {
+                record.put("male", FLAGS[random.nextInt(FLAGS.length)]);
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static ColumnBatch batch(List<Map<String, Object>> records) {
+        val batch = new ColumnBatch(records.size());
+        for (val key : NUMBER_KEYS) {
+            val values = new double[records.size()];
+            for (int i = 0; i < values.length; i++) {
+                val value = (Double) records.get(i).get(key);
+                values[i] = value == null ? Double.NaN : value;
+            }
+            batch.putNumbers(key, values);
+        }
+        putTexts(batch, records, "name", NAMES);
+        putTexts(batch, records, "male", FLAGS);
+        return batch;
+    }
+
+    private static void putTexts(ColumnBatch batch, List<Map<String, Object>> records, String key,
+            String[] dictionary) {
+        val codes = new int[records.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = Arrays.asList(dictionary).indexOf(records.get(i).get(key));
+        }
+        batch.putTexts(key, dictionary, codes);
+    }
+}
@@ -0,0 +1,87 @@
+package sample.query.expression.batch;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.evaluator.Comparison;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class ComparisonKernelsTests {
+
+    static final int[] SIZES = { 0, 1, 7, 63, 64, 65, 130, 1000 };
+    static final double[] CONSTANTS = { 0, 2, -2.5, 2.5, 1e19, -1e19, Double.NaN, Double.POSITIVE_INFINITY };
+
+    @Parameters(name = "{index}: {0} {1}")
+    public static Iterable<Object[]> data() {
+        val data = new ArrayList<Object[]>();
+        for (val op : Model.ComparableOp) {
+            for (val value : CONSTANTS) {
+                data.add(new Object[] { op, value });
+            }
+        }
+        return data;
+    }
+
+    private BinaryOp op;
+    private double value;
+
+    public ComparisonKernelsTests(BinaryOp op, double value) {
+        this.op = op;
+        this.value = value;
+    }
+
+    @Test
+    public void testDoubles() {
+        val random = new Random(0);
+        for (val size : SIZES) {
+            val values = new double[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = random.nextInt(8) == 0 ? Double.NaN : random.nextInt(7) - 3;
+            }
+            val expected = new long[Bitmaps.words(size)];
+            for (int i = 0; i < size; i++) {
+                if (Comparison.compare(this.op, values[i], this.value)) {
+                    expected[i >>> 6] |= 1L << i;
+                }
+            }
+            for (val kernels : Arrays.asList(ComparisonKernels.scalar(), ComparisonKernels.preferred())) {
+                val actual = new long[expected.length];
+                Arrays.fill(actual, -1L);
+                kernels.compare(this.op, values, this.value, size, actual);
+                assertArrayEquals(kernels + " " + size, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testLongs() {
+        val random = new Random(0);
+        val expr = Model.binaryOpExpr(Model.textExpr("key"), this.op, Model.doubleExpr(this.value));
+        for (val size : SIZES) {
+            val values = new long[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = random.nextInt(16) == 0 ? Long.MIN_VALUE : random.nextInt(7) - 3;
+            }
+            val batch = new ColumnBatch(size).putLongs("key", values);
+            for (val kernels : Arrays.asList(ComparisonKernels.scalar(), ComparisonKernels.preferred())) {
+                val actual = BatchEvaluator.evaluate(expr, batch, kernels);
+                for (int i = 0; i < size; i++) {
+                    assertEquals(kernels + " " + values[i], Comparison.compare(this.op, values[i], this.value),
+                            Bitmaps.get(actual, i));
+                }
+                assertEquals(Bitmaps.words(size), actual.length);
+            }
+        }
+    }
+}
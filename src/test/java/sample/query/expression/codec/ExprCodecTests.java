@@ -0,0 +1,92 @@
+package sample.query.expression.codec;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.parser.QueryParser;
+import sample.query.expression.parser.QueryParserTests;
+import sample.query.expression.visitor.NodeVisitor;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class ExprCodecTests {
+
+    @Parameters(name = "{index}: query [{0}]")
+    public static Iterable<Object[]> data() {
+        val data = new ArrayList<Object[]>();
+        for (val row : QueryParserTests.data()) {
+            if (row[0].toString().equals("PARSE")) {
+                data.add(new Object[] { row[1] });
+            }
+        }
+        return data;
+    }
+
+    private String query;
+
+    public ExprCodecTests(String query) {
+        this.query = query;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        val expr = QueryParser.parse(this.query);
+        assertSameTree(expr, ExprCodec.decode(ExprCodec.encode(expr)));
+    }
+
+    @Test
+    public void testDirectBuffer() {
+        val expr = QueryParser.parse(this.query);
+        val bytes = ExprCodec.encode(expr);
+        val buffer = ByteBuffer.allocateDirect(bytes.length * 2);
+        buffer.put(bytes).put(bytes).flip();
+        assertSameTree(expr, ExprCodec.decode(buffer));
+        assertEquals(bytes.length, buffer.position());
+        assertSameTree(expr, ExprCodec.decode(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testSlice() {
+        val expr = QueryParser.parse(this.query);
+        val bytes = ExprCodec.encode(expr);
+        val padded = new byte[bytes.length + 5];
+        System.arraycopy(bytes, 0, padded, 3, bytes.length);
+        val buffer = ByteBuffer.wrap(padded, 3, bytes.length).slice();
+        assertSameTree(expr, ExprCodec.decode(buffer));
+    }
+
+    @Test
+    public void testTruncated() {
+        val bytes = ExprCodec.encode(QueryParser.parse(this.query));
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                ExprCodec.decode(Arrays.copyOf(bytes, length));
+                fail("decoded " + length + " bytes");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testVersion() {
+        val bytes = ExprCodec.encode(QueryParser.parse(this.query));
+        bytes[2] = ExprCodec.VERSION + 1;
+        ExprCodec.decode(bytes);
+    }
+
+    private static void assertSameTree(Expr expected, Expr actual) {
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(new NodeVisitor().visit(expected), new NodeVisitor().visit(actual));
+    }
+}
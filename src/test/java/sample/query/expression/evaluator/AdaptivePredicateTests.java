@@ -0,0 +1,93 @@
+package sample.query.expression.evaluator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class AdaptivePredicateTests {
+
+    @Parameters(name = "{index}: query [{0}]")
+    public static Iterable<Object[]> data() {
+        return PredicateCompilerTests.data();
+    }
+
+    private String query;
+
+    public AdaptivePredicateTests(String query, boolean expected) {
+        this.query = query;
+    }
+
+    @Test
+    public void testSameResults() {
+        val expr = QueryParser.parse(this.query);
+        val expected = PredicateCompiler.compile(expr, FieldAccessor.ofMap());
+        // samples every evaluation and reorders every other one
+        val actual = AdaptivePredicate.compile(expr, FieldAccessor.ofMap(), 1, 2);
+        for (int i = 0; i < 10; i++) {
+            for (val record : BytecodeCompilerTests.RECORDS) {
+                assertEquals(record.toString(), expected.test(record), actual.test(record));
+            }
+        }
+        assertEquals(expected.test(PredicateCompilerTests.RECORD),
+                PredicateCompiler.compile(actual.plan(), FieldAccessor.ofMap()).test(PredicateCompilerTests.RECORD));
+    }
+
+    @Test
+    public void testReorder() {
+        // the last operand of the AND is the one which fails
+        val expr = QueryParser.parse(
+                "((" + this.query + ") OR total_pv = 40) AND (name = abc) AND (male = false)");
+        val actual = AdaptivePredicate.compile(expr, FieldAccessor.ofMap(), 1, 16);
+        for (int i = 0; i < 64; i++) {
+            assertFalse(actual.test(PredicateCompilerTests.RECORD));
+        }
+        val statistics = actual.statistics();
+        assertEquals("male = false", statistics.get(0).getOperand().toString());
+        assertEquals(0.0, statistics.get(0).passRate(), 0.0);
+        assertTrue(actual.plan().toString(), actual.plan().toString().startsWith("((male = false AND "));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        val expr = QueryParser.parse("(" + this.query + ") OR ((total_pv > 35) AND (name != abb))");
+        val expected = PredicateCompiler.compile(expr, FieldAccessor.ofMap());
+        val actual = AdaptivePredicate.compile(expr, FieldAccessor.ofMap(), 2, 4);
+        val executor = Executors.newFixedThreadPool(4);
+        try {
+            val tasks = new ArrayList<Callable<Void>>();
+            for (int t = 0; t < 4; t++) {
+                tasks.add(() -> {
+                    for (int i = 0; i < 2_000; i++) {
+                        for (val record : BytecodeCompilerTests.RECORDS) {
+                            assertEquals(expected.test(record), actual.test(record));
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (val future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedComparison() {
+        AdaptivePredicate.compile(QueryParser.parse("(total_pv = 40) = 1"), FieldAccessor.ofMap());
+    }
+}
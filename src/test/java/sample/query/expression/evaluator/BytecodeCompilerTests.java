@@ -0,0 +1,76 @@
+package sample.query.expression.evaluator;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class BytecodeCompilerTests {
+
+    static final List<Map<String, Object>> RECORDS = Arrays.asList(
+            PredicateCompilerTests.RECORD,
+            new HashMap<>(),
+            record("total_pv", 33, "smartphone_pv", 54.9, "twenties_feature", -3.3, "name", "abb", "male", "false"),
+            record("total_pv", Double.NaN, "smartphone_pv", 55, "kyusyu_feature", 1.1, "shiga_ub", 10,
+                    "sizuoka_feature", 3.6, "kyoto_ub", 887));
+
+    @Parameters(name = "{index}: query [{0}]")
+    public static Iterable<Object[]> data() {
+        return PredicateCompilerTests.data();
+    }
+
+    private String query;
+
+    public BytecodeCompilerTests(String query, boolean expected) {
+        this.query = query;
+    }
+
+    @Test
+    public void testCompile() {
+        val expr = QueryParser.parse(this.query);
+        val expected = PredicateCompiler.compile(expr, FieldAccessor.ofMap());
+        val actual = BytecodeCompiler.compile(expr, FieldAccessor.ofMap());
+        for (val record : RECORDS) {
+            assertEquals(record.toString(), expected.test(record), actual.test(record));
+        }
+    }
+
+    @Test
+    public void testTiered() {
+        val expr = QueryParser.parse(this.query);
+        val expected = PredicateCompiler.compile(expr, FieldAccessor.ofMap());
+        val actual = BytecodeCompiler.tiered(expr, FieldAccessor.ofMap(), 2);
+        for (int i = 0; i < 3; i++) {
+            for (val record : RECORDS) {
+                assertEquals(record.toString(), expected.test(record), actual.test(record));
+            }
+        }
+    }
+
+    @Test
+    public void testGenerated() {
+        val expr = QueryParser.parse("total_pv > 0 AND " + this.query);
+        val actual = BytecodeCompiler.compile(expr, FieldAccessor.ofMap());
+        assertTrue(actual.getClass().getName(), actual.getClass().getName().startsWith(
+                "sample.query.expression.evaluator.CompiledPredicate"));
+    }
+
+    private static Map<String, Object> record(Object... entries) {
+        val record = new HashMap<String, Object>();
+        for (int i = 0; i < entries.length; i += 2) {
+            record.put((String) entries[i], entries[i + 1]);
+        }
+        return record;
+    }
+}
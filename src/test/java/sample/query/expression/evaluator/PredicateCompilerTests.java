@@ -0,0 +1,101 @@
+package sample.query.expression.evaluator;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class PredicateCompilerTests {
+
+    static final Map<String, Object> RECORD = new HashMap<>();
+
+    static {
+        RECORD.put("total_pv", 40);
+        RECORD.put("smartphone_pv", 60.5);
+        RECORD.put("twenties_feature", -5);
+        RECORD.put("name", "abc");
+        RECORD.put("male", true);
+        RECORD.put("kyoto_ub", 888);
+    }
+
+    @Parameters(name = "{index}: query [{0}] => expected [{1}]")
+    public static Iterable<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                // number
+                { "total_pv = 40", true },
+                { "total_pv != 40", false },
+                { "total_pv > 39.9", true },
+                { "total_pv >= 40", true },
+                { "total_pv < 40", false },
+                { "total_pv <= 40", true },
+                { "twenties_feature = -5", true },
+                { "40 < total_pv", false },
+                { "40 <= total_pv", true },
+                { "(total_pv) = 40", true },
+
+                // missing number
+                { "missing_pv = 0", false },
+                { "missing_pv != 0", true },
+                { "missing_pv > 0", false },
+                { "missing_pv <= 0", false },
+
+                // text
+                { "name = abc", true },
+                { "name != abc", false },
+                { "name > abb", true },
+                { "name < abb", false },
+                { "missing = abc", false },
+                { "missing != abc", true },
+                { "missing < abc", false },
+
+                // flag
+                { "male", true },
+                { "NOT (male)", false },
+                { "female", false },
+
+                // constant
+                { "3 = 3", true },
+                { "3 > 4", false },
+                { "1", true },
+                { "0", false },
+
+                // logical operators
+                { "total_pv != +33 AND smartphone_pv < 55", false },
+                { "total_pv != +33 OR smartphone_pv < 55", true },
+                { "NOT (total_pv != +33 OR smartphone_pv < 55)", false },
+                { "total_pv != +33 AND NOT (smartphone_pv < 55 OR twenties_feature >= -3.3)", true },
+                {
+                        "total_pv != +33 AND (smartphone_pv < 55 OR "
+                                + "(twenties_feature >= -3.3 AND kyusyu_feature <= 1.1)) "
+                                + "OR "
+                                + "(NOT (shiga_ub = 10 AND sizuoka_feature > 3.5) OR kyoto_ub != 888)",
+                        true
+                },
+        });
+    }
+
+    private String query;
+    private boolean expected;
+
+    public PredicateCompilerTests(String query, boolean expected) {
+        this.query = query;
+        this.expected = expected;
+    }
+
+    @Test
+    public void testCompile() {
+        val expr = QueryParser.parse(this.query);
+        val predicate = PredicateCompiler.compile(expr, FieldAccessor.ofMap());
+        assertEquals(this.expected, predicate.test(RECORD));
+    }
+}
@@ -0,0 +1,46 @@
+package sample.query.expression.evaluator;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+public class PredicateShortCircuitTests {
+
+    @Test
+    public void testShortCircuit() {
+        val reads = new AtomicInteger();
+        val accessor = new FieldAccessor<Map<String, ?>>() {
+
+            @Override
+            public double getDouble(Map<String, ?> record, String key) {
+                reads.incrementAndGet();
+                return FieldAccessor.ofMap().getDouble(record, key);
+            }
+
+            @Override
+            public String getText(Map<String, ?> record, String key) {
+                reads.incrementAndGet();
+                return FieldAccessor.ofMap().getText(record, key);
+            }
+        };
+
+        val and = PredicateCompiler.compile(QueryParser.parse("total_pv = 1 AND kyoto_ub = 888"), accessor);
+        assertFalse(and.test(PredicateCompilerTests.RECORD));
+        assertEquals(1, reads.getAndSet(0));
+
+        val or = PredicateCompiler.compile(QueryParser.parse("total_pv = 40 OR kyoto_ub = 1"), accessor);
+        assertTrue(or.test(PredicateCompilerTests.RECORD));
+        assertEquals(1, reads.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedComparison() {
+        PredicateCompiler.compile(QueryParser.parse("(total_pv = 40) = 1"), FieldAccessor.ofMap());
+    }
+}
@@ -0,0 +1,203 @@
+package sample.query.expression.index;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.evaluator.FieldAccessor;
+import sample.query.expression.evaluator.PredicateCompiler;
+import sample.query.expression.evaluator.PredicateCompilerTests;
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class FilterIndexTests {
+
+    private static final String[] KEYS = { "k", "a", "b", "total_pv", "name" };
+    private static final Object[] VALUES = { null, -1, 0, 1, 2, 3, 4.5, 40, Double.NaN, "abc", "x" };
+    private static final String[] OPS = { "=", "!=", ">", ">=", "<", "<=" };
+
+    // the seed of the random filters and records
+    @Parameters(name = "{index}: seed {0}")
+    public static Iterable<Object[]> data() {
+        val data = new ArrayList<Object[]>();
+        for (int seed = 0; seed < 10; seed++) {
+            data.add(new Object[] { seed });
+        }
+        return data;
+    }
+
+    private int seed;
+
+    public FilterIndexTests(int seed) {
+        this.seed = seed;
+    }
+
+    @Test
+    public void testMatch() {
+        val random = new Random(this.seed);
+        val index = new FilterIndex<Integer, Map<String, ?>>(FieldAccessor.ofMap());
+        val filters = new HashMap<Integer, Predicate<Map<String, ?>>>();
+        val queries = new ArrayList<String>();
+        for (val row : PredicateCompilerTests.data()) {
+            queries.add((String) row[0]);
+        }
+        for (int i = 0; i < 300; i++) {
+            queries.add(query(random, 3));
+        }
+        for (int id = 0; id < queries.size(); id++) {
+            val expr = QueryParser.parse(queries.get(id));
+            index.add(id, expr);
+            filters.put(id, PredicateCompiler.compile(expr, FieldAccessor.ofMap()));
+        }
+        // some filters are replaced and some are removed
+        for (int i = 0; i < 50; i++) {
+            val id = random.nextInt(queries.size());
+            if (random.nextBoolean()) {
+                index.remove(id);
+                filters.remove(id);
+            } else {
+                val expr = QueryParser.parse(query(random, 3));
+                index.add(id, expr);
+                filters.put(id, PredicateCompiler.compile(expr, FieldAccessor.ofMap()));
+            }
+        }
+        assertEquals(filters.size(), index.size());
+
+        for (int i = 0; i < 200; i++) {
+            val record = record(random);
+            val expected = new TreeSet<Integer>();
+            filters.forEach((id, filter) -> {
+                if (filter.test(record)) {
+                    expected.add(id);
+                }
+            });
+            val actual = index.match(record);
+            assertEquals(record.toString(), expected.size(), actual.size());
+            assertEquals(record.toString(), expected, new TreeSet<>(actual));
+        }
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        val index = new FilterIndex<Integer, Map<String, ?>>(FieldAccessor.ofMap());
+        // filters 0 .. 9 stay, 10 and above come and go
+        for (int id = 0; id < 10; id++) {
+            index.add(id, QueryParser.parse("k >= " + id));
+        }
+        val record = new HashMap<String, Object>();
+        record.put("k", 9);
+
+        val executor = Executors.newFixedThreadPool(2);
+        val done = new CountDownLatch(1);
+        try {
+            executor.submit(() -> {
+                val r = new Random(this.seed);
+                while (done.getCount() > 0) {
+                    val id = 10 + r.nextInt(100);
+                    if (r.nextBoolean()) {
+                        index.add(id, QueryParser.parse("k = " + r.nextInt(10)));
+                    } else {
+                        index.remove(id);
+                    }
+                }
+            });
+            val result = executor.submit(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    val ids = index.match(record);
+                    for (int id = 0; id < 10; id++) {
+                        assertTrue(ids.toString(), ids.contains(id));
+                    }
+                    assertEquals(ids.size(), new TreeSet<>(ids).size());
+                }
+                return null;
+            });
+            result.get();
+        } finally {
+            done.countDown();
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testAddRemoveSameLiteral() throws Exception {
+        // a filter added while another with the same bound is removed stays indexed
+        val index = new FilterIndex<Integer, Map<String, ?>>(FieldAccessor.ofMap());
+        val expr = QueryParser.parse("k > 5");
+        val record = new HashMap<String, Object>();
+        record.put("k", 9);
+
+        val barrier = new CyclicBarrier(2);
+        val executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 1_000; i++) {
+                val id = i;
+                index.add(-1, expr);
+                val removed = executor.submit(() -> {
+                    barrier.await();
+                    return index.remove(-1);
+                });
+                val added = executor.submit(() -> {
+                    barrier.await();
+                    index.add(id, expr);
+                    return null;
+                });
+                assertTrue(removed.get());
+                added.get();
+                assertEquals(Collections.singletonList(id), index.match(record));
+                assertTrue(index.remove(id));
+                assertEquals(Collections.emptyList(), index.match(record));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Map<String, Object> record(Random random) {
+        val record = new HashMap<String, Object>();
+        for (val key : KEYS) {
+            val value = VALUES[random.nextInt(VALUES.length)];
+            if (value != null) {
+                record.put(key, value);
+            }
+        }
+        if (random.nextBoolean()) {
+            record.put("male", random.nextBoolean());
+        }
+        return record;
+    }
+
+    // every comparison is bracketed, since spaces are dropped before parsing
+    private static String query(Random random, int depth) {
+        val choice = depth == 0 ? random.nextInt(3) : random.nextInt(6);
+        switch (choice) {
+        case 0:
+        case 1:
+            val key = KEYS[random.nextInt(KEYS.length)];
+            val op = OPS[random.nextInt(OPS.length)];
+            val value = random.nextInt(6) == 0 ? "abc" : String.valueOf(random.nextInt(6) - 1);
+            return "(" + key + " " + op + " " + value + ")";
+        case 2:
+            return random.nextBoolean() ? "(male)" : "NOT (" + query(random, 0) + ")";
+        default:
+            val logical = random.nextInt(3) == 0 ? " OR " : " AND ";
+            return "(" + query(random, depth - 1) + logical + query(random, depth - 1) + ")";
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package sample.query.expression.iterator;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.parser.QueryParser;
+import sample.query.expression.visitor.Node;
+import sample.query.expression.visitor.NodeVisitor;
+import sample.query.expression.visitor.NodeVisitor.NodeType;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class NodeCursorTests {
+
+    @Parameters(name = "{index}: query [{0}] => expected [{1}]")
+    public static Iterable<Object[]> data() {
+        return NodeIteratorTests.data();
+    }
+
+    private String query;
+    private List<Node> expected;
+
+    public NodeCursorTests(String query, List<Node> expected) {
+        this.query = query;
+        this.expected = expected;
+    }
+
+    @Test
+    public void testCursor() {
+        val cursor = new NodeCursor(QueryParser.parse(this.query));
+        for (val node : this.expected) {
+            assertTrue(cursor.advance());
+            assertEquals(node.getType(), cursor.type());
+            assertEquals(node.getDepth(), cursor.depth());
+            switch (node.getType()) {
+            case LONG:
+                assertEquals(node.getValue(), cursor.longValue());
+                assertEquals((Long) node.getValue(), cursor.doubleValue(), 0.0);
+                break;
+            case DOUBLE:
+                assertEquals((Double) node.getValue(), cursor.doubleValue(), 0.0);
+                break;
+            default:
+                assertEquals(node.getValue(), cursor.text());
+                break;
+            }
+            assertEquals(node, cursor.node());
+        }
+        assertFalse(cursor.advance());
+        assertNull(cursor.type());
+        assertFalse(cursor.advance());
+    }
+
+    @Test
+    public void testReset() {
+        val cursor = new NodeCursor(QueryParser.parse("((((k = 1))))"));
+        assertTrue(cursor.advance());
+        assertTrue(cursor.advance());
+        cursor.reset(QueryParser.parse(this.query));
+        assertNull(cursor.type());
+        val actual = new ArrayList<Node>();
+        while (cursor.advance()) {
+            actual.add(cursor.node());
+        }
+        assertEquals(this.expected, actual);
+    }
+
+    @Test
+    public void testWrongType() {
+        val cursor = new NodeCursor(QueryParser.parse(this.query));
+        try {
+            cursor.node();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("no node", e.getMessage());
+        }
+        while (cursor.advance()) {
+            if (cursor.type() != NodeType.LONG) {
+                try {
+                    cursor.longValue();
+                    fail();
+                } catch (IllegalStateException e) {
+                    assertEquals("not a LONG: " + cursor.type(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSharedVisitor() {
+        val visitor = new NodeVisitor();
+        val expr = QueryParser.parse(this.query);
+        val futures = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                    List<Node> nodes = null;
+                    for (int j = 0; j < 1000; j++) {
+                        nodes = visitor.visit(expr);
+                    }
+                    return nodes;
+                }))
+                .collect(Collectors.toList());
+        for (val future : futures) {
+            assertEquals(this.expected, future.join());
+        }
+    }
+
+    @Test
+    public void testNoAllocation() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        val threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        val expr = QueryParser.parse(this.query);
+        val cursor = new NodeCursor();
+        val thread = Thread.currentThread().getId();
+        long sum = walk(cursor.reset(expr));
+        val before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 1000; i++) {
+            sum += walk(cursor.reset(expr));
+        }
+        val allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue("allocated " + allocated, allocated < 1000);
+        assertTrue(sum != 0);
+    }
+
+    private static long walk(NodeCursor cursor) {
+        long sum = 0;
+        while (cursor.advance()) {
+            sum += cursor.depth() + cursor.type().ordinal();
+            if (cursor.type() == NodeType.DOUBLE || cursor.type() == NodeType.LONG) {
+                sum += (long) cursor.doubleValue();
+            } else {
+                sum += cursor.text().length();
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,45 @@
+package sample.query.expression.iterator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.visitor.NodeVisitor.NodeType;
+import lombok.val;
+
+public class NodeIteratorDepthTests {
+
+    // deeper than a recursive walk can go
+    static final int COMPARISONS = 200_000;
+
+    @Test
+    public void testLeftDeep() {
+        Expr expr = comparison(0);
+        for (int i = 1; i < COMPARISONS; i++) {
+            expr = Model.binaryOpExpr(expr, BinaryOp.OR, comparison(i));
+        }
+        assertEquals(COMPARISONS * 4 - 1, new NodeIterator(expr).stream().count());
+        assertEquals("key0", new NodeIterator(expr).stream().findFirst().get().getValue());
+    }
+
+    @Test
+    public void testNestedBrackets() {
+        Expr expr = comparison(0);
+        for (int i = 0; i < COMPARISONS; i++) {
+            expr = Model.bracketExpr(expr);
+        }
+        val first = new NodeIterator(expr).iterator().next();
+        assertEquals(NodeType.OPEN_BRACKET, first.getType());
+        assertEquals(1, first.getDepth());
+        assertEquals(COMPARISONS + 3, new NodeIterator(expr).stream()
+                .filter(node -> node.getType() != NodeType.CLOSE_BRACKET)
+                .count());
+    }
+
+    private static Expr comparison(int i) {
+        return Model.binaryOpExpr(Model.textExpr("key" + i), BinaryOp.EQUAL_TO, Model.doubleExpr(i));
+    }
+}
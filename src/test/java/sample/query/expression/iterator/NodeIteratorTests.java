@@ -170,4 +170,11 @@ public class NodeIteratorTests {
         val actual = StreamSupport.stream(spliterator, false).collect(toList());
         assertEquals(this.expected, actual);
     }
+
+    @Test
+    public void testStream() {
+        val expr = QueryParser.parse(this.query);
+        assertEquals(this.expected, new NodeIterator(expr).stream().collect(toList()));
+        assertEquals(this.expected.get(0), new NodeIterator(expr).stream().findFirst().get());
+    }
 }
@@ -0,0 +1,241 @@
+package sample.query.expression.json;
+
+import static java.nio.charset.StandardCharsets.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sample.query.expression.evaluator.FieldAccessor;
+import sample.query.expression.evaluator.PredicateCompiler;
+import sample.query.expression.parser.QueryParser;
+import sample.query.expression.parser.QueryParser.Engine;
+import lombok.val;
+
+public class JsonFilterStreamTests {
+
+    @Test
+    public void testFilter() throws IOException {
+        val filter = JsonFilter.compile(QueryParser.parse("(level = error) AND code >= 500"));
+        val in = "{\"level\": \"error\", \"code\": 503}\r\n"
+                + "\n"
+                + "{\"level\": \"info\", \"code\": 200}\n"
+                + "  {\"code\": 500, \"level\": \"error\", \"payload\": {\"x\": [1, 2]}}\n"
+                + "{\"level\": \"error\", \"code\": 404}";
+        val out = new ByteArrayOutputStream();
+        assertEquals(2, filter.filter(new ByteArrayInputStream(in.getBytes(UTF_8)), out));
+        assertEquals("{\"level\": \"error\", \"code\": 503}\n"
+                + "  {\"code\": 500, \"level\": \"error\", \"payload\": {\"x\": [1, 2]}}\n",
+                out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testLongLines() throws IOException {
+        val filter = JsonFilter.compile(QueryParser.parse("id > 2"));
+        val padding = new char[100_000];
+        Arrays.fill(padding, 'x');
+        val builder = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            builder.append("{\"pad\": \"").append(padding).append("\", \"id\": ").append(i).append("}\n");
+        }
+        val out = new ByteArrayOutputStream();
+        assertEquals(2, filter.filter(new ByteArrayInputStream(builder.toString().getBytes(UTF_8)), out));
+        assertTrue(out.toString("UTF-8").endsWith("\"id\": 4}\n"));
+    }
+
+    @Test
+    public void testLongChain() {
+        // deeper than a recursive compiler can go, and each field is read in time independent of the chain
+        val size = 50_000;
+        val query = new StringBuilder("k0 = 0");
+        val none = new StringBuilder("{\"k0\": -1");
+        for (int i = 1; i < size; i++) {
+            query.append(" OR k").append(i).append(" = ").append(i);
+            none.append(", \"k").append(i).append("\": -1");
+        }
+        val filter = JsonFilter.compile(QueryParser.parse(query.toString(), Engine.DESCENT));
+        assertEquals(size, filter.getKeys().size());
+        assertFalse(filter.test((none + "}").getBytes(UTF_8)));
+        val last = "\"k" + (size - 1) + "\": ";
+        assertTrue(filter.test((none.toString().replace(last + "-1", last + (size - 1)) + "}").getBytes(UTF_8)));
+        assertTrue(filter.test((none.toString().replace("\"k7\": -1", "\"k7\": 7") + "}").getBytes(UTF_8)));
+        assertFalse(filter.test("{}".getBytes(UTF_8)));
+
+        val nots = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            nots.append("NOT (");
+        }
+        nots.append("k = 1");
+        for (int i = 0; i < size; i++) {
+            nots.append(')');
+        }
+        val not = JsonFilter.compile(QueryParser.parse(nots.toString(), Engine.DESCENT));
+        assertTrue(not.test("{\"k\": 1}".getBytes(UTF_8)));
+        assertFalse(not.test("{\"k\": 2}".getBytes(UTF_8)));
+    }
+
+    @Test
+    public void testStopsWhenDecided() {
+        // the rest of the object is never read, so it may even be malformed
+        val and = JsonFilter.compile(QueryParser.parse("a = 1 AND b = 2"));
+        assertFalse(and.test("{\"a\": 0, \"b\": !!!".getBytes(UTF_8)));
+        val or = JsonFilter.compile(QueryParser.parse("a = 1 OR b = 2"));
+        assertTrue(or.test("{\"b\": 2, \"a\": !!!".getBytes(UTF_8)));
+        assertTrue(JsonFilter.compile(QueryParser.parse("1 = 1")).test("not json".getBytes(UTF_8)));
+    }
+
+    @Test
+    public void testMalformed() throws IOException {
+        val filter = JsonFilter.compile(QueryParser.parse("a = 1 AND b = 2"));
+        assertMalformed(filter, "{\"a\": 1, \"b\" 2}", "Malformed JSON at position 13, expected ':'");
+        assertMalformed(filter, "{\"a\": 1 \"b\": 2}", "Malformed JSON at position 8, expected ','");
+        assertMalformed(filter, "{\"a\": 01}", "Malformed JSON at position 6, expected a value");
+        assertMalformed(filter, "{\"a\": 1.}", "Malformed JSON at position 8, expected a digit");
+        assertMalformed(filter, "{\"a\": 1, \"x\": [1, 2", "Malformed JSON at position 19, expected more input");
+        assertMalformed(filter, "[1]", "Malformed JSON at position 0, expected '{'");
+        try {
+            filter.filter(new ByteArrayInputStream("{\"a\": 2}\n{\"a\": 1,\n".getBytes(UTF_8)),
+                    new ByteArrayOutputStream());
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("line 2: Malformed JSON at position 8, expected more input", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testStrings() {
+        val filter = JsonFilter.compile(QueryParser.parse("(name = abc) OR (flag) OR size = 3"));
+        assertEquals("[name, flag, size]", filter.getKeys().toString());
+        assertTrue(filter.test("{\"n\\u0061me\": \"\\u0061bc\"}".getBytes(UTF_8)));
+        assertTrue(filter.test("{\"flag\": \"TRUE\"}".getBytes(UTF_8)));
+        assertFalse(filter.test("{\"flag\": 1, \"name\": \"ab\\\"c\"}".getBytes(UTF_8)));
+        assertTrue(filter.test("{\"size\": 3.0e0}".getBytes(UTF_8)));
+        assertTrue(filter.test("{\"size\": 300E-2}".getBytes(UTF_8)));
+        assertFalse(filter.test("{\"size\": \"3\"}".getBytes(UTF_8)));
+        // the first of duplicate keys counts
+        assertFalse(filter.test("{\"size\": 4, \"size\": 3}".getBytes(UTF_8)));
+    }
+
+    @Test
+    public void testNumbers() {
+        val random = new Random(0);
+        val scanner = new JsonScanner();
+        for (int i = 0; i < 100_000; i++) {
+            val value = i % 3 == 0 ? random.nextInt() / 100.0
+                    : i % 3 == 1 ? random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20)
+                    : Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                continue;
+            }
+            val text = Double.toString(value);
+            scanner.reset(text.getBytes(UTF_8), 0, text.length());
+            assertEquals(JsonScanner.NUMBER, scanner.value());
+            assertEquals(text, Double.doubleToLongBits(value), Double.doubleToLongBits(scanner.number()));
+        }
+    }
+
+    // random records against the Map a JSON parser would make of them
+    @Test
+    public void testRandom() {
+        val random = new Random(0);
+        val keys = new String[] { "k0", "k1", "k2", "k3" };
+        for (int i = 0; i < 2000; i++) {
+            val query = query(random, keys, 3);
+            val filter = JsonFilter.compile(QueryParser.parse(query));
+            val predicate = PredicateCompiler.compile(QueryParser.parse(query), FieldAccessor.ofMap());
+            for (int j = 0; j < 20; j++) {
+                val record = new LinkedHashMap<String, Object>();
+                val json = new StringBuilder("{");
+                for (val key : keys) {
+                    val value = random.nextInt(7);
+                    if (value == 6) {
+                        continue;
+                    }
+                    json.append(json.length() > 1 ? ", " : "");
+                    if (random.nextInt(4) == 0) {
+                        // a nested value to skip, with the same key inside
+                        json.append("\"x").append(key).append("\": {\"").append(key).append("\": [1, \"2\"]}, ");
+                    }
+                    json.append('"').append(key).append("\": ");
+                    switch (value) {
+                    case 0:
+                        record.put(key, (long) random.nextInt(5));
+                        break;
+                    case 1:
+                        record.put(key, random.nextInt(5) + 0.5);
+                        break;
+                    case 2:
+                        record.put(key, "v" + random.nextInt(3));
+                        break;
+                    case 3:
+                        record.put(key, "t\"\\\u00e9" + random.nextInt(2));
+                        break;
+                    case 4:
+                        record.put(key, random.nextBoolean());
+                        break;
+                    default:
+                        record.put(key, null);
+                        break;
+                    }
+                    json.append(json(record.get(key)));
+                }
+                json.append('}');
+                assertEquals(query + " " + json, predicate.test(record), filter.test(json.toString().getBytes(UTF_8)));
+            }
+        }
+    }
+
+    private static String query(Random random, String[] keys, int depth) {
+        val key = keys[random.nextInt(keys.length)];
+        switch (depth == 0 ? random.nextInt(3) : random.nextInt(6)) {
+        case 0:
+            return key + " " + new String[] { "=", "!=", ">", ">=", "<", "<=" }[random.nextInt(6)] + " "
+                    + random.nextInt(5);
+        case 1:
+            // a text is bracketed, since the spaces around AND and OR are dropped
+            return "(" + key + " " + new String[] { "=", "!=", ">", "<" }[random.nextInt(4)] + " v" + random.nextInt(3)
+                    + ")";
+        case 2:
+            return "(" + key + ")";
+        case 3:
+            return "NOT (" + query(random, keys, depth - 1) + ")";
+        case 4:
+            return "(" + query(random, keys, depth - 1) + " AND " + query(random, keys, depth - 1) + ")";
+        default:
+            return "(" + query(random, keys, depth - 1) + " OR " + query(random, keys, depth - 1) + ")";
+        }
+    }
+
+    private static String json(Object value) {
+        if (!(value instanceof String)) {
+            return String.valueOf(value);
+        }
+        val builder = new StringBuilder("\"");
+        for (val c : ((String) value).toCharArray()) {
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c > 0x7f) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private static void assertMalformed(JsonFilter filter, String json, String message) {
+        try {
+            filter.test(json.getBytes(UTF_8));
+            fail(json);
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
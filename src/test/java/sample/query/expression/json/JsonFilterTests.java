@@ -0,0 +1,57 @@
+package sample.query.expression.json;
+
+import static java.nio.charset.StandardCharsets.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.evaluator.PredicateCompilerTests;
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class JsonFilterTests {
+
+    // the record of PredicateCompilerTests, with nested values to skip
+    static final String RECORD = "{\"tags\": [\"a\", {\"b\": [1, 2, {}]}, \"}\"], "
+            + "\"total_pv\": 40, \"smartphone_pv\": 60.5, \"twenties_feature\": -5, "
+            + "\"meta\": {\"name\": \"xyz\", \"male\": false}, "
+            + "\"name\": \"abc\", \"male\": true, \"kyoto_ub\": 888, \"note\": null}";
+
+    @Parameters(name = "{index}: query [{0}] => expected [{1}]")
+    public static Iterable<Object[]> data() {
+        return PredicateCompilerTests.data();
+    }
+
+    private String query;
+    private boolean expected;
+
+    public JsonFilterTests(String query, boolean expected) {
+        this.query = query;
+        this.expected = expected;
+    }
+
+    @Test
+    public void testFilter() {
+        val filter = JsonFilter.compile(QueryParser.parse(this.query));
+        assertEquals(this.expected, filter.test(RECORD.getBytes(UTF_8)));
+    }
+
+    @Test
+    public void testRange() {
+        val filter = JsonFilter.compile(QueryParser.parse(this.query));
+        val bytes = ("xx " + RECORD + " yy").getBytes(UTF_8);
+        assertEquals(this.expected, filter.test(bytes, 3, bytes.length - 3));
+    }
+
+    @Test
+    public void testKeysInAnyOrder() {
+        val filter = JsonFilter.compile(QueryParser.parse(this.query));
+        val reversed = "{\"note\": null, \"kyoto_ub\": 888, \"male\": true, \"name\": \"abc\", "
+                + "\"twenties_feature\": -5, \"smartphone_pv\": 60.5, \"total_pv\": 40}";
+        assertEquals(this.expected, filter.test(reversed.getBytes(UTF_8)));
+    }
+}
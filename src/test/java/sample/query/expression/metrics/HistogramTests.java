@@ -0,0 +1,69 @@
+package sample.query.expression.metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import lombok.val;
+
+public class HistogramTests {
+
+    @Test
+    public void testBuckets() {
+        for (val value : new long[] { 0, 1, 31, 32, 33, 63, 64, 100, 1000, 123456789, Long.MAX_VALUE }) {
+            val index = Histogram.index(value);
+            assertTrue(value + " >= " + Histogram.lowest(index), value >= Histogram.lowest(index));
+            assertTrue(value + " <= " + Histogram.highest(index), value <= Histogram.highest(index));
+        }
+        for (int index = 1; index < Histogram.index(Long.MAX_VALUE); index++) {
+            assertEquals(Histogram.highest(index - 1) + 1, Histogram.lowest(index));
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        val histogram = new Histogram();
+        assertEquals(0, histogram.percentile(99));
+        assertTrue(Double.isNaN(histogram.mean()));
+
+        val random = new Random(0);
+        val values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(1000000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, histogram.count());
+        assertEquals(values[values.length - 1], histogram.max());
+        assertEquals(Arrays.stream(values).average().getAsDouble(), histogram.mean(), 1e-6);
+        for (val percentile : new double[] { 1, 50, 90, 99, 99.9, 100 }) {
+            val expected = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+            val actual = histogram.percentile(percentile);
+            assertTrue(percentile + ": " + actual + " < " + expected, actual >= expected);
+            assertTrue(percentile + ": " + actual + " > " + expected, actual <= expected * 1.04);
+        }
+    }
+
+    @Test
+    public void testReset() {
+        val histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(7);
+        assertEquals(2, histogram.count());
+        assertEquals(0, histogram.percentile(50));
+        assertEquals(7, histogram.max());
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPercentileOutOfRange() {
+        new Histogram().percentile(101);
+    }
+}
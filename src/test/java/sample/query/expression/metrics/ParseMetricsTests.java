@@ -0,0 +1,121 @@
+package sample.query.expression.metrics;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.parser.ParseListener;
+import sample.query.expression.parser.QueryParser;
+import sample.query.expression.parser.QueryParser.Engine;
+import lombok.val;
+
+public class ParseMetricsTests {
+
+    @After
+    public void tearDown() {
+        QueryParser.setListener(null);
+    }
+
+    @Test
+    public void testParsed() {
+        val metrics = new ParseMetrics();
+        QueryParser.setListener(metrics);
+        // (, AND, =, key1, 1, (, NOT, =, key2, 2
+        QueryParser.parse("(key1 = 1 AND NOT (key2 = 2))");
+        QueryParser.parse("key1 = 1", Engine.DESCENT);
+        QueryParser.parse((CharSequence) "key1");
+
+        assertEquals(3, metrics.getParses());
+        assertEquals(0, metrics.getFailures());
+        assertEquals(3, metrics.getLatency().count());
+        assertEquals(10, metrics.getTreeSizeMax());
+        assertEquals(6, metrics.getTreeDepthMax());
+        assertEquals((10 + 3 + 1) / 3.0, metrics.getTreeSizeMean(), 0.0);
+        assertTrue(metrics.getLatencyP50Nanos() <= metrics.getLatencyMaxNanos());
+    }
+
+    @Test
+    public void testFailed() {
+        val metrics = new ParseMetrics();
+        QueryParser.setListener(metrics);
+        for (val query : new String[] { "key1 == val1", "key1 = ", "(key1 = 1", "key1 = 1 AND key2 ==== 2" }) {
+            for (val engine : Engine.values()) {
+                try {
+                    QueryParser.parse(query, engine);
+                    fail("expects RuntimeException occurred: " + query);
+                } catch (RuntimeException e) {
+                }
+            }
+        }
+        assertEquals(0, metrics.getParses());
+        assertEquals(4 * Engine.values().length, metrics.getFailures());
+        assertEquals(4 * Engine.values().length, metrics.getFailuresByPosition().values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(0, metrics.getTreeSizes().count());
+
+        metrics.reset();
+        assertEquals(0, metrics.getFailures());
+        assertEquals(new LinkedHashMap<>(), metrics.getFailuresByPosition());
+    }
+
+    @Test
+    public void testFailurePositions() {
+        val metrics = new ParseMetrics();
+        metrics.failed(Engine.DESCENT, 1, -1, new RuntimeException());
+        metrics.failed(Engine.DESCENT, 1, 0, new RuntimeException());
+        metrics.failed(Engine.DESCENT, 1, 5, new RuntimeException());
+        metrics.failed(Engine.DESCENT, 1, 7, new RuntimeException());
+        metrics.failed(Engine.DESCENT, 1, 8, new RuntimeException());
+        assertEquals("{unknown=1, 0=1, 4-7=2, 8-15=1}", metrics.getFailuresByPosition().toString());
+    }
+
+    @Test
+    public void testListener() {
+        val events = new ArrayList<String>();
+        QueryParser.setListener(new ParseListener() {
+
+            @Override
+            public void parsed(Engine engine, long nanos, Expr expr) {
+                events.add(engine + " " + expr);
+            }
+
+            @Override
+            public void failed(Engine engine, long nanos, int position, RuntimeException e) {
+                events.add(engine + " failed at " + position);
+            }
+        });
+        QueryParser.parse("key1 = 1");
+        try {
+            QueryParser.parse("key1 = (1", Engine.DESCENT);
+        } catch (RuntimeException e) {
+        }
+        QueryParser.setListener(null);
+        QueryParser.parse("key1 = 2");
+
+        assertEquals(2, events.size());
+        assertEquals("GRAMMAR key1 = 1.0", events.get(0));
+        assertTrue(events.get(1), events.get(1).matches("DESCENT failed at \\d+"));
+    }
+
+    @Test
+    public void testMXBean() throws Exception {
+        val metrics = new ParseMetrics();
+        QueryParser.setListener(metrics);
+        QueryParser.parse("key1 = 1");
+        val name = metrics.register("test");
+        try {
+            val server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "Parses"));
+            assertEquals(3L, server.getAttribute(name, "TreeSizeMax"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "Parses"));
+        } finally {
+            metrics.unregister(name);
+        }
+    }
+}
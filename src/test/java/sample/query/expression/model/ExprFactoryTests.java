@@ -0,0 +1,113 @@
+package sample.query.expression.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.model.Model.BinaryOp;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOp;
+import sample.query.expression.model.Model.UnaryOpExpr;
+import sample.query.expression.parser.QueryParser;
+import sample.query.expression.parser.QueryParserTests;
+import sample.query.expression.visitor.NodeVisitor;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class ExprFactoryTests {
+
+    private static final List<String> QUERIES = new ArrayList<>();
+
+    @Parameters(name = "{index}: query [{0}]")
+    public static Iterable<Object[]> data() {
+        val data = new ArrayList<Object[]>();
+        for (val row : QueryParserTests.data()) {
+            if (row[0].toString().equals("PARSE")) {
+                data.add(new Object[] { row[1] });
+                QUERIES.add((String) row[1]);
+            }
+        }
+        return data;
+    }
+
+    private String query;
+
+    public ExprFactoryTests(String query) {
+        this.query = query;
+    }
+
+    @Test
+    public void testEquals() {
+        val expr = QueryParser.parse(this.query);
+        val same = QueryParser.parse(this.query);
+        assertEquals(expr, same);
+        assertEquals(expr.hashCode(), same.hashCode());
+
+        // equal exactly when the nodes are, brackets included
+        val nodes = new NodeVisitor().visit(expr);
+        for (val query : QUERIES) {
+            val other = QueryParser.parse(query);
+            assertEquals(query, nodes.equals(new NodeVisitor().visit(other)), expr.equals(other));
+        }
+    }
+
+    @Test
+    public void testPlain() {
+        val expr = QueryParser.parse(this.query);
+        val rebuilt = ExprFactory.plain().rebuild(expr);
+        assertNotSame(expr, rebuilt);
+        assertEquals(expr, rebuilt);
+    }
+
+    @Test
+    public void testCanonical() {
+        val factory = ExprFactory.canonical();
+        val expr = factory.rebuild(QueryParser.parse(this.query));
+        assertEquals(QueryParser.parse(this.query), expr);
+        assertSame(expr, factory.rebuild(QueryParser.parse(this.query)));
+        assertEquals(new NodeVisitor().visit(QueryParser.parse(this.query)), new NodeVisitor().visit(expr));
+    }
+
+    @Test
+    public void testSharedSubtrees() {
+        val factory = ExprFactory.canonical();
+        val expr = (BinaryOpExpr) factory.rebuild(QueryParser.parse("(country = JP) AND (" + this.query + ")"));
+        val other = (BinaryOpExpr) factory.rebuild(QueryParser.parse("(country = JP) OR (" + this.query + ")"));
+        assertSame(expr.getLhs(), other.getLhs());
+
+        val text = (TextExpr) factory.textExpr(new String("country"));
+        assertSame(text, factory.textExpr(new String("country")));
+        assertSame(text.getText(), ((TextExpr) ((UnaryOpExpr) factory.unaryOpExpr(UnaryOp.NOT,
+                Model.textExpr(new String("country")))).getExpr()).getText());
+    }
+
+    @Test
+    public void testCanonicalChildren() {
+        // a tree made elsewhere is canonical all the way down, not only at the top
+        val factory = ExprFactory.canonical();
+        val expected = factory.rebuild(QueryParser.parse("(" + this.query + ")"));
+        val not = (UnaryOpExpr) factory.unaryOpExpr(UnaryOp.NOT, fresh());
+        assertSame(expected, lhs(((BracketExpr) not.getExpr()).getExpr()));
+        val and = (BinaryOpExpr) factory.binaryOpExpr(Model.textExpr("k"), BinaryOp.AND, fresh());
+        assertSame(expected, lhs(((BracketExpr) and.getRhs()).getExpr()));
+        val bracket = (BracketExpr) factory.bracketExpr(((BracketExpr) fresh()).getExpr());
+        assertSame(expected, lhs(bracket.getExpr()));
+    }
+
+    // the query in a tree which the factory has not made yet
+    private Expr fresh() {
+        return QueryParser.parse("((" + this.query + ") AND fresh_" + System.nanoTime() + ")");
+    }
+
+    private static Expr lhs(Expr expr) {
+        return ((BinaryOpExpr) expr).getLhs();
+    }
+}
@@ -0,0 +1,171 @@
+package sample.query.expression.optimizer;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.evaluator.FieldAccessor;
+import sample.query.expression.evaluator.PredicateCompiler;
+import sample.query.expression.evaluator.PredicateCompilerTests;
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class ExprOptimizerTests {
+
+    private static final String[] KEYS = { "k", "a", "b" };
+    private static final Object[] VALUES = { null, 0, 1, 2, 3, 4.5, 5, Double.NaN, "abc", "x" };
+
+    static final List<Map<String, Object>> RECORDS = new ArrayList<>();
+
+    static {
+        val random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            val record = new HashMap<String, Object>();
+            for (val key : KEYS) {
+                val value = VALUES[random.nextInt(VALUES.length)];
+                if (value != null) {
+                    record.put(key, value);
+                }
+            }
+            if (random.nextBoolean()) {
+                record.put("male", random.nextBoolean());
+            }
+            RECORDS.add(record);
+        }
+    }
+
+    @Parameters(name = "{index}: query [{0}] => expected [{1}]")
+    public static Iterable<Object[]> data() {
+        val data = new ArrayList<Object[]>(Arrays.asList(new Object[][] {
+                // brackets
+                { "((a = 1))", "a = 1.0" },
+                { "((a) = (1))", "a = 1.0" },
+
+                // not
+                { "NOT (a = 1)", "a != 1.0" },
+                { "NOT (a != abc)", "a = abc" },
+                { "NOT (a > 1)", "NOT a > 1.0" },
+                { "NOT (NOT (male))", "male" },
+                { "NOT (3 = 3)", "0.0" },
+
+                // constants
+                { "3 = 3", "1.0" },
+                { "1 < k", "k > 1.0" },
+                { "(a = 1) AND 3 = 4", "0.0" },
+                { "(a = 1) AND 3 = 3", "a = 1.0" },
+                { "(a = 1) OR 3 = 3", "1.0" },
+                { "(a = 1) OR 3 = 4", "a = 1.0" },
+
+                // duplicates
+                { "a = 1 AND a = 1", "a = 1.0" },
+                { "a = 1 AND b = 2 AND a = 1", "(a = 1.0 AND b = 2.0)" },
+                { "(a = 1 OR b = 2) OR (c = 3 OR a = 1)", "((a = 1.0 OR b = 2.0) OR c = 3.0)" },
+                { "(male) AND (male)", "male" },
+
+                // ranges
+                { "k >= 1 AND k <= 5 AND k >= 2 AND k < 5", "(k >= 2.0 AND k < 5.0)" },
+                { "k >= 1 AND k > 1", "k > 1.0" },
+                { "k >= 5 AND k <= 5", "k = 5.0" },
+                { "k > 5 AND k < 1", "0.0" },
+                { "k = 3 AND k >= 1 AND k < 5", "k = 3.0" },
+                { "k = 3 AND k = 4", "0.0" },
+                { "k = 3 AND k > 3", "0.0" },
+                { "(5 < k) AND a = 1 AND k < 10", "((k > 5.0 AND k < 10.0) AND a = 1.0)" },
+                { "k > 5 OR k > 3 OR k = 3", "k >= 3.0" },
+                { "k < 1 OR k = 0 OR k <= 1", "k <= 1.0" },
+                { "k = 7 OR k < 1", "(k = 7.0 OR k < 1.0)" },
+                { "k != 3 AND k != 3", "k != 3.0" },
+
+                // unsupported comparisons are kept
+                { "(total_pv = 40) = 1", "total_pv = 40.0 = 1.0" },
+        }));
+        for (val row : PredicateCompilerTests.data()) {
+            data.add(new Object[] { row[0], null });
+        }
+        val random = new Random(0);
+        for (int i = 0; i < 300; i++) {
+            data.add(new Object[] { query(random, 4), null });
+        }
+        return data;
+    }
+
+    private String query;
+    private String expected;
+
+    public ExprOptimizerTests(String query, String expected) {
+        this.query = query;
+        this.expected = expected;
+    }
+
+    @Test
+    public void testOptimize() {
+        if (this.expected == null) {
+            return;
+        }
+        assertEquals(this.expected, ExprOptimizer.optimize(QueryParser.parse(this.query)).toString());
+    }
+
+    @Test
+    public void testSameResults() {
+        val expr = QueryParser.parse(this.query);
+        val optimized = ExprOptimizer.optimize(expr);
+        Map<String, Object> record = null;
+        try {
+            val expected = PredicateCompiler.compile(expr, FieldAccessor.ofMap());
+            val actual = PredicateCompiler.compile(optimized, FieldAccessor.ofMap());
+            for (val r : RECORDS) {
+                record = r;
+                assertEquals(optimized + " " + r, expected.test(r), actual.test(r));
+            }
+        } catch (IllegalArgumentException e) {
+            assertNull(record);
+            try {
+                PredicateCompiler.compile(optimized, FieldAccessor.ofMap());
+                fail(optimized.toString());
+            } catch (IllegalArgumentException expected) {
+                // rejected both before and after
+            }
+        }
+    }
+
+    @Test
+    public void testIdempotent() {
+        val optimized = ExprOptimizer.optimize(QueryParser.parse(this.query));
+        assertEquals(optimized, ExprOptimizer.optimize(optimized));
+    }
+
+    // every comparison is bracketed, since spaces are dropped before parsing
+    private static String query(Random random, int depth) {
+        val choice = depth == 0 ? random.nextInt(3) : random.nextInt(7);
+        switch (choice) {
+        case 0:
+        case 1:
+            val key = KEYS[random.nextInt(KEYS.length)];
+            val op = new String[] { "=", "!=", ">", ">=", "<", "<=" }[random.nextInt(6)];
+            val value = random.nextInt(8) == 0 ? "abc" : String.valueOf(random.nextInt(7) - 1);
+            return random.nextInt(5) == 0 && !value.equals("abc")
+                    ? "(" + value + " " + op + " " + key + ")"
+                    : "(" + key + " " + op + " " + value + ")";
+        case 2:
+            return random.nextBoolean() ? "(male)" : "(" + random.nextInt(3) + " = 1)";
+        case 3:
+            return "NOT (" + query(random, depth - 1) + ")";
+        case 4:
+            return "(" + query(random, depth - 1) + ")";
+        default:
+            val logical = random.nextBoolean() ? " AND " : " OR ";
+            return query(random, depth - 1) + logical + query(random, depth - 1);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package sample.query.expression.parser;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.batch.BatchEvaluator;
+import sample.query.expression.batch.Bitmaps;
+import sample.query.expression.batch.ColumnBatch;
+import sample.query.expression.evaluator.AdaptivePredicate;
+import sample.query.expression.evaluator.BytecodeCompiler;
+import sample.query.expression.evaluator.FieldAccessor;
+import sample.query.expression.evaluator.PredicateCompiler;
+import sample.query.expression.index.FilterIndex;
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.ExprFactory;
+import sample.query.expression.optimizer.ExprOptimizer;
+import sample.query.expression.parser.QueryParser.Engine;
+import sample.query.expression.program.Program;
+import sample.query.expression.range.RangeExtractor;
+import sample.query.expression.visitor.NodeVisitor;
+import sample.query.expression.visitor.NodeVisitor.NodeType;
+import sample.query.expression.visitor.StrVisitor;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class DeepQueryTests {
+
+    // deeper than a recursive parser or walk can go
+    static final int SIZE = 50_000;
+
+    @Parameters(name = "{index}: {0}")
+    public static Iterable<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                { Engine.DESCENT },
+                { Engine.TOKENS },
+        });
+    }
+
+    private Engine engine;
+
+    public DeepQueryTests(Engine engine) {
+        this.engine = engine;
+    }
+
+    @Test
+    public void testLongChain() {
+        val query = chain(SIZE);
+        assertTrue(QueryParser.validate(query).isValid());
+        val expr = QueryParser.parse(query, this.engine);
+        val string = expr.toString();
+        assertTrue(string.contains("((k0 = 0.0 OR k1 = 1.0) OR k2 = 2.0) OR k3 = 3.0)"));
+        assertTrue(string.endsWith(") OR k" + (SIZE - 1) + " = " + (SIZE - 1) + ".0)"));
+        assertEquals(string, QueryParser.parse(string, this.engine).toString());
+        val other = QueryParser.parse(query, this.engine == Engine.DESCENT ? Engine.TOKENS : Engine.DESCENT);
+        assertEquals(other, expr);
+        assertEquals(other.hashCode(), expr.hashCode());
+        assertEquals(SIZE * 4 - 1, new NodeVisitor().visit(expr).size());
+        assertEquals(SIZE * 4 - 1, new StrVisitor().visit(expr).size());
+    }
+
+    @Test
+    public void testNestedBrackets() {
+        val query = brackets(SIZE);
+        assertTrue(QueryParser.validate(query).isValid());
+        val expr = QueryParser.parse(query, this.engine);
+        assertEquals("k = 1.0", expr.toString());
+        assertEquals(QueryParser.parse(query, this.engine), expr);
+
+        val nodes = new NodeVisitor().visit(expr);
+        assertEquals(SIZE * 2 + 3, nodes.size());
+        assertEquals(NodeType.OPEN_BRACKET, nodes.get(0).getType());
+        assertEquals(1, nodes.get(0).getDepth());
+        assertEquals(SIZE, nodes.get(SIZE + 1).getDepth());
+        assertEquals(SIZE, nodes.get(SIZE + 2).getDepth());
+        assertEquals(1, nodes.get(nodes.size() - 1).getDepth());
+        assertEquals("(", new StrVisitor().visit(expr).get(0));
+    }
+
+    @Test
+    public void testNestedNots() {
+        val expr = QueryParser.parse(nots(SIZE), this.engine);
+        assertEquals(SIZE * 3 + 3, new NodeVisitor().visit(expr).size());
+        assertTrue(expr.toString().startsWith("NOT NOT "));
+    }
+
+    @Test
+    public void testConsumers() {
+        val last = "k" + (SIZE - 1);
+        val previous = "k" + (SIZE - 2);
+        val records = Arrays.<Map<String, ?>>asList(
+                record(last, SIZE - 1.0, previous, SIZE - 2.0),
+                record(last, SIZE - 1.0),
+                record(),
+                record("k0", 0.0));
+
+        val chain = QueryParser.parse(chain(SIZE), this.engine);
+        consume(chain, records, true, true, false, true);
+        // a chain of one operator is one node of the adaptive predicate
+        val adaptive = AdaptivePredicate.compile(chain, FieldAccessor.ofMap(), 1, 2);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Arrays.asList(true, true, false, true),
+                    records.stream().map(adaptive::test).collect(Collectors.toList()));
+        }
+
+        // (((k0 = 0 AND k1 = 1) OR k2 = 2) AND k3 = 3) OR ... AND k49999 = 49999
+        consume(QueryParser.parse(mixed(SIZE), this.engine), records, true, false, false, false);
+        consume(QueryParser.parse(nots(SIZE), this.engine), Arrays.asList(record("k", 1.0), record()), true, false);
+    }
+
+    @Test
+    public void testLimits() {
+        val limits = new ParseLimits(1 << 20, 100, 1000);
+        assertEquals(QueryParser.parse(brackets(100), this.engine),
+                QueryParser.parse(brackets(100), this.engine, limits));
+        assertEquals(QueryParser.parse(chain(500), this.engine),
+                QueryParser.parse(chain(500), this.engine, limits));
+
+        val depth = limit(brackets(SIZE), limits);
+        assertEquals("depth", depth.getLimit());
+        assertEquals(100, depth.getMax());
+        // just after the bracket which passed the limit
+        assertEquals(101, depth.getPosition());
+
+        val terms = limit(chain(SIZE), limits);
+        assertEquals("terms", terms.getLimit());
+        assertEquals(1000, terms.getMax());
+
+        val length = limit(chain(SIZE), new ParseLimits(100, 100, 1000));
+        assertEquals("length", length.getLimit());
+        assertEquals(-1, length.getPosition());
+        assertEquals("Limit exceeded at position -1, length > 100", length.getMessage());
+    }
+
+    @Test
+    public void testLimitsSyntaxError() {
+        val limits = new ParseLimits(100, 10, 10);
+        try {
+            QueryParser.parse("k = 1 AND (k = 2", this.engine, limits);
+            fail();
+        } catch (ParseException e) {
+            assertEquals(QueryParser.validate("k = 1 AND (k = 2").getMessage(), e.getMessage());
+        }
+    }
+
+    private ParseLimitException limit(String query, ParseLimits limits) {
+        try {
+            QueryParser.parse(query, this.engine, limits);
+            fail();
+            return null;
+        } catch (ParseLimitException e) {
+            return e;
+        }
+    }
+
+    private static String chain(int size) {
+        val builder = new StringBuilder("k0 = 0");
+        for (int i = 1; i < size; i++) {
+            builder.append(" OR k").append(i).append(" = ").append(i);
+        }
+        return builder.toString();
+    }
+
+    // changes between AND and OR at every term
+    private static String mixed(int size) {
+        val builder = new StringBuilder("k0 = 0");
+        for (int i = 1; i < size; i++) {
+            builder.append(i % 2 == 1 ? " AND k" : " OR k").append(i).append(" = ").append(i);
+        }
+        return builder.toString();
+    }
+
+    private static String nots(int depth) {
+        val builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            builder.append("NOT (");
+        }
+        builder.append("k = 1");
+        for (int i = 0; i < depth; i++) {
+            builder.append(')');
+        }
+        return builder.toString();
+    }
+
+    // runs the tree through everything which walks one, which all have to take it without recursing
+    private static void consume(Expr expr, List<Map<String, ?>> records, boolean... expected) {
+        val accessor = FieldAccessor.ofMap();
+        val program = Program.compile(expr);
+        val predicates = Arrays.asList(
+                PredicateCompiler.compile(expr, accessor),
+                BytecodeCompiler.compile(expr, accessor),
+                PredicateCompiler.compile(ExprOptimizer.optimize(expr), accessor),
+                program.predicate(accessor));
+        val index = new FilterIndex<Integer, Map<String, ?>>(accessor);
+        index.add(1, expr);
+        val ranges = RangeExtractor.extract(expr);
+        val bitmap = BatchEvaluator.evaluate(expr, batch(records));
+        for (int i = 0; i < records.size(); i++) {
+            val record = records.get(i);
+            for (val predicate : predicates) {
+                assertEquals(expected[i], predicate.test(record));
+            }
+            assertEquals(expected[i] ? Collections.singletonList(1) : Collections.emptyList(), index.match(record));
+            assertTrue(!expected[i] || ranges.mayMatch(record, accessor));
+            assertEquals(expected[i], Bitmaps.get(bitmap, i));
+        }
+
+        assertEquals(expr, program.toExpr());
+        assertEquals(expr, ExprFactory.plain().rebuild(expr));
+        val canonical = ExprFactory.canonical().rebuild(expr);
+        assertEquals(expr, canonical);
+        assertSame(canonical, ExprFactory.canonical().rebuild(expr));
+    }
+
+    private static Map<String, ?> record(Object... entries) {
+        val record = new HashMap<String, Object>();
+        for (int i = 0; i < entries.length; i += 2) {
+            record.put((String) entries[i], entries[i + 1]);
+        }
+        return record;
+    }
+
+    private static ColumnBatch batch(List<Map<String, ?>> records) {
+        val batch = new ColumnBatch(records.size());
+        val keys = new HashSet<String>();
+        records.forEach(record -> keys.addAll(record.keySet()));
+        for (val key : keys) {
+            val values = new double[records.size()];
+            for (int i = 0; i < values.length; i++) {
+                val value = (Double) records.get(i).get(key);
+                values[i] = value == null ? Double.NaN : value;
+            }
+            batch.putNumbers(key, values);
+        }
+        return batch;
+    }
+
+    private static String brackets(int depth) {
+        val builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            builder.append('(');
+        }
+        builder.append("k = 1");
+        for (int i = 0; i < depth; i++) {
+            builder.append(')');
+        }
+        return builder.toString();
+    }
+}
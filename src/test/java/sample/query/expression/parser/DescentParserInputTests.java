@@ -0,0 +1,144 @@
+package sample.query.expression.parser;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.parser.QueryParser.Engine;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class DescentParserInputTests {
+
+    enum Input {
+        CHAR_SEQUENCE, CHAR_ARRAY, HEAP_BUFFER, DIRECT_BUFFER
+    };
+
+    // queries out of ASCII, for the positions and texts read from UTF-8
+    static final String[] QUERIES = {
+            "\u540D\u524D = \u5024",
+            "\u540D\u524D = \u5024 AND \u00FC > 1",
+            "\u540D\u524D = @",
+            "\u00DF = 1 AND \uD834\uDD1E = 1",
+            "NOT (\u00E9 != 2.5e3 OR ascii < 3)",
+            " abc ",
+            "total_pv = 1 2",
+            "total_pv = 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 . 5",
+    };
+
+    // exponents beyond the exact powers of ten, which the DESCENT and TOKENS engines read themselves
+    static final String[][] EXPONENTS = {
+            { "k = 1.00000000000001e300", "k = 1.00000000000001E300" },
+            { "k = 1e-300", "k = 1.0E-300" },
+            { "k = 12345e-320", "k = 1.2345E-316" },
+            { "k = 2.5e0000000000000000001", "k = 25.0" },
+            { "k = 1e400", "k = Infinity" },
+            { "k = 0e99999999999", "k = 0.0" },
+    };
+
+    @Parameters(name = "test-{index}: {0} query [{1}]")
+    public static Iterable<Object[]> data() {
+        val data = new ArrayList<Object[]>();
+        for (val input : Input.values()) {
+            for (val row : QueryParserTests.data()) {
+                data.add(new Object[] { input, row[1] });
+            }
+            for (val query : QUERIES) {
+                data.add(new Object[] { input, query });
+            }
+            for (val row : EXPONENTS) {
+                data.add(new Object[] { input, row[0] });
+            }
+        }
+        return data;
+    }
+
+    private Input input;
+    private String query;
+
+    public DescentParserInputTests(Input input, String query) {
+        this.input = input;
+        this.query = query;
+    }
+
+    @Test
+    public void testSameAsString() {
+        String expected;
+        try {
+            expected = QueryParser.parse(this.query, Engine.DESCENT).toString();
+        } catch (ParseException e) {
+            expected = e.getMessage();
+        }
+
+        String actual;
+        try {
+            actual = parse().toString();
+        } catch (ParseException e) {
+            actual = e.getMessage();
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testExponents() {
+        val expected = Arrays.stream(EXPONENTS).filter(row -> row[0].equals(this.query)).map(row -> row[1])
+                .findFirst();
+        Assume.assumeTrue(expected.isPresent());
+        assertEquals(expected.get(), parse().toString());
+        assertEquals(expected.get(), QueryParser.parse(this.query, Engine.TOKENS).toString());
+    }
+
+    @Test
+    public void testOutOfRange() {
+        Assume.assumeTrue(this.input == Input.CHAR_ARRAY);
+        val chars = this.query.toCharArray();
+        for (val range : new int[][] {
+                { -1, 1 }, { 0, -1 }, { 1, chars.length }, { 1, Integer.MAX_VALUE }, { Integer.MAX_VALUE, 1 } }) {
+            try {
+                QueryParser.parse(chars, range[0], range[1]);
+                fail();
+            } catch (IndexOutOfBoundsException e) {
+                assertEquals("offset=" + range[0] + ", length=" + range[1], e.getMessage());
+            }
+        }
+    }
+
+    // parses the query placed between other characters
+    private Expr parse() {
+        val padded = "((" + this.query + "))";
+        switch (this.input) {
+        case CHAR_SEQUENCE:
+            return QueryParser.parse(new StringBuilder(this.query));
+        case CHAR_ARRAY:
+            return QueryParser.parse(padded.toCharArray(), 2, this.query.length());
+        case HEAP_BUFFER:
+            return parse(ByteBuffer.wrap(padded.getBytes(StandardCharsets.UTF_8)));
+        case DIRECT_BUFFER:
+            val bytes = padded.getBytes(StandardCharsets.UTF_8);
+            return parse((ByteBuffer) ByteBuffer.allocateDirect(bytes.length).put(bytes).flip());
+        default:
+            throw new RuntimeException("unknown: " + this.input.toString());
+        }
+    }
+
+    private Expr parse(ByteBuffer buffer) {
+        val length = this.query.getBytes(StandardCharsets.UTF_8).length;
+        buffer.position(2).limit(2 + length);
+        try {
+            return QueryParser.parse(buffer);
+        } finally {
+            assertEquals(2, buffer.position());
+            assertEquals(2 + length, buffer.limit());
+        }
+    }
+}
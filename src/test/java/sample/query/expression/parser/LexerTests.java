@@ -0,0 +1,99 @@
+package sample.query.expression.parser;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class LexerTests {
+
+    @Parameters(name = "{index}: {0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+            { "key1 = 1", "TEXT key1, EQUAL_TO, NUMBER 1.0, EOF" },
+            { "key1 >= -2.5e1 AND key2 <3", "TEXT key1, GREATER_THAN_OR_EQUAL_TO, NUMBER -25.0, AND, TEXT key2, LESS_THAN, NUMBER 3.0, EOF" },
+            { "NOT (key1 != val1) OR (key2 > 0)", "NOT, LEFT_BRACKET, TEXT key1, NOT_EQUAL_TO, TEXT val1, RIGHT_BRACKET, OR, LEFT_BRACKET, TEXT key2, GREATER_THAN, NUMBER 0.0, RIGHT_BRACKET, EOF" },
+            // a text after an operator, an operator after a term
+            { "key1 = ANDROID", "TEXT key1, EQUAL_TO, TEXT ANDROID, EOF" },
+            { "key1 = val1 AND key2", "TEXT key1, EQUAL_TO, TEXT val1ANDkey2, EOF" },
+            { "1 2 AN D 3", "NUMBER 12.0, AND, NUMBER 3.0, EOF" },
+            // stops where no token starts
+            { "key1 = val1 (key2", "TEXT key1, EQUAL_TO, TEXT val1, ERROR" },
+            { "NOT key1", "NOT, ERROR" },
+            { "key1 = 1.x", "TEXT key1, EQUAL_TO, ERROR" },
+            { "", "EOF" },
+        });
+    }
+
+    private String query;
+    private String expected;
+
+    public LexerTests(String query, String expected) {
+        this.query = query;
+        this.expected = expected;
+    }
+
+    @Test
+    public void testTokenize() {
+        assertEquals(this.expected, Lexer.tokenize(this.query).toString());
+    }
+
+    @Test
+    public void testSpans() {
+        val tokens = Lexer.tokenize(this.query);
+        int end = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            assertTrue(end <= tokens.start(i));
+            assertTrue(tokens.start(i) <= tokens.end(i));
+            assertNotEquals(' ', i + 1 < tokens.size() && tokens.start(i) < this.query.length()
+                    ? this.query.charAt(tokens.start(i)) : 'x');
+            end = tokens.end(i);
+        }
+        val last = tokens.kind(tokens.size() - 1);
+        assertTrue(last == Tokens.EOF || last == Tokens.ERROR);
+    }
+
+    @Test
+    public void testParse() {
+        assertSameResult(this.query);
+    }
+
+    @Test
+    public void testRandom() {
+        val random = new Random(this.query.hashCode());
+        val pieces = new String[] { " ", "AND", "OR", "NOT", "(", ")", "=", "!", "!=", ">", ">=", "<", "<=",
+                "0", "1", "12", ".", "5", "e", "E", "-", "+", "k", "v", "A", "N", "O", "_", "#", "*" };
+        for (int i = 0; i < 300; i++) {
+            val sb = new StringBuilder(this.query);
+            for (int edits = random.nextInt(4); edits >= 0; edits--) {
+                sb.insert(random.nextInt(sb.length() + 1), pieces[random.nextInt(pieces.length)]);
+            }
+            assertSameResult(sb.toString());
+        }
+    }
+
+    private static void assertSameResult(String query) {
+        String expected;
+        try {
+            expected = DescentParser.parse(query).toString();
+        } catch (ParseException e) {
+            expected = e.getMessage();
+        }
+        String actual;
+        try {
+            actual = TokenParser.parse(query).toString();
+        } catch (ParseException e) {
+            actual = e.getMessage();
+        }
+        assertEquals(query, expected, actual);
+    }
+}
@@ -0,0 +1,156 @@
+package sample.query.expression.parser;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import sample.query.expression.model.Expr;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import lombok.val;
+
+public class ParsedQueryTests {
+
+    private static final String[] PIECES = {
+            " ", " ", "AND", " AND ", " OR ", "(", ")", "NOT", "=", "!=", ">", ">=", "<", "1", "0", "2.5", "-", "e",
+            "k", "v", "A", "O", "D", "N", "R", ".",
+    };
+
+    @Test
+    public void testEdit() {
+        val parsed = ParsedQuery.parse("key1 = 1 AND key2 = 2 OR (key3 = 3)");
+        assertEquals(3, parsed.size());
+
+        val edited = parsed.edit(20, 1, "22");
+        assertEquals("key1 = 1 AND key2 = 22 OR (key3 = 3)", edited.getQuery());
+        assertEquals("((key1 = 1.0 AND key2 = 22.0) OR key3 = 3.0)", edited.getExpr().toString());
+
+        // a new operand in the middle
+        val inserted = edited.edit(22, 0, " AND key4 != 4");
+        assertEquals(4, inserted.size());
+        assertEquals(DescentParser.parse(inserted.getQuery()), inserted.getExpr());
+
+        // the operator between two operands
+        val replaced = inserted.edit(9, 3, "OR");
+        assertEquals("key1 = 1 OR key2 = 22 AND key4 != 4 OR (key3 = 3)", replaced.getQuery());
+        assertEquals(DescentParser.parse(replaced.getQuery()), replaced.getExpr());
+    }
+
+    @Test
+    public void testReuse() {
+        val sb = new StringBuilder("k0 = 0");
+        for (int i = 1; i < 200; i++) {
+            sb.append(" AND k").append(i).append(" = ").append(i);
+        }
+        val parsed = ParsedQuery.parse(sb.toString());
+        val query = parsed.getQuery();
+
+        // the left hand side before the last operand is the same tree
+        val last = parsed.edit(query.length(), 0, "9");
+        assertEquals(200, last.size());
+        assertSame(lhs(parsed.getExpr()), lhs(last.getExpr()));
+        assertEquals("k199 = 1999.0", ((BinaryOpExpr) last.getExpr()).getRhs().toString());
+
+        // and the operands after an edit in the middle are the same trees
+        val middle = parsed.edit(query.indexOf("k100 = 100") + 9, 1, "");
+        assertEquals(DescentParser.parse(middle.getQuery()), middle.getExpr());
+        assertSame(((BinaryOpExpr) parsed.getExpr()).getRhs(), ((BinaryOpExpr) middle.getExpr()).getRhs());
+    }
+
+    @Test
+    public void testFallback() {
+        val parsed = ParsedQuery.parse("key1 = 1 AND key2 = 2 AND key3 = 3");
+
+        // a text runs into the operator after it
+        val merged = parsed.edit(20, 1, "v");
+        assertEquals(2, merged.size());
+        assertEquals("(key1 = 1.0 AND key2 = vANDkey3 = 3.0)", merged.getExpr().toString());
+        assertEquals(DescentParser.parse(merged.getQuery()), merged.getExpr());
+
+        // and is split again
+        val split = merged.edit(20, 1, "2");
+        assertEquals(3, split.size());
+        assertEquals(parsed.getExpr(), split.getExpr());
+    }
+
+    @Test
+    public void testFailure() {
+        val parsed = ParsedQuery.parse("key1 = 1 AND key2 = 2");
+        try {
+            parsed.edit(19, 0, "=");
+            fail("expects ParseException occurred");
+        } catch (ParseException e) {
+            assertEquals(exception("key1 = 1 AND key2 == 2").getMessage(), e.getMessage());
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfRange() {
+        ParsedQuery.parse("key1 = 1").edit(5, 4, "");
+    }
+
+    @Test
+    public void testRandomEdits() {
+        val random = new Random(0);
+        for (int round = 0; round < 300; round++) {
+            ParsedQuery parsed = ParsedQuery.parse(query(random));
+            for (int step = 0; step < 20; step++) {
+                val query = parsed.getQuery();
+                val offset = random.nextInt(query.length() + 1);
+                val removed = random.nextInt(4) == 0 ? random.nextInt(Math.min(query.length() - offset, 6) + 1) : 0;
+                val inserted = random.nextInt(4) == 0 ? "" : PIECES[random.nextInt(PIECES.length)];
+                val edited = query.substring(0, offset) + inserted + query.substring(offset + removed);
+                val message = query + " -> " + edited;
+
+                val expected = exception(edited);
+                try {
+                    val actual = parsed.edit(offset, removed, inserted);
+                    assertNull(message, expected);
+                    val expr = DescentParser.parse(edited);
+                    assertEquals(message, expr, actual.getExpr());
+                    assertEquals(message, expr.toString(), actual.getExpr().toString());
+                    parsed = actual;
+                } catch (ParseException e) {
+                    assertNotNull(message, expected);
+                    assertEquals(message, expected.getMessage(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static String query(Random random) {
+        val sb = new StringBuilder();
+        val size = 1 + random.nextInt(12);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(random.nextBoolean() ? " AND " : " OR ");
+            }
+            switch (random.nextInt(3)) {
+            case 0:
+                sb.append("k").append(i).append(" >= ").append(random.nextInt(100));
+                break;
+            case 1:
+                sb.append("(k").append(i).append(" = v").append(random.nextInt(10)).append(")");
+                break;
+            default:
+                sb.append("NOT (k").append(i).append(" = 1 OR k").append(i).append(" < 2.5)");
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Expr lhs(Expr expr) {
+        return ((BinaryOpExpr) expr).getLhs();
+    }
+
+    private static ParseException exception(String query) {
+        try {
+            DescentParser.parse(query);
+            return null;
+        } catch (ParseException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package sample.query.expression.parser;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import sample.query.expression.model.Expr;
+import lombok.val;
+
+public class QueryCacheTests {
+
+    @Test
+    public void testHit() {
+        val cache = new QueryCache(10);
+        val first = cache.parse("key1 >= 3.3 AND key2 <= 5");
+        val second = cache.parse("key1 >= 3.3 AND key2 <= 5");
+        assertSame(first, second);
+        assertEquals("(key1 >= 3.3 AND key2 <= 5.0)", second.toString());
+
+        val stats = cache.stats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(0.5, stats.hitRate(), 0.0);
+    }
+
+    @Test
+    public void testEviction() {
+        val cache = new QueryCache(2);
+        for (int i = 0; i < 5; i++) {
+            cache.parse("key" + i + " = " + i);
+        }
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    public void testFailureIsNotCached() {
+        val cache = new QueryCache(10);
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.parse("key1 == val1");
+                fail("expects RuntimeException occurred");
+            } catch (RuntimeException e) {
+                assertEquals("Failure at position 5, expected=0 \" # $ ' ( + , - N ? _ <nonZeroDigit> <letterOrDigit>",
+                        e.getMessage());
+            }
+        }
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.stats().getFailureCount());
+    }
+
+    @Test
+    public void testSingleLoadOnConcurrentMiss() throws Exception {
+        val cache = new QueryCache(10, QueryParser.Engine.DESCENT);
+        val threads = 8;
+        val executor = Executors.newFixedThreadPool(threads);
+        try {
+            val start = new CountDownLatch(1);
+            val futures = new ArrayList<Future<Expr>>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cache.parse("(key1 >= 3.3 AND key2 <= 5) OR key3 != 9.9");
+                }));
+            }
+            start.countDown();
+            val expected = futures.get(0).get();
+            for (val future : futures) {
+                assertSame(expected, future.get());
+            }
+            assertEquals(1, cache.stats().getLoadCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
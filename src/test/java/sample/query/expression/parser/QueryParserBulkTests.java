@@ -0,0 +1,103 @@
+package sample.query.expression.parser;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.parser.QueryParser.Engine;
+import sample.query.expression.parser.QueryParserTests.Type;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class QueryParserBulkTests {
+
+    @Parameters(name = "{index}: {0}")
+    public static Iterable<Object[]> data() {
+        val data = new ArrayList<Object[]>();
+        for (val engine : Engine.values()) {
+            data.add(new Object[] { engine });
+        }
+        return data;
+    }
+
+    private Engine engine;
+
+    public QueryParserBulkTests(Engine engine) {
+        this.engine = engine;
+    }
+
+    @Test
+    public void testParseAll() throws Exception {
+        // without the blank queries, which parseAll skips
+        val rows = new ArrayList<Object[]>();
+        for (val row : QueryParserTests.data()) {
+            if (!((String) row[1]).trim().isEmpty()) {
+                rows.add(row);
+            }
+        }
+        // many times the chunk size, so that the lines are split across tasks
+        val lines = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            for (val row : rows) {
+                lines.add((String) row[1]);
+            }
+        }
+        val path = Files.createTempFile("queries", ".txt");
+        val executor = Executors.newFixedThreadPool(4);
+        try {
+            Files.write(path, lines, StandardCharsets.UTF_8);
+            val results = QueryParser.parseAll(path, this.engine, executor);
+            assertEquals(lines.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                val row = rows.get(i % rows.size());
+                val result = results.get(i);
+                assertEquals(i + 1, result.getLine());
+                assertEquals(row[1], result.getQuery());
+                if (row[0] == Type.PARSE) {
+                    assertTrue(result.isSuccess());
+                    assertEquals(row[2], result.getExpr().toString());
+                    assertEquals(-1, result.getPosition());
+                } else {
+                    assertFalse(result.isSuccess());
+                    assertEquals(row[2], result.getMessage());
+                    assertTrue(result.getMessage(), result.getMessage().startsWith(
+                            "Failure at position " + result.getPosition() + ","));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testBlankLines() {
+        val lines = Arrays.asList("a = 1", "", "  ", "b >", "c = 2");
+        val results = QueryParser.parseAll(lines.stream(), this.engine, Runnable::run);
+        assertEquals(Arrays.asList(1, 4, 5), results.stream().map(ParseResult::getLine).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(true, false, true),
+                results.stream().map(ParseResult::isSuccess).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testDefaultPool() {
+        List<String> lines = IntStream.range(0, 3000).mapToObj(i -> "key" + i + " = " + i)
+                .collect(Collectors.toList());
+        val results = QueryParser.parseAll(lines.stream());
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals("key" + i + " = " + (double) i, results.get(i).getExpr().toString());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package sample.query.expression.parser;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.parser.QueryParser.Engine;
+import sample.query.expression.parser.QueryParserTests.Type;
+import sample.query.expression.visitor.NodeVisitor;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class QueryParserConformanceTests {
+
+    @Parameters(name = "test-{index}: {0} {1} query [{2}] => expected [{3}]")
+    public static Iterable<Object[]> data() {
+        val data = new ArrayList<Object[]>();
+        for (val engine : Engine.values()) {
+            for (val row : QueryParserTests.data()) {
+                data.add(new Object[] { engine, row[0], row[1], row[2] });
+            }
+        }
+        return data;
+    }
+
+    private Engine engine;
+    private Type type;
+    private String query;
+    private String expected;
+
+    public QueryParserConformanceTests(Engine engine, Type type, String query, String expected) {
+        this.engine = engine;
+        this.type = type;
+        this.query = query;
+        this.expected = expected;
+    }
+
+    @Test
+    public void testParse() {
+        Assume.assumeTrue(this.type == Type.PARSE);
+        val actual = QueryParser.parse(this.query, this.engine).toString();
+        assertEquals(this.expected, actual);
+    }
+
+    @Test
+    public void testParseError() {
+        Assume.assumeTrue(this.type == Type.EXCEPTION);
+        try {
+            val actual = QueryParser.parse(this.query, this.engine).toString();
+            assert false : "expects RuntimeException occurred, but no error: " + actual;
+        } catch (RuntimeException e) {
+            assertEquals(this.expected, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSameTree() {
+        Assume.assumeTrue(this.type == Type.PARSE);
+        val reference = QueryParser.parse(this.query, Engine.GRAMMAR);
+        val actual = QueryParser.parse(this.query, this.engine);
+        assertEquals(reference.toString(), actual.toString());
+        assertEquals(new NodeVisitor().visit(reference), new NodeVisitor().visit(actual));
+    }
+}
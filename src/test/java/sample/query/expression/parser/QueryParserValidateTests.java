@@ -0,0 +1,85 @@
+package sample.query.expression.parser;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.parser.QueryParserTests.Type;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class QueryParserValidateTests {
+
+    @Parameters(name = "test-{index}: {0} query [{1}] => expected [{2}]")
+    public static Iterable<Object[]> data() {
+        return QueryParserTests.data();
+    }
+
+    private Type type;
+    private String query;
+    private String expected;
+
+    public QueryParserValidateTests(Type type, String query, String expected) {
+        this.type = type;
+        this.query = query;
+        this.expected = expected;
+    }
+
+    @Test
+    public void testValidate() {
+        val validation = QueryParser.validate(this.query);
+        if (this.type == Type.PARSE) {
+            assertTrue(validation.isValid());
+            assertNull(validation.getMessage());
+        } else {
+            assertFalse(validation.isValid());
+            assertEquals(this.expected, validation.getMessage());
+            assertEquals(this.expected, validation.toException().getMessage());
+        }
+    }
+
+    @Test
+    public void testRandom() {
+        val random = new Random(this.query.hashCode());
+        val pieces = new String[] { " ", "AND", "OR", "NOT", "(", ")", "=", "!", "!=", ">", ">=", "<", "<=",
+                "0", "1", "12", ".", "5", "e", "E", "-", "+", "k", "v", "A", "N", "O", "_", "#", "*" };
+        for (int i = 0; i < 100; i++) {
+            val sb = new StringBuilder(this.query);
+            for (int edits = random.nextInt(4); edits >= 0; edits--) {
+                sb.insert(random.nextInt(sb.length() + 1), pieces[random.nextInt(pieces.length)]);
+            }
+            val query = sb.toString();
+            String expected = null;
+            try {
+                DescentParser.parse(query);
+            } catch (ParseException e) {
+                expected = e.getMessage();
+            }
+            assertEquals(query, expected, QueryParser.validate(query).getMessage());
+        }
+    }
+
+    @Test
+    public void testNoAllocation() {
+        Assume.assumeTrue(this.type == Type.PARSE);
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        val threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        val thread = Thread.currentThread().getId();
+        QueryParser.validate(this.query);
+        val before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(QueryParser.validate(this.query).isValid());
+        }
+        val allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue("allocated " + allocated, allocated < 1000);
+    }
+}
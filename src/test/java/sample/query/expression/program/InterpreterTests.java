@@ -0,0 +1,146 @@
+package sample.query.expression.program;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import sample.query.expression.evaluator.FieldAccessor;
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+public class InterpreterTests {
+
+    @Test
+    public void testShortCircuit() {
+        val reads = new ArrayList<String>();
+        val program = Program.compile(QueryParser.parse("a = 1 AND b = 2 OR c = 3"));
+        val predicate = program.predicate(counting(reads));
+
+        val record = new HashMap<String, Object>();
+        record.put("a", 0);
+        record.put("c", 3);
+        assertTrue(predicate.test(record));
+        assertEquals("[a, c]", reads.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedComparison() {
+        Program.compile(QueryParser.parse("(total_pv = 40) = 1")).predicate(FieldAccessor.ofMap());
+    }
+
+    @Test
+    public void testPools() {
+        val program = Program.compile(QueryParser.parse("key1 = 3 AND key1 != 3.5 AND key2 = 3 AND key1 = abc"));
+        assertEquals(2, program.numbers.length);
+        assertEquals(3, program.texts.length);
+
+        // texts are shared between programs
+        val other = Program.compile(QueryParser.parse("key1 = 1"));
+        assertSame(program.texts[0], other.texts[0]);
+    }
+
+    @Test
+    public void testSharedPredicate() {
+        val predicate = Program.compile(QueryParser.parse("a = 1 AND (b = 2 OR NOT (c = 3 AND d = 4))"))
+                .predicate(FieldAccessor.ofMap());
+        val futures = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                    int count = 0;
+                    for (int j = 0; j < 10_000; j++) {
+                        val record = new HashMap<String, Object>();
+                        record.put("a", 1);
+                        record.put("b", j % 2 == 0 ? 2 : 0);
+                        record.put("c", 3);
+                        record.put("d", j % 3 == 0 ? 4 : 0);
+                        count += predicate.test(record) ? 1 : 0;
+                    }
+                    return count;
+                }))
+                .collect(Collectors.toList());
+        // all but the odd multiples of 3
+        for (val future : futures) {
+            assertEquals(10_000 - 1667, (int) future.join());
+        }
+    }
+
+    @Test
+    public void testStackGrows() {
+        val shallow = Program.compile(QueryParser.parse("a = 1")).predicate(FieldAccessor.ofMap());
+        val deep = Program.compile(QueryParser.parse(nested(100))).predicate(FieldAccessor.ofMap());
+        val record = new HashMap<String, Object>();
+        record.put("a", 1);
+        record.put("k", 1);
+        assertTrue(shallow.test(record));
+        assertTrue(deep.test(record));
+        assertTrue(shallow.test(record));
+        record.put("k", 0);
+        assertFalse(deep.test(record));
+    }
+
+    @Test
+    public void testNestedRun() {
+        // the accessor runs another program while the outer one is halfway through its stack
+        val inner = Program.compile(QueryParser.parse(nested(100))).predicate(FieldAccessor.ofMap());
+        val accessor = FieldAccessor.ofMap();
+        val outer = Program.compile(QueryParser.parse("a = 1 AND (b = 1 AND (x = 1 AND c = 1))"))
+                .predicate(new FieldAccessor<Map<String, ?>>() {
+
+                    @Override
+                    public double getDouble(Map<String, ?> record, String key) {
+                        return key.equals("x") ? (inner.test(record) ? 1 : 0) : accessor.getDouble(record, key);
+                    }
+
+                    @Override
+                    public String getText(Map<String, ?> record, String key) {
+                        return accessor.getText(record, key);
+                    }
+                });
+        val record = new HashMap<String, Object>();
+        record.put("a", 1);
+        record.put("b", 1);
+        record.put("c", 1);
+        record.put("k", 1);
+        assertTrue(outer.test(record));
+        record.put("k", 0);
+        assertFalse(outer.test(record));
+    }
+
+    // k = 1 AND (k = 1 AND (...)), whose right hand sides stay on the stack
+    private static String nested(int depth) {
+        val builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            builder.append("k = 1 AND (");
+        }
+        builder.append("k = 1");
+        for (int i = 0; i < depth; i++) {
+            builder.append(')');
+        }
+        return builder.toString();
+    }
+
+    private static FieldAccessor<Map<String, ?>> counting(List<String> reads) {
+        val accessor = FieldAccessor.ofMap();
+        return new FieldAccessor<Map<String, ?>>() {
+
+            @Override
+            public double getDouble(Map<String, ?> record, String key) {
+                reads.add(key);
+                return accessor.getDouble(record, key);
+            }
+
+            @Override
+            public String getText(Map<String, ?> record, String key) {
+                reads.add(key);
+                return accessor.getText(record, key);
+            }
+        };
+    }
+}
@@ -0,0 +1,86 @@
+package sample.query.expression.program;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.evaluator.FieldAccessor;
+import sample.query.expression.evaluator.PredicateCompiler;
+import sample.query.expression.evaluator.PredicateCompilerTests;
+import sample.query.expression.parser.QueryParser;
+import sample.query.expression.parser.QueryParserTests;
+import sample.query.expression.visitor.NodeVisitor;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class ProgramTests {
+
+    static final List<Map<String, Object>> RECORDS = Arrays.asList(
+            record("total_pv", 40, "smartphone_pv", 60.5, "twenties_feature", -5, "name", "abc", "male", true,
+                    "kyoto_ub", 888),
+            record(),
+            record("total_pv", 33, "smartphone_pv", 54.9, "twenties_feature", -3.3, "name", "abb", "male", "false"),
+            record("smartphone_pv", 55, "kyusyu_feature", 1.1, "shiga_ub", 10, "sizuoka_feature", 3.6,
+                    "kyoto_ub", 887));
+
+    // the queries which parse, from both the parser and the evaluator tests
+    @Parameters(name = "{index}: query [{0}]")
+    public static Iterable<Object[]> data() {
+        val data = new ArrayList<Object[]>();
+        for (val row : QueryParserTests.data()) {
+            if (row[0].toString().equals("PARSE")) {
+                data.add(new Object[] { row[1], false });
+            }
+        }
+        for (val row : PredicateCompilerTests.data()) {
+            data.add(new Object[] { row[0], true });
+        }
+        return data;
+    }
+
+    private String query;
+    private boolean evaluable;
+
+    public ProgramTests(String query, boolean evaluable) {
+        this.query = query;
+        this.evaluable = evaluable;
+    }
+
+    @Test
+    public void testToExpr() {
+        val expr = QueryParser.parse(this.query);
+        val actual = Program.compile(expr).toExpr();
+        assertEquals(expr.toString(), actual.toString());
+        assertEquals(new NodeVisitor().visit(expr), new NodeVisitor().visit(actual));
+    }
+
+    @Test
+    public void testPredicate() {
+        if (!this.evaluable) {
+            return;
+        }
+        val expr = QueryParser.parse(this.query);
+        val expected = PredicateCompiler.compile(expr, FieldAccessor.ofMap());
+        val actual = Program.compile(expr).predicate(FieldAccessor.ofMap());
+        for (val record : RECORDS) {
+            assertEquals(record.toString(), expected.test(record), actual.test(record));
+        }
+    }
+
+    private static Map<String, Object> record(Object... entries) {
+        val record = new HashMap<String, Object>();
+        for (int i = 0; i < entries.length; i += 2) {
+            record.put((String) entries[i], entries[i + 1]);
+        }
+        return record;
+    }
+}
@@ -0,0 +1,166 @@
+package sample.query.expression.range;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import sample.query.expression.evaluator.FieldAccessor;
+import sample.query.expression.evaluator.PredicateCompiler;
+import sample.query.expression.evaluator.PredicateCompilerTests;
+import sample.query.expression.parser.QueryParser;
+import lombok.val;
+
+@RunWith(Parameterized.class)
+public class RangeExtractorTests {
+
+    private static final String[] KEYS = { "k", "a", "b" };
+    private static final Object[] VALUES = { null, -1, 0, 1, 2, 3, 4.5, 5, Double.NaN, "abc", "x" };
+
+    static final List<Map<String, Object>> RECORDS = new ArrayList<>();
+
+    static {
+        val random = new Random(2);
+        for (int i = 0; i < 300; i++) {
+            val record = new HashMap<String, Object>();
+            for (val key : KEYS) {
+                val value = VALUES[random.nextInt(VALUES.length)];
+                if (value != null) {
+                    record.put(key, value);
+                }
+            }
+            if (random.nextBoolean()) {
+                record.put("male", random.nextBoolean());
+            }
+            RECORDS.add(record);
+        }
+    }
+
+    @Parameters(name = "{index}: query [{0}] => expected [{1}]")
+    public static Iterable<Object[]> data() {
+        val data = new ArrayList<Object[]>(Arrays.asList(new Object[][] {
+                // numbers
+                { "k = 3", "k: numbers=[3.0, 3.0]" },
+                { "k != 3", "k: numbers=[-Infinity, 3.0) | (3.0, Infinity] +NaN" },
+                { "k > 3", "k: numbers=(3.0, Infinity]" },
+                { "3 > k", "k: numbers=[-Infinity, 3.0)" },
+                { "k >= 1 AND k < 5", "k: numbers=[1.0, 5.0)" },
+                { "k >= 1 AND k < 5 AND a = 2", "a: numbers=[2.0, 2.0]; k: numbers=[1.0, 5.0)" },
+                { "k < 1 OR k >= 5", "k: numbers=[-Infinity, 1.0) | [5.0, Infinity]" },
+                { "k < 1 OR k > 0", "k: numbers=[-Infinity, Infinity]" },
+                { "(k < 1 OR k > 3) AND k <= 5", "k: numbers=[-Infinity, 1.0) | (3.0, 5.0]" },
+                { "k > 5 AND k < 1", "never" },
+
+                // not
+                { "NOT (k > 3)", "k: numbers=[-Infinity, 3.0] +NaN" },
+                { "NOT (k >= 1 AND k < 5)", "k: numbers=[-Infinity, 1.0) | [5.0, Infinity] +NaN" },
+                { "NOT (NOT (k = 3))", "k: numbers=[3.0, 3.0]" },
+
+                // texts
+                { "a = abc", "a: texts={abc}" },
+                { "a != abc", "a: texts=* - {abc} +null" },
+                { "(a = abc) OR (a = x)", "a: texts={abc, x}" },
+                { "(a != abc) AND (a != x)", "a: texts=* - {abc, x} +null" },
+                { "(a = abc) AND (a = x)", "never" },
+                { "NOT ((a = abc) OR (a = x))", "a: texts=* - {abc, x} +null" },
+                { "(a = abc) AND k = 1", "a: texts={abc}; k: numbers=[1.0, 1.0]" },
+
+                // the ranges hold more than the matches
+                { "(k = 1) OR (a = 2)", "* (inexact)" },
+                { "(k = 1 AND a = 1) OR (k = 2 AND a = 2)",
+                        "a: numbers=[1.0, 1.0] | [2.0, 2.0]; k: numbers=[1.0, 1.0] | [2.0, 2.0] (inexact)" },
+                { "(k = 1) OR (k = abc)", "* (inexact)" },
+                { "(a > abc) AND k = 1", "k: numbers=[1.0, 1.0] (inexact)" },
+                { "(male) AND k = 1", "k: numbers=[1.0, 1.0] (inexact)" },
+                { "(total_pv = 40) = 1", "* (inexact)" },
+
+                // constants
+                { "3 = 3", "*" },
+                { "(k = 1) AND 3 = 4", "never" },
+                { "(k = 1) OR 3 = 4", "k: numbers=[1.0, 1.0]" },
+                { "(k = 1) OR 3 = 3", "*" },
+        }));
+        for (val row : PredicateCompilerTests.data()) {
+            data.add(new Object[] { row[0], null });
+        }
+        val random = new Random(0);
+        for (int i = 0; i < 300; i++) {
+            data.add(new Object[] { query(random, 4), null });
+        }
+        return data;
+    }
+
+    private String query;
+    private String expected;
+
+    public RangeExtractorTests(String query, String expected) {
+        this.query = query;
+        this.expected = expected;
+    }
+
+    @Test
+    public void testExtract() {
+        if (this.expected == null) {
+            return;
+        }
+        assertEquals(this.expected, RangeExtractor.extract(QueryParser.parse(this.query)).toString());
+    }
+
+    // every match is in the ranges, and exact ranges hold nothing else
+    @Test
+    public void testSound() {
+        val expr = QueryParser.parse(this.query);
+        val ranges = RangeExtractor.extract(expr);
+        if (!ranges.getUnsupported().isEmpty()) {
+            assertFalse(ranges.isExact());
+        }
+        try {
+            PredicateCompiler.compile(expr, FieldAccessor.ofMap());
+        } catch (IllegalArgumentException e) {
+            assertFalse(ranges.getUnsupported().isEmpty());
+            return;
+        }
+        val predicate = PredicateCompiler.compile(expr, FieldAccessor.ofMap());
+        for (val record : RECORDS) {
+            val matched = predicate.test(record);
+            val mayMatch = ranges.mayMatch(record, FieldAccessor.ofMap());
+            if (matched) {
+                assertTrue(ranges + " " + record, mayMatch);
+            } else if (ranges.isExact()) {
+                assertFalse(ranges + " " + record, mayMatch);
+            }
+        }
+    }
+
+    // every comparison is bracketed, since spaces are dropped before parsing
+    private static String query(Random random, int depth) {
+        val choice = depth == 0 ? random.nextInt(3) : random.nextInt(7);
+        switch (choice) {
+        case 0:
+        case 1:
+            val key = KEYS[random.nextInt(KEYS.length)];
+            val op = new String[] { "=", "!=", ">", ">=", "<", "<=" }[random.nextInt(6)];
+            val value = random.nextInt(5) == 0 ? (random.nextBoolean() ? "abc" : "x")
+                    : String.valueOf(random.nextInt(7) - 1);
+            return "(" + key + " " + op + " " + value + ")";
+        case 2:
+            return random.nextInt(4) == 0 ? "(male)" : "(" + random.nextInt(3) + " = 1)";
+        case 3:
+            return "NOT (" + query(random, depth - 1) + ")";
+        case 4:
+            return "(" + query(random, depth - 1) + ")";
+        default:
+            val logical = random.nextBoolean() ? " AND " : " OR ";
+            return query(random, depth - 1) + logical + query(random, depth - 1);
+        }
+    }
+}
@@ -2,14 +2,24 @@ package sample.query.expression.visitor;
 
 import static org.junit.Assert.*;
 
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
+import sample.query.expression.model.Model;
+import sample.query.expression.model.Model.BinaryOpExpr;
+import sample.query.expression.model.Model.BracketExpr;
+import sample.query.expression.model.Model.DoubleExpr;
+import sample.query.expression.model.Model.TextExpr;
+import sample.query.expression.model.Model.UnaryOpExpr;
 import sample.query.expression.parser.QueryParser;
 import lombok.val;
 
@@ -188,4 +198,68 @@ public class StrVisitorTests {
         val actual = new StrVisitor().visit(expr);
         assertEquals(this.expected, actual);
     }
+
+    @Test
+    public void testAccept() {
+        val expr = QueryParser.parse(this.query);
+        val actual = new ArrayList<String>();
+        new StrVisitor().accept(expr, actual::add);
+        assertEquals(this.expected, actual);
+    }
+
+    @Test
+    public void testAsVisitor() {
+        val expr = QueryParser.parse(this.query);
+        final Visitor<String> visitor = new StrVisitor();
+        assertEquals(this.expected, visitor.visit(expr));
+
+        // the list based methods put the whole subtree into the given list
+        val actual = new ArrayList<String>();
+        visitor.visitBracketExpr((BracketExpr) Model.bracketExpr(expr), actual);
+        assertEquals("(", actual.get(0));
+        assertEquals(this.expected, actual.subList(1, actual.size() - 1));
+        assertEquals(")", actual.get(actual.size() - 1));
+    }
+
+    @Test
+    public void testSubclass() {
+        // the leaves are made by the subclass wherever they are in the tree
+        val visitor = new StrVisitor() {
+
+            @Override
+            public void visitTextExpr(TextExpr expr, Consumer<? super String> sink) {
+                sink.accept("key:" + expr.toString());
+            }
+        };
+        val expected = this.expected.stream()
+                .map(s -> s.startsWith("text:") ? "key:" + s.substring(5) : s)
+                .collect(Collectors.toList());
+        assertEquals(expected, visitor.visit(QueryParser.parse(this.query)));
+    }
+
+    @Test
+    public void testFinalVisitMethods() throws Exception {
+        // the walks do not call these, so no subclass can override them
+        for (val type : new Class<?>[] { BracketExpr.class, UnaryOpExpr.class, BinaryOpExpr.class }) {
+            val name = "visit" + type.getSimpleName();
+            assertTrue(Modifier.isFinal(StrVisitor.class.getMethod(name, type, Consumer.class).getModifiers()));
+            assertTrue(Modifier.isFinal(NodeVisitor.class.getMethod(name, type, Consumer.class).getModifiers()));
+        }
+        for (val type : new Class<?>[] { DoubleExpr.class, TextExpr.class }) {
+            val name = "visit" + type.getSimpleName();
+            assertFalse(Modifier.isFinal(StrVisitor.class.getMethod(name, type, Consumer.class).getModifiers()));
+            assertTrue(Modifier.isFinal(NodeVisitor.class.getMethod(name, type, Consumer.class).getModifiers()));
+        }
+    }
+
+    @Test
+    public void testFinalListVisitMethods() throws Exception {
+        // only pass the list on to the sink methods, which are the ones the walk calls
+        for (val type : new Class<?>[] { DoubleExpr.class, TextExpr.class, BracketExpr.class, UnaryOpExpr.class,
+                BinaryOpExpr.class }) {
+            val name = "visit" + type.getSimpleName();
+            assertTrue(Modifier.isFinal(StrVisitor.class.getMethod(name, type, List.class).getModifiers()));
+            assertTrue(Modifier.isFinal(NodeVisitor.class.getMethod(name, type, List.class).getModifiers()));
+        }
+    }
 }
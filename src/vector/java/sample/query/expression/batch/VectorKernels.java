@@ -0,0 +1,157 @@
+package sample.query.expression.batch;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import sample.query.expression.evaluator.Comparison;
+import sample.query.expression.model.Model.BinaryOp;
+
+/**
+ * {@link ComparisonKernels} on {@code jdk.incubator.vector}, loaded by
+ * {@link Kernels} when the module is enabled.
+ *
+ * A species has at most 64 lanes and a power of two of them, so the mask of
+ * one vector always falls in a single word of the bitmap, and so do the rows
+ * after the last full vector, which are compared one by one.
+ */
+final class VectorKernels implements ComparisonKernels {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = VectorSpecies.of(long.class, DOUBLES.vectorShape());
+    private static final LongVector ZERO = LongVector.zero(LONGS);
+    // lane i is 1 << i, which the mask of a compare selects to make its bits
+    private static final LongVector WEIGHTS = weights();
+
+    @Override
+    public void compare(BinaryOp op, double[] values, double value, int size, long[] bitmap) {
+        // the operator has to be a constant in the loop for the compare to become a vector instruction
+        switch (op) {
+        case EQUAL_TO:
+            compare(VectorOperators.EQ, false, op, values, value, size, bitmap);
+            break;
+        case NOT_EQUAL_TO:
+            compare(VectorOperators.EQ, true, op, values, value, size, bitmap);
+            break;
+        case GREATER_THAN:
+            compare(VectorOperators.GT, false, op, values, value, size, bitmap);
+            break;
+        case GREATER_THAN_OR_EQUAL_TO:
+            compare(VectorOperators.GE, false, op, values, value, size, bitmap);
+            break;
+        case LESS_THAN:
+            compare(VectorOperators.LT, false, op, values, value, size, bitmap);
+            break;
+        case LESS_THAN_OR_EQUAL_TO:
+            compare(VectorOperators.LE, false, op, values, value, size, bitmap);
+            break;
+        default:
+            throw new RuntimeException("unknown: " + op.getCode());
+        }
+    }
+
+    @Override
+    public void compare(BinaryOp op, long[] values, long value, int size, long[] bitmap) {
+        switch (op) {
+        case EQUAL_TO:
+            compare(VectorOperators.EQ, false, op, values, value, size, bitmap);
+            break;
+        case NOT_EQUAL_TO:
+            compare(VectorOperators.EQ, true, op, values, value, size, bitmap);
+            break;
+        case GREATER_THAN:
+            compare(VectorOperators.GT, false, op, values, value, size, bitmap);
+            break;
+        case GREATER_THAN_OR_EQUAL_TO:
+            compare(VectorOperators.GE, false, op, values, value, size, bitmap);
+            break;
+        case LESS_THAN:
+            compare(VectorOperators.LT, false, op, values, value, size, bitmap);
+            break;
+        case LESS_THAN_OR_EQUAL_TO:
+            compare(VectorOperators.LE, false, op, values, value, size, bitmap);
+            break;
+        default:
+            throw new RuntimeException("unknown: " + op.getCode());
+        }
+    }
+
+    // != is the complement of =, which also holds for NaN
+    private static void compare(VectorOperators.Comparison comparison, boolean negate, BinaryOp op,
+            double[] values, double value, int size, long[] bitmap) {
+        final int lanes = DOUBLES.length();
+        final int bound = DOUBLES.loopBound(size);
+        long word = 0;
+        for (int i = 0; i < bound; i += lanes) {
+            final VectorMask<Long> mask = DoubleVector.fromArray(DOUBLES, values, i).compare(comparison, value)
+                    .cast(LONGS);
+            word |= bits(mask, negate) << i;
+            if (((i + lanes) & 63) == 0) {
+                bitmap[i >>> 6] = word;
+                word = 0;
+            }
+        }
+        for (int i = bound; i < size; i++) {
+            word |= (Comparison.compare(op, values[i], value) ? 1L : 0L) << i;
+        }
+        if (bound < size || (bound & 63) != 0) {
+            bitmap[bound >>> 6] = word;
+        }
+    }
+
+    private static void compare(VectorOperators.Comparison comparison, boolean negate, BinaryOp op,
+            long[] values, long value, int size, long[] bitmap) {
+        final int lanes = LONGS.length();
+        final int bound = LONGS.loopBound(size);
+        long word = 0;
+        for (int i = 0; i < bound; i += lanes) {
+            final VectorMask<Long> mask = LongVector.fromArray(LONGS, values, i).compare(comparison, value);
+            word |= bits(mask, negate) << i;
+            if (((i + lanes) & 63) == 0) {
+                bitmap[i >>> 6] = word;
+                word = 0;
+            }
+        }
+        for (int i = bound; i < size; i++) {
+            word |= (compare(op, values[i], value) ? 1L : 0L) << i;
+        }
+        if (bound < size || (bound & 63) != 0) {
+            bitmap[bound >>> 6] = word;
+        }
+    }
+
+    // VectorMask.toLong() is not an intrinsic before JDK 19, while blend and reduceLanes are
+    private static long bits(VectorMask<Long> mask, boolean negate) {
+        final LongVector lanes = negate ? WEIGHTS.blend(0L, mask) : ZERO.blend(WEIGHTS, mask);
+        return lanes.reduceLanes(VectorOperators.OR);
+    }
+
+    private static LongVector weights() {
+        final long[] weights = new long[LONGS.length()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 1L << i;
+        }
+        return LongVector.fromArray(LONGS, weights, 0);
+    }
+
+    private static boolean compare(BinaryOp op, long lhs, long rhs) {
+        switch (op) {
+        case EQUAL_TO:
+            return lhs == rhs;
+        case NOT_EQUAL_TO:
+            return lhs != rhs;
+        case GREATER_THAN:
+            return lhs > rhs;
+        case GREATER_THAN_OR_EQUAL_TO:
+            return lhs >= rhs;
+        case LESS_THAN:
+            return lhs < rhs;
+        case LESS_THAN_OR_EQUAL_TO:
+            return lhs <= rhs;
+        default:
+            throw new RuntimeException("unknown: " + op.getCode());
+        }
+    }
+}